@@ -49,13 +49,15 @@ abstract class CsvGraphEngine implements GraphEngine {
         }
         writer.append("\n");
         var step = config.step();
+        var startTime = config.startTime().toEpochMilli();
         var endTime = config.endTime().toEpochMilli();
-        var timestamp = config.startTime().toEpochMilli();
-        while (timestamp < endTime) {
+        var values = lines.stream().map(line -> line.data().data().bounded(startTime, endTime).data()).toList();
+        var timestamp = startTime;
+        for (var i = 0; timestamp < endTime; i++) {
             var t = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), config.timezone());
             writer.append(t.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
-            for (var line : lines) {
-                var v = line.data().data().get(timestamp);
+            for (var data : values) {
+                var v = i < data.length ? data[i] : Double.NaN;
                 var vstr = String.format(config.numberFormat(), v);
                 writer.append(sep).append(vstr);
             }
@@ -92,7 +92,7 @@ abstract class ImageGraphEngine implements GraphEngine {
 
     @VisibleForTesting
     final dev.byblos.chart.util.Image createImage(GraphDef config) {
-        return createImage(renderGraph(config.computeStats()));
+        return createImage(renderGraph(config.analyze()));
     }
 
     @VisibleForTesting
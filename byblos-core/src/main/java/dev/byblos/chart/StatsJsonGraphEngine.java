@@ -3,7 +3,6 @@ package dev.byblos.chart;
 import dev.byblos.chart.model.GraphDef;
 import dev.byblos.chart.model.LineDef;
 import com.fasterxml.jackson.core.JsonGenerator;
-import dev.byblos.model.SummaryStats;
 
 import java.io.IOException;
 import java.util.List;
@@ -20,23 +19,24 @@ public final class StatsJsonGraphEngine extends JsonGraphEngine {
 
     @Override
     protected void write(GraphDef config, JsonGenerator gen) throws IOException {
-        var lines = config.plots().stream().flatMap(p -> p.lines().stream()).collect(Collectors.toList());
+        // Analyzing the graph fills in the summary stats for each line.
+        var lines = config.analyze().plots().stream().flatMap(p -> p.lines().stream()).collect(Collectors.toList());
 
         gen.writeStartObject();
 
         writeContext(config, gen);
         writeLegend(lines, gen);
         writeMetrics(lines, gen);
-        writeSummaryStats(config, lines, gen);
+        writeSummaryStats(lines, gen);
         writeWarnings(config, gen);
 
         gen.writeEndObject();
     }
 
-    private void writeSummaryStats(GraphDef config, List<LineDef> lines, JsonGenerator gen) throws IOException {
+    private void writeSummaryStats(List<LineDef> lines, JsonGenerator gen) throws IOException {
         gen.writeArrayFieldStart("stats");
         for (var line : lines) {
-            var stats = SummaryStats.fromData(line.data(), config.startTime().toEpochMilli(), config.endTime().toEpochMilli());
+            var stats = line.legendStats();
             gen.writeStartObject();
             gen.writeNumberField("count", stats.count());
             if (stats.count() > 0) {
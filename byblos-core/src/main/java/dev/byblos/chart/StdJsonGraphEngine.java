@@ -33,13 +33,14 @@ public final class StdJsonGraphEngine extends JsonGraphEngine {
     private void writeValues(GraphDef config, List<LineDef> lines, JsonGenerator gen) throws IOException {
         gen.writeArrayFieldStart("values");
         var step = (int) config.step();
+        var startTime = config.startTime().toEpochMilli();
         var endTime = config.endTime().toEpochMilli();
-        var timestamp = config.startTime().toEpochMilli();
-        while (timestamp < endTime) {
+        var values = lines.stream().map(line -> line.data().data().bounded(startTime, endTime).data()).toList();
+        var timestamp = startTime;
+        for (var i = 0; timestamp < endTime; i++) {
             gen.writeStartArray();
-            for (var line : lines) {
-                var v = line.data().data().get(timestamp);
-                gen.writeNumber(v);
+            for (var data : values) {
+                gen.writeNumber(i < data.length ? data[i] : Double.NaN);
             }
             gen.writeEndArray();
             timestamp += step;
@@ -36,11 +36,11 @@ public final class TimeSeriesArea implements Element {
         var xscale = xaxis.scale(x1, x2);
         var yscale = yaxis.scale(y1, y2);
         var axisy = yscale.apply(0.0);
+        var values = ts.bounded(xaxis.start(), xaxis.end()).data();
         var t = xaxis.start();
-        while (t < xaxis.end()) {
+        for (var nv : values) {
             var px1 = xscale.apply(t - step);
             var px2 = xscale.apply(t);
-            var nv = ts.get(t);
             var ny = yscale.apply(nv);
             var py1 = Math.min(axisy, ny);
             var py2 = Math.max(axisy, ny) + 1;
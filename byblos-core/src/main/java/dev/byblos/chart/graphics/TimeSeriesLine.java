@@ -35,12 +35,13 @@ public final class TimeSeriesLine implements Element {
         var step = ts.step();
         var xscale = xaxis.scale(x1, x2);
         var yscale = yaxis.scale(y1, y2);
+        var values = ts.bounded(xaxis.start(), xaxis.end()).data();
         var t = xaxis.start();
-        var pv = ts.get(t);
-        while (t < xaxis.end()) {
+        var pv = values.length > 0 ? values[0] : Double.NaN;
+        for (var i = 0; i < values.length; i++) {
             var px1 = xscale.apply(t - step);
             var px2 = xscale.apply(t);
-            var nv = ts.get(t);
+            var nv = values[i];
             var py = yscale.apply(pv);
             var ny = yscale.apply(nv);
             if (!Double.isNaN(pv) && !Double.isNaN(nv)) {
@@ -23,11 +23,12 @@ public final class TimeSeriesSpan implements Element {
         style.configure(g);
         var step = ts.step();
         var xscale = xaxis.scale(x1, x2);
+        var values = ts.bounded(xaxis.start(), xaxis.end()).data();
         var t = xaxis.start();
-        while (t < xaxis.end()) {
+        for (var v : values) {
             var px1 = xscale.apply(t - step);
             var px2 = xscale.apply(t);
-            if (!isNearlyZero(ts.get(t))) {
+            if (!isNearlyZero(v)) {
                 g.fillRect(px1, y1, px2 - px1, y2 - y1);
             }
             t += step;
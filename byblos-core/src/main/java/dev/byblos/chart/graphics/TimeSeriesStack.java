@@ -45,15 +45,17 @@ public final class TimeSeriesStack implements Element {
         var step = xaxis.step();
         var xscale = xaxis.scale(x1, x2);
         var yscale = yaxis.scale(y1, y2);
+        var size = Math.min(offsets.posY.length, ts.size(xaxis.start(), xaxis.end()));
+        var values = new double[size];
+        ts.copyTo(values, xaxis.start(), xaxis.start() + size * step);
         var t = xaxis.start();
-        while (t < xaxis.end()) {
+        for (var ox = 0; ox < size; ox++) {
             var px1 = xscale.apply(t - step);
             var px2 = xscale.apply(t);
-            var ox = (int) ((t - xaxis.start()) / step);
             var posY = offsets.posY[ox];
             var negY = offsets.negY[ox];
             style.configure(g);
-            var v = ts.get(t);
+            var v = values[ox];
             if (v == 0.0 && posY == 0.0 && negY == 0.0) {
                 // Provides a line along the xaxis to avoid confusion between 0 and NaN (no data)
                 var py1 = yscale.apply(posY);
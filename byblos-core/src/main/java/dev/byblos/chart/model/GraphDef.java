@@ -3,7 +3,6 @@ package dev.byblos.chart.model;
 import dev.byblos.chart.GraphConstants;
 import dev.byblos.chart.graphics.ChartSettings;
 import dev.byblos.chart.graphics.Theme;
-import dev.byblos.model.SummaryStats;
 import org.immutables.value.Value;
 
 import java.awt.*;
@@ -239,15 +238,18 @@ public abstract class GraphDef {
     }
 
     /**
-     * Return a new graph definition with the line stats filled in.
+     * Return a new graph definition with the lines bounded, the line stats and the data range
+     * of each plot filled in. It is a no-op if the definition has already been analyzed.
+     *
+     * @see PlotDef#analyze(long, long)
      */
-    public GraphDef computeStats() {
+    public GraphDef analyze() {
+        if (plots().stream().allMatch(p -> p.dataRange().isPresent())) {
+            return this;
+        }
         var s = startTime().toEpochMilli();
         var e = endTime().toEpochMilli();
-        return adjustLines(line -> {
-            var stats = SummaryStats.fromData(line.data().data(), s, e);
-            return ImmutableLineDef.builder().from(line).legendStats(stats).build();
-        });
+        return adjustPlots(p -> p.analyze(s, e));
     }
 
     /**
@@ -2,9 +2,11 @@ package dev.byblos.chart.model;
 
 import dev.byblos.chart.graphics.Bounds;
 import dev.byblos.chart.graphics.Theme;
+import dev.byblos.model.SummaryStats;
 import org.immutables.value.Value;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -74,67 +76,93 @@ public abstract class PlotDef {
     }
 
     public ImmutablePlotDef.Builder toBuilder() {
-        return ImmutablePlotDef.builder().from(this);
+        // The data range is derived from the data, it must be computed again for the new plot.
+        return ImmutablePlotDef.builder().from(this).dataRange(Optional.empty());
     }
 
-    public Bounds bounds(long start, long end) {
-        var dataLines = lines();
-        if (dataLines.isEmpty()) {
-            return new Bounds(0d, 1d);
-        }
-        var step = dataLines.get(0).data().data().step();
-        var regular = dataLines.stream()
-                .filter(d -> d.lineStyle() != LineStyle.VSPAN && d.lineStyle() != LineStyle.STACK)
-                .collect(Collectors.toList());
-        var stacked = dataLines.stream()
-                .filter(d -> d.lineStyle() == LineStyle.STACK)
-                .collect(Collectors.toList());
+    /**
+     * Return the range of the finite values in the plot, including the sums of the stacked
+     * lines. It is filled in by {@link #analyze(long, long)}, and computed on demand otherwise.
+     */
+    @Value.Auxiliary
+    public abstract Optional<Bounds> dataRange();
+
+    /**
+     * Return a new plot definition with the lines bounded to the given range and their stats
+     * filled in, as well as the data range of the plot. All of this is computed in a single
+     * pass over the data of each line. Lines whose stats are already set, such as by the
+     * grapher for the same range, keep them rather than computing them again.
+     */
+    public PlotDef analyze(long start, long end) {
         var max = -Double.MAX_VALUE;
         var min = Double.MAX_VALUE;
-        var posSum = 0.0;
-        var negSum = 0.0;
-
-        var t = start;
-        while (t < end) {
-            for (var line : regular) {
-                var v = line.data().data().get(t);
-                if (Double.isFinite(v)) {
+        double[] posSums = null;
+        double[] negSums = null;
+        var firstStacked = true;
+        var newData = new ArrayList<DataDef>(data().size());
+        for (var item : data()) {
+            if (!(item instanceof LineDef line)) {
+                newData.add(item);
+                continue;
+            }
+            var seq = line.data().data().bounded(start, end);
+            var values = seq.data();
+            var stats = line.legendStats();
+            var acc = (stats == SummaryStats.EMPTY) ? new SummaryStats.Accumulator() : null;
+            var style = line.lineStyle();
+            if (style == LineStyle.STACK && null == posSums) {
+                posSums = new double[values.length];
+                negSums = new double[values.length];
+            }
+            for (var i = 0; i < values.length; i++) {
+                var v = values[i];
+                if (null != acc) {
+                    acc.accept(v);
+                }
+                if (!Double.isFinite(v) || style == LineStyle.VSPAN) {
+                    continue;
+                }
+                if (style != LineStyle.STACK || firstStacked) {
                     max = Math.max(v, max);
                     min = Math.min(v, min);
                 }
-            }
-
-            for (var line : stacked) {
-                var v = line.data().data().get(t);
-                if (Double.isFinite(v)) {
+                if (style == LineStyle.STACK && i < posSums.length) {
                     if (v >= 0.0) {
-                        posSum += v;
+                        posSums[i] += v;
                     } else {
-                        negSum += v;
+                        negSums[i] += v;
                     }
                 }
             }
-
-            if (!stacked.isEmpty()) {
-                var v = stacked.get(0).data().data().get(t);
-                if (Double.isFinite(v)) {
-                    max = Math.max(v, max);
-                    min = Math.min(v, min);
-                }
-                max = (posSum > 0.0 && posSum > max) ? posSum : max;
-                min = (negSum < 0.0 && negSum < min) ? negSum : min;
+            if (style == LineStyle.STACK) {
+                firstStacked = false;
             }
-            posSum = 0.0;
-            negSum = 0.0;
-            t += step;
+            newData.add(line.toBuilder()
+                    .data(line.data().withData(seq))
+                    .legendStats((null != acc) ? acc.stats() : stats)
+                    .build());
+        }
+        if (null != posSums) {
+            for (var i = 0; i < posSums.length; i++) {
+                max = (posSums[i] > 0.0 && posSums[i] > max) ? posSums[i] : max;
+                min = (negSums[i] < 0.0 && negSums[i] < min) ? negSums[i] : min;
+            }
+        }
+        min = (min == Double.MAX_VALUE) ? 0.0 : min;
+        max = (max == -Double.MAX_VALUE) ? 1.0 : max;
+        return toBuilder().data(newData).dataRange(new Bounds(min, max)).build();
+    }
+
+    public Bounds bounds(long start, long end) {
+        var dataLines = lines();
+        if (dataLines.isEmpty()) {
+            return new Bounds(0d, 1d);
         }
+        var range = dataRange().orElseGet(() -> analyze(start, end).dataRange().orElseThrow());
 
         // If an area or stack is shown it will fill to zero and the filled area should be shown
         var hasArea = dataLines.stream().anyMatch(line -> line.lineStyle() == LineStyle.AREA || line.lineStyle() == LineStyle.STACK);
-
-        min = (min == Double.MAX_VALUE) ? 0.0 : min;
-        max = (max == -Double.MAX_VALUE) ? 1.0 : max;
-        return finalBounds(hasArea, min, max);
+        return finalBounds(hasArea, range.min(), range.max());
     }
 
     public PlotDef normalize(Theme theme) {
@@ -0,0 +1,88 @@
+package dev.byblos.eval.backend;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of asynchronous tasks running concurrently, without blocking the caller.
+ * <p>
+ * Tasks submitted while all the permits are in use are queued, and started in order as soon
+ * as running tasks complete.
+ */
+public final class AsyncSemaphore {
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private int permits;
+
+    public AsyncSemaphore(int permits) {
+        checkArgument(permits > 0, "permits must be > 0");
+        this.permits = permits;
+    }
+
+    /**
+     * Start a task once a permit is available. The permit is released when the future returned
+     * by the task completes. Cancelling the returned future cancels the task, or removes it from
+     * the queue if it has not started yet.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        var result = new CompletableFuture<T>();
+        Runnable run = () -> {
+            if (result.isDone()) {
+                // Cancelled while waiting for a permit.
+                release();
+                return;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            var f = future;
+            f.whenComplete((v, e) -> {
+                release();
+                if (null != e) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(v);
+                }
+            });
+            result.whenComplete((v, e) -> {
+                if (result.isCancelled()) {
+                    f.cancel(true);
+                }
+            });
+        };
+        synchronized (this) {
+            if (permits == 0) {
+                pending.add(run);
+                return result;
+            }
+            permits--;
+        }
+        run.run();
+        return result;
+    }
+
+    /**
+     * Return the number of tasks waiting for a permit.
+     */
+    synchronized int queued() {
+        return pending.size();
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = pending.poll();
+            if (null == next) {
+                permits++;
+                return;
+            }
+        }
+        next.run();
+    }
+}
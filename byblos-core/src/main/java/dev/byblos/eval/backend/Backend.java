@@ -6,10 +6,49 @@ import dev.byblos.model.TimeSeries;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A backend allowing to query for time series.
  */
 public interface Backend {
+    /**
+     * Query the time series matching an expression.
+     * <p>
+     * The data of each returned series is expected to be a dense sequence covering the range
+     * of the evaluation context, with NaN for missing values. Implementations should use
+     * a {@link TimeSeqBuilder} to materialize it.
+     *
+     * @param context Evaluation context.
+     * @param expr    Data expression.
+     * @return Matching time series.
+     */
     List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException;
+
+    /**
+     * Returns whether the backend accepts the PromQL subqueries used to push the line limit of
+     * an expression down to it. These queries are evaluated at an absolute time, which varies
+     * with the time range of the graph. Defaults to false.
+     */
+    default boolean supportsLimitPushdown() {
+        return false;
+    }
+
+    /**
+     * Query the time series matching an expression asynchronously.
+     * <p>
+     * The default implementation calls {@link #query(EvalContext, DataExpr)}, and therefore
+     * blocks the calling thread. Implementations able to do better should override it.
+     *
+     * @param context Evaluation context.
+     * @param expr    Data expression.
+     * @return Future completed with the matching time series.
+     */
+    default CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+        try {
+            return CompletableFuture.completedFuture(query(context, expr));
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
@@ -2,6 +2,7 @@ package dev.byblos.eval.backend;
 
 import com.netflix.iep.service.ClassFactory;
 import com.typesafe.config.Config;
+import io.micrometer.core.instrument.Metrics;
 
 import static java.util.Objects.requireNonNull;
 
@@ -15,7 +16,17 @@ public final class BackendFactory {
     }
 
     public Backend newInstance() {
-        var className = config.getString("class");
+        var backend = newInstance(config.getString("class"));
+        if (config.getBoolean("cache.enabled")) {
+            backend = new CachingBackend(backend, config.getConfig("cache"), Metrics.globalRegistry);
+        }
+        if (config.getBoolean("coalesce.enabled")) {
+            backend = new CoalescingBackend(backend, Metrics.globalRegistry);
+        }
+        return backend;
+    }
+
+    private Backend newInstance(String className) {
         try {
             return classFactory.newInstance(className, clz -> config);
         } catch (ClassNotFoundException e) {
@@ -0,0 +1,228 @@
+package dev.byblos.eval.backend;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.typesafe.config.Config;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Backend caching the results of another backend.
+ * <p>
+ * The time range is divided into chunks of a fixed number of steps, and results are cached
+ * per query, step and chunk. A query is answered from the cached chunks overlapping with its
+ * range, and only the missing chunks are fetched from the wrapped backend, consecutive
+ * missing chunks being fetched with a single query. Typically, when a graph over the last
+ * few hours is reloaded only the most recent chunk needs to be fetched again. Missing chunks
+ * are fetched asynchronously, without blocking the caller.
+ * <p>
+ * The most recent chunks are never cached, as their data may still change. The cache is
+ * bounded by an estimate of the memory used by the cached data, the least recently used
+ * chunks being evicted first.
+ * <p>
+ * Limit pushdown is not supported: the rewritten queries change with the time range of the
+ * graph, so that they would never be answered from the cache.
+ */
+public final class CachingBackend implements Backend {
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final Backend delegate;
+    private final int chunkSize;
+    private final long minAge;
+    private final Clock clock;
+    private final Cache<ChunkKey, List<TimeSeries>> cache;
+    private final AtomicLong bytes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate Backend to query for data that is not cached.
+     * @param config   Configuration of the cache.
+     * @param registry Registry to report metrics about the cache.
+     */
+    public CachingBackend(Backend delegate, Config config, MeterRegistry registry) {
+        this(delegate, config.getInt("chunk-size"), config.getDuration("min-age").toMillis(), config.getBytes("max-size"), registry, Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    CachingBackend(Backend delegate, int chunkSize, long minAge, long maxSize, MeterRegistry registry, Clock clock) {
+        checkArgument(chunkSize > 1, "chunk size must be > 1");
+        this.delegate = requireNonNull(delegate);
+        this.chunkSize = chunkSize;
+        this.minAge = minAge;
+        this.clock = requireNonNull(clock);
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((ChunkKey key, List<TimeSeries> value) -> weight(key, value))
+                .removalListener((RemovalListener<ChunkKey, List<TimeSeries>>) n -> bytes.addAndGet(-weight(n.getKey(), n.getValue())))
+                .build();
+        hits = Counter.builder("byblos.backend.cache.requests").tag("result", "hit").register(registry);
+        misses = Counter.builder("byblos.backend.cache.requests").tag("result", "miss").register(registry);
+        Gauge.builder("byblos.backend.cache.size", bytes, AtomicLong::get).baseUnit("bytes").register(registry);
+    }
+
+    @Override
+    public List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException {
+        return Futures.await(queryAsync(context, expr));
+    }
+
+    @Override
+    public CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+        var step = context.step();
+        if (context.start() % step != 0) {
+            // Chunks are only aligned with contexts starting on a step boundary.
+            return delegate.queryAsync(context, expr);
+        }
+        var chunkDuration = chunkSize * step;
+        var maxCacheable = clock.millis() - minAge;
+        var pieces = new ArrayList<CompletableFuture<Piece>>();
+        var missingStart = NONE;
+        var chunk = Math.floorDiv(context.start(), chunkDuration) * chunkDuration;
+        while (chunk <= context.end()) {
+            var cached = (chunk + chunkDuration <= maxCacheable) ? cache.getIfPresent(new ChunkKey(expr.exprString(), step, chunk)) : null;
+            if (null == cached) {
+                misses.increment();
+                missingStart = (missingStart == NONE) ? chunk : missingStart;
+            } else {
+                hits.increment();
+                if (missingStart != NONE) {
+                    pieces.add(fetch(context, expr, missingStart, chunk, maxCacheable));
+                    missingStart = NONE;
+                }
+                pieces.add(CompletableFuture.completedFuture(new Piece(cached, chunk, chunk + chunkDuration)));
+            }
+            chunk += chunkDuration;
+        }
+        if (missingStart != NONE) {
+            pieces.add(fetch(context, expr, missingStart, chunk, maxCacheable));
+        }
+        var all = Futures.all(pieces);
+        return Futures.propagateCancel(all.thenApply(list -> {
+            var result = new Result(context);
+            list.forEach(piece -> result.add(piece.data(), piece.start(), piece.end()));
+            return result.build();
+        }), all);
+    }
+
+    /**
+     * Fetch the data for consecutive chunks from the wrapped backend, and cache the chunks
+     * that are old enough.
+     */
+    private CompletableFuture<Piece> fetch(EvalContext context, DataExpr expr, long start, long end, long maxCacheable) {
+        var step = context.step();
+        // Complete chunks are fetched so that they can be cached, otherwise only the part
+        // needed for the query is fetched.
+        var s = (start + chunkSize * step <= maxCacheable) ? start : Math.max(start, context.start());
+        var e = (end <= maxCacheable) ? end - step : Math.min(end - step, context.end());
+        var future = delegate.queryAsync(context.withRange(s, Math.max(e, s + step)), expr);
+        return Futures.propagateCancel(future.thenApply(data -> {
+            for (var chunk = start; chunk + chunkSize * step <= Math.min(end, maxCacheable); chunk += chunkSize * step) {
+                cache(new ChunkKey(expr.exprString(), step, chunk), data);
+            }
+            return new Piece(data, s, e + step);
+        }), future);
+    }
+
+    private void cache(ChunkKey key, List<TimeSeries> data) {
+        var chunkEnd = key.start() + chunkSize * key.step();
+        var chunk = new ArrayList<TimeSeries>();
+        for (var ts : data) {
+            var seq = ts.data().bounded(key.start(), chunkEnd);
+            // Series without any data in the chunk are not stored.
+            for (var v : seq.data()) {
+                if (!Double.isNaN(v)) {
+                    chunk.add(ts.withData(seq));
+                    break;
+                }
+            }
+        }
+        var value = List.copyOf(chunk);
+        bytes.addAndGet(weight(key, value));
+        cache.put(key, value);
+    }
+
+    /**
+     * Rough estimate of the memory used by a cache entry, in bytes.
+     */
+    private int weight(ChunkKey key, List<TimeSeries> value) {
+        var weight = 64 + 2 * key.query().length();
+        for (var ts : value) {
+            weight += 64 + 2 * ts.label().length() + 64 * ts.tags().size() + 8 * chunkSize;
+        }
+        return weight;
+    }
+
+    @VisibleForTesting
+    long size() {
+        cache.cleanUp();
+        return bytes.get();
+    }
+
+    private record ChunkKey(String query, long step, long start) {
+    }
+
+    private record SeriesId(String label, Map<String, String> tags) {
+    }
+
+    /**
+     * Series of a query in the range [start, end), from the cache or the backend.
+     */
+    private record Piece(List<TimeSeries> data, long start, long end) {
+    }
+
+    /**
+     * Assembles the series of a query from the pieces coming from the cache or the backend.
+     */
+    private static final class Result {
+        private final EvalContext context;
+        private final Map<SeriesId, TimeSeqBuilder> builders = new LinkedHashMap<>();
+
+        Result(EvalContext context) {
+            this.context = context;
+        }
+
+        /**
+         * Add the values of the series in the range [start, end).
+         */
+        void add(List<TimeSeries> data, long start, long end) {
+            var step = context.step();
+            var s = Math.max(start, context.start());
+            var e = Math.min(end, context.end() + step);
+            for (var ts : data) {
+                var builder = builders.computeIfAbsent(new SeriesId(ts.label(), ts.tags()), k -> new TimeSeqBuilder(context));
+                for (var t = s; t < e; t += step) {
+                    var v = ts.data().get(t);
+                    if (!Double.isNaN(v)) {
+                        builder.add(t, v);
+                    }
+                }
+            }
+        }
+
+        List<TimeSeries> build() {
+            var series = new ArrayList<TimeSeries>(builders.size());
+            builders.forEach((id, builder) -> series.add(new TimeSeries(builder.build(), id.label(), id.tags())));
+            return series;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.Deadline;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Backend coalescing identical queries issued concurrently to another backend.
+ * <p>
+ * Only one query is in flight at any time for a given expression and time range, other
+ * callers wait for it to complete and share its result. If it fails, the same error is
+ * propagated to all of them. Once it completes, the next identical query goes to the wrapped
+ * backend again.
+ * <p>
+ * The query is sent on behalf of all its callers, and is not bound by the deadline of any of
+ * them. Each caller waits for it until its own deadline, and the query is cancelled once no
+ * caller is waiting for it anymore.
+ */
+public final class CoalescingBackend implements Backend {
+    private final Backend delegate;
+    private final ConcurrentMap<Key, Fetch> inFlight = new ConcurrentHashMap<>();
+    private final Counter fetched;
+    private final Counter deduplicated;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate Backend to query.
+     * @param registry Registry to report metrics about deduplicated queries.
+     */
+    public CoalescingBackend(Backend delegate, MeterRegistry registry) {
+        this.delegate = requireNonNull(delegate);
+        fetched = Counter.builder("byblos.backend.coalesce.requests").tag("result", "fetched").register(registry);
+        deduplicated = Counter.builder("byblos.backend.coalesce.requests").tag("result", "deduplicated").register(registry);
+    }
+
+    @Override
+    public List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException {
+        return Futures.await(queryAsync(context, expr));
+    }
+
+    @Override
+    public boolean supportsLimitPushdown() {
+        return delegate.supportsLimitPushdown();
+    }
+
+    @Override
+    public CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+        var key = new Key(expr.exprString(), context.start(), context.end(), context.step());
+        while (true) {
+            var fetch = new Fetch(key);
+            var existing = inFlight.putIfAbsent(key, fetch);
+            if (null == existing) {
+                fetch.join();
+                fetched.increment();
+                fetch.start(context, expr);
+                return fetch.waitFor(context.deadline());
+            }
+            if (existing.join()) {
+                deduplicated.increment();
+                return existing.waitFor(context.deadline());
+            }
+            // The query was abandoned by all its callers, and is about to be removed.
+            inFlight.remove(key, existing);
+        }
+    }
+
+    /**
+     * Query shared by the callers waiting for it.
+     */
+    private final class Fetch {
+        private final Key key;
+        private final Deadline deadline = Deadline.none();
+        private final CompletableFuture<List<TimeSeries>> result = new CompletableFuture<>();
+        private int waiters;
+        private boolean abandoned;
+
+        Fetch(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Register a caller, returning false if the query was abandoned.
+         */
+        synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        void start(EvalContext context, DataExpr expr) {
+            var shared = new EvalContext(context.start(), context.end(), context.step(), deadline);
+            CompletableFuture<List<TimeSeries>> future;
+            try {
+                future = delegate.queryAsync(shared, expr);
+            } catch (RuntimeException | Error e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((v, e) -> {
+                inFlight.remove(key, this);
+                if (null != e) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(v);
+                }
+            });
+        }
+
+        /**
+         * Returns the future of a caller, that it can cancel without affecting the others.
+         */
+        CompletableFuture<List<TimeSeries>> waitFor(Deadline callerDeadline) {
+            var waiter = Futures.withDeadline(result, callerDeadline);
+            waiter.whenComplete((v, e) -> leave());
+            return waiter;
+        }
+
+        private void leave() {
+            synchronized (this) {
+                waiters--;
+                if (waiters > 0 || result.isDone()) {
+                    return;
+                }
+                abandoned = true;
+            }
+            inFlight.remove(key, this);
+            deadline.cancel();
+        }
+    }
+
+    private record Key(String query, long start, long end, long step) {
+    }
+}
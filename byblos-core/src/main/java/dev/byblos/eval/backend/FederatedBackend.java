@@ -0,0 +1,224 @@
+package dev.byblos.eval.backend;
+
+import com.netflix.iep.service.ClassFactory;
+import com.netflix.iep.service.DefaultClassFactory;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TagMap;
+import dev.byblos.model.TimeSeries;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Backend routing queries to several upstream backends, typically one Prometheus server per
+ * region, and merging their results.
+ * <p>
+ * The upstreams to query for an expression are picked as follows:
+ * <ul>
+ *     <li>An expression can name a single upstream explicitly with a {@code __backend__="name"}
+ *     matcher, which is removed before the query is sent.</li>
+ *     <li>Otherwise, the upstreams of all the routes matching the expression are used. A route
+ *     can match the prefix of a metric name, or label values.</li>
+ *     <li>If no route matches, all the upstreams are queried.</li>
+ * </ul>
+ * Routes are matched against the text of the expression, without parsing it. Upstreams are
+ * queried concurrently, and each series returned is tagged with the name of its upstream.
+ * Each upstream is a separate backend, with its own connections and concurrency limit.
+ */
+public final class FederatedBackend implements Backend {
+    private static final Pattern BACKEND_MATCHER = Pattern.compile("__backend__\\s*=\\s*\"([^\"]*)\"\\s*,?\\s*");
+    private static final Pattern TRAILING_COMMA = Pattern.compile(",\\s*}");
+
+    private final Map<String, Backend> upstreams;
+    private final List<Route> routes;
+    private final String sourceTag;
+
+    public FederatedBackend(Config config) {
+        this(config, new DefaultClassFactory());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param config       Configuration of the backend. Settings of each upstream default to
+     *                     the ones of this backend.
+     * @param classFactory Factory to instantiate the upstream backends.
+     */
+    FederatedBackend(Config config, ClassFactory classFactory) {
+        var federated = config.getConfig("federated");
+        // Upstreams inherit the settings of this backend, except its class.
+        var defaults = config.withoutPath("federated")
+                .withoutPath("class")
+                .withFallback(ConfigFactory.parseMap(Map.of("class", PrometheusBackend.class.getName())));
+        var backends = new LinkedHashMap<String, Backend>();
+        for (var upstream : federated.getConfigList("upstreams")) {
+            var name = upstream.getString("name");
+            var upstreamConfig = upstream.withFallback(defaults);
+            checkArgument(!backends.containsKey(name), "duplicate upstream [%s]", name);
+            backends.put(name, newInstance(classFactory, upstreamConfig));
+        }
+        checkArgument(!backends.isEmpty(), "at least one upstream is required");
+        this.upstreams = backends;
+        this.routes = federated.getConfigList("routes").stream().map(Route::fromConfig).toList();
+        for (var route : routes) {
+            route.upstreams().forEach(name -> checkArgument(upstreams.containsKey(name), "route to unknown upstream [%s]", name));
+        }
+        this.sourceTag = federated.getString("source-tag");
+    }
+
+    /**
+     * Constructor, mostly useful for testing.
+     *
+     * @param upstreams Backends to route the queries to, by name.
+     * @param routes    Routes to pick the backends.
+     * @param sourceTag Tag to add to each series, with the name of its backend as value.
+     */
+    FederatedBackend(Map<String, Backend> upstreams, List<Route> routes, String sourceTag) {
+        this.upstreams = new LinkedHashMap<>(upstreams);
+        this.routes = List.copyOf(routes);
+        this.sourceTag = sourceTag;
+    }
+
+    @Override
+    public List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException {
+        return Futures.await(queryAsync(context, expr));
+    }
+
+    @Override
+    public boolean supportsLimitPushdown() {
+        return upstreams.values().stream().allMatch(Backend::supportsLimitPushdown);
+    }
+
+    @Override
+    public CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+        Set<String> names;
+        DataExpr upstreamExpr;
+        try {
+            names = new LinkedHashSet<>();
+            upstreamExpr = route(expr, names);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        var sources = List.copyOf(names);
+        var futures = sources.stream().map(name -> upstreams.get(name).queryAsync(context, upstreamExpr)).toList();
+        var all = Futures.all(futures);
+        return Futures.propagateCancel(all.thenApply(results -> merge(sources, results)), all);
+    }
+
+    /**
+     * Select the upstreams to query for an expression.
+     *
+     * @param expr  Expression to route.
+     * @param names Set to which the names of the selected upstreams are added.
+     * @return Expression to send to the upstreams.
+     */
+    DataExpr route(DataExpr expr, Set<String> names) {
+        var str = expr.exprString();
+        var explicit = BACKEND_MATCHER.matcher(str);
+        if (explicit.find()) {
+            var name = explicit.group(1);
+            if (!upstreams.containsKey(name)) {
+                throw new IllegalArgumentException(String.format("unknown backend [%s]", name));
+            }
+            while (explicit.find()) {
+                if (!explicit.group(1).equals(name)) {
+                    throw new IllegalArgumentException("expression cannot be routed to several backends explicitly");
+                }
+            }
+            names.add(name);
+            var stripped = BACKEND_MATCHER.matcher(str).replaceAll("");
+            return new DataExpr(TRAILING_COMMA.matcher(stripped).replaceAll("}"));
+        }
+        for (var route : routes) {
+            if (route.matches(str)) {
+                names.addAll(route.upstreams());
+            }
+        }
+        if (names.isEmpty()) {
+            names.addAll(upstreams.keySet());
+        }
+        return expr;
+    }
+
+    private List<TimeSeries> merge(List<String> sources, List<List<TimeSeries>> results) {
+        var merged = new ArrayList<TimeSeries>();
+        for (var i = 0; i < sources.size(); i++) {
+            for (var series : results.get(i)) {
+                merged.add(withSource(series, sources.get(i)));
+            }
+        }
+        return merged;
+    }
+
+    private TimeSeries withSource(TimeSeries series, String source) {
+        var tags = TagMap.builder();
+        series.tags().forEach(tags::put);
+        tags.put(sourceTag, source);
+        var tag = sourceTag + "=" + source;
+        var label = series.label();
+        label = label.endsWith("}")
+                ? label.substring(0, label.length() - 1) + ", " + tag + "}"
+                : label + "{" + tag + "}";
+        return new TimeSeries(series.data(), label, tags.build());
+    }
+
+    private static Backend newInstance(ClassFactory classFactory, Config config) {
+        var className = config.getString("class");
+        try {
+            return classFactory.newInstance(className, clz -> config);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("backend class [" + className + "] does not exist", e);
+        }
+    }
+
+    /**
+     * Rule sending the expressions it matches to some upstreams.
+     *
+     * @param upstreams Names of the upstreams to query.
+     * @param patterns  Patterns that must all be found in the expression.
+     */
+    record Route(List<String> upstreams, List<Pattern> patterns) {
+        /**
+         * Create a route.
+         *
+         * @param upstreams    Names of the upstreams to query.
+         * @param metricPrefix Prefix of a metric name used in the expression, if not empty.
+         * @param labels       Label values the expression must select with equality matchers.
+         */
+        static Route of(List<String> upstreams, String metricPrefix, Map<String, String> labels) {
+            var patterns = new ArrayList<Pattern>();
+            if (!metricPrefix.isEmpty()) {
+                patterns.add(Pattern.compile("(?<![\\w:\"])" + Pattern.quote(metricPrefix)));
+            }
+            labels.forEach((k, v) -> patterns.add(Pattern.compile("(?<!\\w)" + Pattern.quote(k) + "\\s*=\\s*\"" + Pattern.quote(v) + "\"")));
+            checkArgument(!patterns.isEmpty(), "a route needs a metric prefix or labels");
+            return new Route(List.copyOf(upstreams), List.copyOf(patterns));
+        }
+
+        static Route fromConfig(Config config) {
+            var labels = config.hasPath("labels")
+                    ? config.getConfig("labels").root().unwrapped().entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> String.valueOf(e.getValue())))
+                    : Map.<String, String>of();
+            var prefix = config.hasPath("metric-prefix") ? config.getString("metric-prefix") : "";
+            return of(config.getStringList("upstreams"), prefix, labels);
+        }
+
+        boolean matches(String expr) {
+            return patterns.stream().allMatch(p -> p.matcher(expr).find());
+        }
+    }
+}
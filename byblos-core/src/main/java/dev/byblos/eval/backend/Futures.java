@@ -0,0 +1,123 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.Deadline;
+import dev.byblos.model.DeadlineExceededException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers to work with futures.
+ */
+final class Futures {
+    private static final Duration FOREVER = Duration.ofNanos(Long.MAX_VALUE);
+
+    /**
+     * Wait for a future to complete. If the current thread is interrupted while waiting, the
+     * future is cancelled.
+     */
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while executing a request", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Combine futures into one completed with all their results, in order. It fails as soon
+     * as any of them fails, cancelling the others. Cancelling it cancels all of them.
+     */
+    static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        var result = new CompletableFuture<List<T>>();
+        futures.forEach(future -> future.whenComplete((v, e) -> {
+            if (null != e) {
+                result.completeExceptionally(e);
+            }
+        }));
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenAccept(v -> result.complete(futures.stream().map(CompletableFuture::join).toList()));
+        // No-op for the futures that already completed.
+        result.whenComplete((v, e) -> {
+            if (null != e) {
+                futures.forEach(f -> f.cancel(true));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancel a future when a future derived from it is cancelled, returning the latter.
+     */
+    static <T> CompletableFuture<T> propagateCancel(CompletableFuture<T> derived, CompletableFuture<?> source) {
+        derived.whenComplete((v, e) -> {
+            if (derived.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return derived;
+    }
+
+    /**
+     * Bound the wait for a future by a deadline. The returned future fails with a
+     * {@link DeadlineExceededException} once the deadline expires or is cancelled, while the
+     * given future is left untouched, so that it can be shared with other waiters.
+     */
+    static <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, Deadline deadline) {
+        var result = new CompletableFuture<T>();
+        future.whenComplete((v, e) -> {
+            if (null != e) {
+                result.completeExceptionally(e instanceof CompletionException && null != e.getCause() ? e.getCause() : e);
+            } else {
+                result.complete(v);
+            }
+        });
+        var unregister = deadline.onCancel(() -> result.completeExceptionally(new DeadlineExceededException("request was cancelled")));
+        var remaining = deadline.remaining(FOREVER);
+        if (remaining.compareTo(FOREVER) < 0) {
+            var timer = new CompletableFuture<Void>().orTimeout(remaining.toNanos(), TimeUnit.NANOSECONDS);
+            timer.whenComplete((v, e) -> {
+                if (null != e) {
+                    result.completeExceptionally(new DeadlineExceededException("request deadline exceeded"));
+                }
+            });
+            // Completing the timer cancels its scheduled timeout.
+            result.whenComplete((v, e) -> timer.complete(null));
+        }
+        result.whenComplete((v, e) -> unregister.run());
+        return result;
+    }
+
+    /**
+     * Unwrap the cause of a failed future. Unchecked exceptions are rethrown as is, and the
+     * IOException to throw is returned otherwise.
+     *
+     * @param e Exception thrown by the future.
+     */
+    static IOException unwrap(ExecutionException e) {
+        var cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    private Futures() {
+        // Do not instantiate.
+    }
+}
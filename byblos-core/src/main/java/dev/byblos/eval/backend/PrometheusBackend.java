@@ -1,22 +1,23 @@
 package dev.byblos.eval.backend;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.typesafe.config.Config;
 import dev.byblos.model.DataExpr;
+import dev.byblos.model.Deadline;
+import dev.byblos.model.DeadlineExceededException;
 import dev.byblos.model.EvalContext;
-import dev.byblos.model.FunctionTimeSeq;
+import dev.byblos.model.TagMap;
 import dev.byblos.model.TimeSeries;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -24,82 +25,377 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Backend querying a Prometheus server.
+ * <p>
+ * Requests are sent asynchronously, over HTTP/2 if the server supports it so that concurrent
+ * requests are multiplexed over a single connection. The number of requests in flight to the
+ * server is limited, additional requests being queued without blocking the caller.
+ * <p>
+ * Queries covering a long time range can optionally be split into several shards, fetched
+ * concurrently and stitched back together into one series per label set. Shard boundaries are
+ * aligned on multiples of the shard size, so that the same sub-ranges are requested whatever
+ * the range of the original query.
+ * <p>
+ * Responses are decoded as they are received, without buffering their body, on a pool of
+ * threads distinct from those of the HTTP client so that they are never blocked by a slow
+ * transfer. They can be compressed with gzip or deflate, in which case they are decompressed
+ * on the fly.
+ * <p>
+ * Several replicas serving the same data can be configured, requests being balanced among
+ * them. Requests can optionally be hedged: if no response came back once a percentile of the
+ * recent latency has elapsed, a duplicate is sent to another replica, and the first successful
+ * response is used. Hedged requests share the concurrency slot of the original one.
+ */
 public final class PrometheusBackend implements Backend {
     private final Config config;
-    private final String baseUrl;
+    private final ReplicaSet replicas;
+    private final Duration requestTimeout;
     private final HttpClient client;
-    private final ObjectMapper objectMapper;
+    private final AsyncSemaphore semaphore;
+    private final ThreadPoolExecutor decodeExecutor;
+    private final boolean shardingEnabled;
+    private final int shardSize;
+    private final int maxShards;
+    private final boolean compressionEnabled;
+    private final DistributionSummary compressedBytes;
+    private final DistributionSummary uncompressedBytes;
+    private final boolean hedgingEnabled;
+    private final double hedgingPercentile;
+    private final Duration hedgingMinDelay;
+    private final Counter hedgedRequests;
     private static final Logger LOGGER = LoggerFactory.getLogger(PrometheusBackend.class);
     private static final String NAME_TAG = "__name__";
 
     public PrometheusBackend(Config config) {
+        this(config, Metrics.globalRegistry);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param config   Configuration of the backend.
+     * @param registry Registry to report metrics about the size of the responses.
+     */
+    PrometheusBackend(Config config, MeterRegistry registry) {
         this.config = requireNonNull(config);
-        baseUrl = config.getString("endpoint");
-        client = newHttpClient();
-        objectMapper = newObjectMapper();
-        LOGGER.info("Connected to {}", baseUrl);
+        var endpoints = config.getStringList("replicas");
+        replicas = new ReplicaSet(
+                endpoints.isEmpty() ? List.of(config.getString("endpoint")) : endpoints,
+                config.getInt("ejection.consecutive-failures"),
+                config.getDuration("ejection.duration"),
+                registry,
+                System::nanoTime);
+        requestTimeout = config.getDuration("request-timeout");
+        client = newHttpClient(config.getDuration("connect-timeout"));
+        var maxConcurrentRequests = config.getInt("max-concurrent-requests");
+        semaphore = new AsyncSemaphore(maxConcurrentRequests);
+        // A response is decoded while holding its slot, so that there is no need for more
+        // threads than slots.
+        decodeExecutor = new ThreadPoolExecutor(
+                maxConcurrentRequests,
+                maxConcurrentRequests,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("byblos-decode-%d").setDaemon(true).build());
+        decodeExecutor.allowCoreThreadTimeOut(true);
+        shardingEnabled = config.getBoolean("sharding.enabled");
+        shardSize = config.getInt("sharding.shard-size");
+        maxShards = config.getInt("sharding.max-shards");
+        checkArgument(shardSize > 0, "sharding.shard-size must be > 0");
+        checkArgument(maxShards > 0, "sharding.max-shards must be > 0");
+        compressionEnabled = config.getBoolean("compression.enabled");
+        compressedBytes = responseBytes(registry, "compressed");
+        uncompressedBytes = responseBytes(registry, "uncompressed");
+        hedgingEnabled = config.getBoolean("hedging.enabled");
+        hedgingPercentile = config.getDouble("hedging.percentile");
+        hedgingMinDelay = config.getDuration("hedging.min-delay");
+        checkArgument(hedgingPercentile > 0 && hedgingPercentile <= 1, "hedging.percentile must be in (0, 1]");
+        hedgedRequests = Counter.builder("byblos.backend.hedged.requests").register(registry);
+        LOGGER.info("Connected to {}", endpoints.isEmpty() ? config.getString("endpoint") : endpoints);
     }
 
     @Override
     public List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException {
-        return query(context, expr.exprString()).stream()
-                .map(result -> toTimeSeries(context, result))
-                .collect(Collectors.toList());
+        return Futures.await(queryAsync(context, expr));
+    }
+
+    @Override
+    public boolean supportsLimitPushdown() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+        var shards = shardingEnabled ? shards(context, shardSize, maxShards) : List.of(context);
+        if (shards.size() == 1) {
+            return fetch(context, expr).thenApply(series -> series.stream()
+                    .map(PrometheusBackend::toTimeSeries)
+                    .collect(Collectors.toList()));
+        }
+        // Fail fast with the first error, there is no point in waiting for the other shards.
+        var all = Futures.all(shards.stream().map(shard -> fetch(shard, expr)).toList());
+        return Futures.propagateCancel(all.thenApply(results -> stitch(context, shards, results)), all);
+    }
+
+    private CompletableFuture<List<QueryRangeDecoder.Series>> fetch(EvalContext context, DataExpr expr) {
+        var path = "/api/v1/query_range?start=" + (context.start() / 1000) + "&end=" + (context.end() / 1000) + "&step=" + (context.step() / 1000) + "&query=" + urlEncode(expr.exprString());
+        var builder = newHttpRequest().header("Content-Type", "application/json");
+        if (compressionEnabled) {
+            builder.header("Accept-Encoding", "gzip, deflate");
+        }
+        return send(path, builder, response -> decode(response, context), context.deadline());
+    }
+
+    /**
+     * Send a request to the server, waiting for a slot if too many requests are in flight, and
+     * decode its response. The slot is held until the response is decoded. The request times
+     * out at the deadline, and is aborted if the deadline is cancelled.
+     *
+     * @param path    Path of the request, relative to the endpoint of the replica.
+     * @param builder Request to send, without its URI.
+     * @param decoder Decoder of the response, run on the decoding threads.
+     */
+    <T> CompletableFuture<T> send(String path, HttpRequest.Builder builder, BodyDecoder<T> decoder, Deadline deadline) {
+        var future = semaphore.submit(() -> receive(exchange(path, builder, deadline), decoder));
+        var unregister = deadline.onCancel(() -> future.cancel(true));
+        future.whenComplete((v, e) -> unregister.run());
+        return future;
     }
 
-    private List<Result> query(EvalContext context, String query) throws IOException {
-        var request = newHttpRequest("/api/v1/query_range?start=" + (context.start() / 1000) + "&end=" + (context.end() / 1000) + "&step=" + (context.step() / 1000) + "&query=" + urlEncode(query))
-                .header("Content-Type", "application/json")
+    /**
+     * Send a request to a replica, hedging it if enabled, and return the response once its
+     * headers are received.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> exchange(String path, HttpRequest.Builder builder, Deadline deadline) {
+        var primary = replicas.select(Optional.empty());
+        var first = sendTo(primary, path, builder, deadline);
+        var delay = hedgeDelay();
+        if (delay.isEmpty()) {
+            return first;
+        }
+        // A duplicate is sent to another replica if the first one is too slow to answer.
+        var exchange = new HedgedExchange(first);
+        CompletableFuture.delayedExecutor(delay.get().toNanos(), TimeUnit.NANOSECONDS).execute(() -> exchange.hedge(() -> {
+            hedgedRequests.increment();
+            return sendTo(replicas.select(Optional.of(primary)), path, builder, deadline);
+        }));
+        return exchange.result();
+    }
+
+    /**
+     * Decode a response on the decoding threads. Cancelling the result closes the body, which
+     * aborts its transfer.
+     */
+    private <T> CompletableFuture<T> receive(CompletableFuture<HttpResponse<InputStream>> response, BodyDecoder<T> decoder) {
+        var result = new CompletableFuture<T>();
+        response.whenComplete((r, e) -> {
+            if (null != e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.whenComplete((v, x) -> {
+                if (result.isCancelled()) {
+                    discard(r);
+                }
+            });
+            decodeExecutor.execute(() -> {
+                try (var body = r.body()) {
+                    result.complete(decoder.decode(r));
+                } catch (IOException | RuntimeException x) {
+                    result.completeExceptionally(x);
+                }
+            });
+        });
+        return Futures.propagateCancel(result, response);
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> sendTo(ReplicaSet.Replica replica, String path, HttpRequest.Builder builder, Deadline deadline) {
+        var timeout = deadline.remaining(requestTimeout);
+        if (timeout.isZero()) {
+            return CompletableFuture.failedFuture(new DeadlineExceededException("request deadline exceeded before sending the query"));
+        }
+        var request = builder.copy()
+                .uri(URI.create(replica.endpoint() + path))
+                .timeout(timeout)
                 .build();
-        try {
-            var httpResponse = client.send(request, HttpResponse.BodyHandlers.ofString());
-            validateResponse(httpResponse);
-            var response = objectMapper.readValue(httpResponse.body(), QueryResponse.class);
-            return response.data.result;
-        } catch (InterruptedException e) {
-            LOGGER.warn("Interrupted while executing a request", e);
-            return List.of();
+        var startedAt = replica.start();
+        var future = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        // The outcome is recorded before the result completes, so that the latency of a
+        // request is known to the requests issued after it.
+        var result = new CompletableFuture<HttpResponse<InputStream>>();
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()) {
+                replica.cancelled();
+            } else if (null != e || response.statusCode() >= 500) {
+                replica.failure();
+            } else {
+                replica.success(startedAt);
+            }
+            if (null != e) {
+                result.completeExceptionally(e);
+            } else if (!result.complete(response)) {
+                discard(response);
+            }
+        });
+        result.whenComplete((v, e) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns how long to wait for a response before hedging a request, or empty if requests
+     * are not hedged.
+     */
+    private Optional<Duration> hedgeDelay() {
+        if (!hedgingEnabled || replicas.size() < 2) {
+            return Optional.empty();
+        }
+        return replicas.latency(hedgingPercentile).map(d -> d.compareTo(hedgingMinDelay) < 0 ? hedgingMinDelay : d);
+    }
+
+    /**
+     * Split a context into step-aligned sub-ranges, each ending just before a multiple of the
+     * shard size, except that a shard covering a single step is merged with its neighbour.
+     * <p>
+     * The shard size is increased by multiples of itself if needed to respect the maximum
+     * number of shards. Contexts whose start is not aligned on the step are not split, as
+     * Prometheus would then evaluate the shards at different timestamps.
+     *
+     * @param context   Context to split.
+     * @param shardSize Number of steps in each shard.
+     * @param maxShards Maximum number of shards.
+     * @return Contexts covering the same range as the input one, in order.
+     */
+    static List<EvalContext> shards(EvalContext context, int shardSize, int maxShards) {
+        var step = context.step();
+        if (context.start() % step != 0 || (context.end() - context.start()) / step < shardSize) {
+            return List.of(context);
+        }
+        var size = shardSize * step;
+        while (Math.floorDiv(context.end(), size) - Math.floorDiv(context.start(), size) + 1 > maxShards) {
+            size += shardSize * step;
+        }
+        var shards = new ArrayList<EvalContext>();
+        var start = context.start();
+        while (start <= context.end()) {
+            var end = Math.min((Math.floorDiv(start, size) + 1) * size - step, context.end());
+            // A context must cover at least two steps, single step shards are merged with the
+            // following or previous one.
+            if (end == start) {
+                end = Math.min(end + size, context.end());
+            }
+            if (context.end() - end == step) {
+                end = context.end();
+            }
+            shards.add(context.withRange(start, end));
+            start = end + step;
+        }
+        return shards;
+    }
+
+    private static List<TimeSeries> stitch(EvalContext context, List<EvalContext> shards, List<List<QueryRangeDecoder.Series>> results) {
+        var builders = new LinkedHashMap<Map<String, String>, TimeSeqBuilder>();
+        for (var i = 0; i < shards.size(); i++) {
+            var shard = shards.get(i);
+            for (var series : results.get(i)) {
+                var builder = builders.computeIfAbsent(series.metric(), k -> new TimeSeqBuilder(context));
+                for (var t = shard.start(); t <= shard.end(); t += shard.step()) {
+                    builder.add(t, series.data().get(t));
+                }
+            }
+        }
+        return builders.entrySet().stream()
+                .map(e -> toTimeSeries(new QueryRangeDecoder.Series(e.getKey(), e.getValue().build())))
+                .collect(Collectors.toList());
+    }
+
+    private List<QueryRangeDecoder.Series> decode(HttpResponse<InputStream> response, EvalContext context) throws IOException {
+        var encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        var compressed = new CountingInputStream(response.body());
+        var in = new CountingInputStream(decompress(compressed, encoding));
+        if (response.statusCode() != 200) {
+            validateResponse(response.statusCode(), in.readAllBytes());
         }
+        var series = QueryRangeDecoder.decode(in, context);
+        compressedBytes.record(compressed.getCount());
+        uncompressedBytes.record(in.getCount());
+        return series;
     }
 
-    private static TimeSeries toTimeSeries(EvalContext context, Result result) {
-        if (result.values.isEmpty()) {
-            throw new RuntimeException("Histograms are not supported");
+    /**
+     * Close the body of a response that is not used, which aborts its transfer.
+     */
+    private static void discard(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close an unused response", e);
         }
-        var label = result.metric.get(NAME_TAG);
-        var tags = new HashMap<>(result.metric);
-        tags.remove(NAME_TAG);
+    }
+
+    private static InputStream decompress(InputStream in, String encoding) throws IOException {
+        return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(in);
+            case "deflate" -> new InflaterInputStream(in);
+            case "identity", "" -> in;
+            default -> throw new IOException(String.format("Unsupported content encoding [%s]", encoding));
+        };
+    }
+
+    private static DistributionSummary responseBytes(MeterRegistry registry, String type) {
+        return DistributionSummary.builder("byblos.backend.response.bytes")
+                .baseUnit("bytes")
+                .tag("type", type)
+                .register(registry);
+    }
+
+    static TimeSeries toTimeSeries(QueryRangeDecoder.Series series) {
+        var metric = TagMap.of(series.metric());
+        var label = metric.get(NAME_TAG);
+        var tags = metric.without(NAME_TAG);
         if (!tags.isEmpty()) {
-            label += "{" + TimeSeries.defaultLabel(tags) + "}";
+            label += "{" + tags.defaultLabel() + "}";
         }
-        var values = result.values.stream().collect(Collectors.toMap(v -> v.time.toEpochMilli(), v -> v.value));
-        var data = new FunctionTimeSeq(context.step(), t -> values.getOrDefault(t, Double.NaN));
-        return new TimeSeries(data, label, result.metric);
+        return new TimeSeries(series.data(), label, metric);
     }
 
     private static String urlEncode(String str) {
         return URLEncoder.encode(str, StandardCharsets.UTF_8);
     }
 
-    private static void validateResponse(HttpResponse<String> response) throws IOException {
-        if (response.statusCode() != 200) {
-            throw new IOException(String.format("Unexpected status code [%s]: %s", response.statusCode(), response.body()));
+    static void validateResponse(int statusCode, byte[] body) throws IOException {
+        if (statusCode != 200) {
+            var message = new String(body, StandardCharsets.UTF_8);
+            throw new IOException(String.format("Unexpected status code [%s]: %s", statusCode, message));
         }
     }
 
-    private HttpRequest.Builder newHttpRequest(String path) {
-        var builder = HttpRequest.newBuilder()
-                .uri(URI.create(config.getString("endpoint") + path))
-                .timeout(Duration.ofMinutes(2));
+    HttpRequest.Builder newHttpRequest() {
+        var builder = HttpRequest.newBuilder();
         var auth = config.getString("auth");
         if ("basic".equals(auth)) {
             applyBasicAuth(builder);
@@ -125,62 +421,81 @@ public final class PrometheusBackend implements Backend {
         builder.header("Authorization", "Bearer " + token);
     }
 
-    private static HttpClient newHttpClient() {
-        return HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(5))
-                .build();
-    }
-
-    private static ObjectMapper newObjectMapper() {
-        var objectMapper = new ObjectMapper();
-        objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-        return objectMapper;
+    /**
+     * Decoder of a response, reading its body as it is received.
+     */
+    @FunctionalInterface
+    interface BodyDecoder<T> {
+        T decode(HttpResponse<InputStream> response) throws IOException;
     }
 
-    private static class QueryResponse {
-        @JsonProperty
-        public RangeVector data;
-    }
-
-    private static class RangeVector {
-        @JsonProperty
-        public List<Result> result = List.of();
-    }
+    /**
+     * Request sent to one or two replicas, completing with the first successful response. A
+     * failure is only reported once no other attempt is in flight, and no duplicate is sent
+     * once the first attempt has failed.
+     */
+    private static final class HedgedExchange {
+        private final CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        private final List<CompletableFuture<HttpResponse<InputStream>>> attempts = new ArrayList<>();
+        private int inFlight;
 
-    private static class Result {
-        @JsonProperty
-        public Map<String, String> metric;
-        @JsonProperty
-        public List<ScalarValue> values;
-    }
+        HedgedExchange(CompletableFuture<HttpResponse<InputStream>> first) {
+            add(first);
+            result.whenComplete((v, e) -> cancelAttempts());
+        }
 
-    @JsonDeserialize(using = ScalarValueDeserializer.class)
-    private static class ScalarValue {
-        public Instant time;
-        public double value;
+        CompletableFuture<HttpResponse<InputStream>> result() {
+            return result;
+        }
 
-        public ScalarValue(Instant time, double value) {
-            this.time = time;
-            this.value = value;
+        void hedge(Supplier<CompletableFuture<HttpResponse<InputStream>>> send) {
+            synchronized (this) {
+                if (inFlight == 0 || result.isDone()) {
+                    return;
+                }
+                add(send.get());
+            }
         }
-    }
 
-    private static class ScalarValueDeserializer extends StdDeserializer<ScalarValue> {
-        public ScalarValueDeserializer(Class<?> vc) {
-            super(vc);
+        private synchronized void add(CompletableFuture<HttpResponse<InputStream>> attempt) {
+            attempts.add(attempt);
+            inFlight++;
+            attempt.whenComplete(this::onComplete);
         }
 
-        @SuppressWarnings("unused")
-        public ScalarValueDeserializer() {
-            this(null);
+        private void onComplete(HttpResponse<InputStream> response, Throwable e) {
+            var ok = null == e && response.statusCode() < 500;
+            synchronized (this) {
+                inFlight--;
+                if (!ok && inFlight > 0) {
+                    if (null != response) {
+                        discard(response);
+                    }
+                    return;
+                }
+            }
+            if (null != e) {
+                result.completeExceptionally(e);
+            } else if (!result.complete(response)) {
+                // Another attempt won.
+                discard(response);
+            }
         }
 
-        @Override
-        public ScalarValue deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
-            JsonNode node = jsonParser.getCodec().readTree(jsonParser);
-            var time = Instant.ofEpochSecond(node.get(0).longValue());
-            var value = Double.parseDouble(node.get(1).textValue());
-            return new ScalarValue(time, value);
+        private void cancelAttempts() {
+            List<CompletableFuture<HttpResponse<InputStream>>> toCancel;
+            synchronized (this) {
+                toCancel = List.copyOf(attempts);
+            }
+            // No-op for the attempt that completed the result.
+            toCancel.forEach(f -> f.cancel(true));
         }
     }
+
+    private static HttpClient newHttpClient(Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
 }
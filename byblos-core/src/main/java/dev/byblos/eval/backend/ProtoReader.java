@@ -0,0 +1,142 @@
+package dev.byblos.eval.backend;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader for the protocol buffers wire format, decoding fields in place from a byte
+ * array. Only the wire types used by the Prometheus remote-read protocol are supported.
+ */
+final class ProtoReader {
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+
+    ProtoReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    ProtoReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    boolean hasRemaining() {
+        return pos < limit;
+    }
+
+    /**
+     * Read the key of the next field, combining its number and wire type.
+     */
+    int readTag() throws IOException {
+        return (int) readVarint();
+    }
+
+    static int fieldNumber(int tag) {
+        return tag >>> 3;
+    }
+
+    static int wireType(int tag) {
+        return tag & 0x7;
+    }
+
+    long readVarint() throws IOException {
+        var result = 0L;
+        for (var shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit) {
+                throw new IOException("Truncated varint");
+            }
+            var b = buf[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    double readDouble() throws IOException {
+        return Double.longBitsToDouble(readFixed64());
+    }
+
+    long readFixed64() throws IOException {
+        ensure(8);
+        var result = 0L;
+        for (var i = 0; i < 8; i++) {
+            result |= (buf[pos++] & 0xffL) << (8 * i);
+        }
+        return result;
+    }
+
+    String readString() throws IOException {
+        var length = readLength();
+        var str = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return str;
+    }
+
+    /**
+     * Read a length-delimited field, returning a reader positioned on its content.
+     */
+    ProtoReader readMessage() throws IOException {
+        var length = readLength();
+        var reader = new ProtoReader(buf, pos, length);
+        pos += length;
+        return reader;
+    }
+
+    /**
+     * Return the underlying array. Along with {@link #position()} and {@link #remaining()}, it
+     * allows to decode bytes fields without copying them.
+     */
+    byte[] array() {
+        return buf;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    int remaining() {
+        return limit - pos;
+    }
+
+    void skip(int wireType) throws IOException {
+        switch (wireType) {
+            case VARINT -> readVarint();
+            case FIXED64 -> {
+                ensure(8);
+                pos += 8;
+            }
+            case LENGTH_DELIMITED -> {
+                var length = readLength();
+                pos += length;
+            }
+            case FIXED32 -> {
+                ensure(4);
+                pos += 4;
+            }
+            default -> throw new IOException(String.format("Unsupported wire type [%s]", wireType));
+        }
+    }
+
+    private int readLength() throws IOException {
+        var length = readVarint();
+        if (length < 0 || length > limit - pos) {
+            throw new IOException(String.format("Invalid length [%s]", length));
+        }
+        return (int) length;
+    }
+
+    private void ensure(int length) throws IOException {
+        if (limit - pos < length) {
+            throw new IOException("Truncated message");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package dev.byblos.eval.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal writer for the protocol buffers wire format, counterpart of {@link ProtoReader}.
+ */
+final class ProtoWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    ProtoWriter writeVarint(int field, long value) {
+        writeTag(field, ProtoReader.VARINT);
+        writeRawVarint(value);
+        return this;
+    }
+
+    ProtoWriter writeDouble(int field, double value) {
+        writeTag(field, ProtoReader.FIXED64);
+        var bits = Double.doubleToRawLongBits(value);
+        for (var i = 0; i < 8; i++) {
+            out.write((int) (bits >>> (8 * i)));
+        }
+        return this;
+    }
+
+    ProtoWriter writeString(int field, String value) {
+        return writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    ProtoWriter writeMessage(int field, ProtoWriter message) {
+        return writeBytes(field, message.toByteArray());
+    }
+
+    ProtoWriter writeBytes(int field, byte[] value) {
+        writeTag(field, ProtoReader.LENGTH_DELIMITED);
+        writeRawVarint(value.length);
+        out.writeBytes(value);
+        return this;
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeRawVarint((long) field << 3 | wireType);
+    }
+
+    private void writeRawVarint(long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,245 @@
+package dev.byblos.eval.backend;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TagMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming decoder for the response of the Prometheus `/api/v1/query_range` endpoint.
+ * <p>
+ * The response is read token by token, and the values of each series are written straight
+ * into a {@link TimeSeqBuilder}. Samples are never materialized as objects, and there is no
+ * intermediate tree or string for the whole body.
+ */
+final class QueryRangeDecoder {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Powers of ten that can be exactly represented as a double.
+     */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (var i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    /**
+     * A decoded series.
+     *
+     * @param metric Labels of the series, including the metric name.
+     * @param data   Values of the series over the range of the evaluation context.
+     */
+    record Series(Map<String, String> metric, ArrayTimeSeq data) {
+    }
+
+    private final EvalContext context;
+
+    private QueryRangeDecoder(EvalContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Decode a query response. The stream is closed once the response has been consumed.
+     */
+    static List<Series> decode(InputStream in, EvalContext context) throws IOException {
+        try (var parser = JSON_FACTORY.createParser(in)) {
+            return new QueryRangeDecoder(context).decodeResponse(parser);
+        }
+    }
+
+    private List<Series> decodeResponse(JsonParser parser) throws IOException {
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        String status = null;
+        String error = null;
+        List<Series> series = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.getCurrentName();
+            var token = parser.nextToken();
+            switch (field) {
+                case "status" -> status = parser.getText();
+                case "error" -> error = parser.getText();
+                case "data" -> series = decodeData(parser, token);
+                default -> parser.skipChildren();
+            }
+        }
+        if (null != status && !"success".equals(status)) {
+            throw new IOException(String.format("Query failed with status [%s]: %s", status, error));
+        }
+        return series;
+    }
+
+    private List<Series> decodeData(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_OBJECT);
+        List<Series> series = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.getCurrentName();
+            token = parser.nextToken();
+            switch (field) {
+                case "resultType" -> {
+                    if (!"matrix".equals(parser.getText())) {
+                        throw new IOException(String.format("Unexpected result type [%s]", parser.getText()));
+                    }
+                }
+                case "result" -> series = decodeResult(parser, token);
+                default -> parser.skipChildren();
+            }
+        }
+        return series;
+    }
+
+    private List<Series> decodeResult(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_ARRAY);
+        var series = new ArrayList<Series>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            series.add(decodeSeries(parser));
+        }
+        return series;
+    }
+
+    private Series decodeSeries(JsonParser parser) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        Map<String, String> metric = Map.of();
+        ArrayTimeSeq data = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.getCurrentName();
+            var token = parser.nextToken();
+            switch (field) {
+                case "metric" -> metric = decodeMetric(parser, token);
+                case "values" -> data = decodeValues(parser, token);
+                case "histograms" -> throw new IOException("Histograms are not supported");
+                default -> parser.skipChildren();
+            }
+        }
+        if (null == data) {
+            throw new IOException("Histograms are not supported");
+        }
+        return new Series(metric, data);
+    }
+
+    private static Map<String, String> decodeMetric(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_OBJECT);
+        var metric = TagMap.builder();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var key = parser.getCurrentName();
+            parser.nextToken();
+            metric.put(key, parser.getText());
+        }
+        return metric.build();
+    }
+
+    private ArrayTimeSeq decodeValues(JsonParser parser, JsonToken token) throws IOException {
+        expect(parser, token, JsonToken.START_ARRAY);
+        var builder = new TimeSeqBuilder(context);
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            var timestamp = decodeTimestamp(parser, parser.nextToken());
+            expect(parser, parser.nextToken(), JsonToken.VALUE_STRING);
+            builder.add(timestamp, decodeValue(parser));
+            expect(parser, parser.nextToken(), JsonToken.END_ARRAY);
+        }
+        expect(parser, parser.currentToken(), JsonToken.END_ARRAY);
+        return builder.build();
+    }
+
+    /**
+     * Timestamps are expressed in seconds, possibly with a fractional part.
+     */
+    private static long decodeTimestamp(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue() * 1000L;
+        }
+        expect(parser, token, JsonToken.VALUE_NUMBER_FLOAT);
+        return Math.round(parser.getDoubleValue() * 1000.0);
+    }
+
+    /**
+     * Values are encoded as strings. Most of them are short decimals which are parsed
+     * directly from the parser buffer, falling back to the JDK for other cases.
+     */
+    private static double decodeValue(JsonParser parser) throws IOException {
+        var chars = parser.getTextCharacters();
+        var offset = parser.getTextOffset();
+        var length = parser.getTextLength();
+        var v = parseSimpleDecimal(chars, offset, length);
+        if (!Double.isNaN(v)) {
+            return v;
+        }
+        var str = new String(chars, offset, length);
+        return switch (str) {
+            case "NaN" -> Double.NaN;
+            case "+Inf", "Inf" -> Double.POSITIVE_INFINITY;
+            case "-Inf" -> Double.NEGATIVE_INFINITY;
+            default -> {
+                try {
+                    yield Double.parseDouble(str);
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("Invalid sample value [%s]", str), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Parse a decimal number without exponent, such as `-12.5`. Returns NaN if the input is not
+     * of this form or cannot be parsed exactly. When the digits fit in the 53 bits of a double
+     * mantissa and the power of ten is exactly representable, a single division gives the
+     * correctly rounded result.
+     */
+    static double parseSimpleDecimal(char[] chars, int offset, int length) {
+        var i = offset;
+        var end = offset + length;
+        var negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        var mantissa = 0L;
+        var sawDigit = false;
+        var significantDigits = 0;
+        var fractionDigits = -1;
+        for (; i < end; i++) {
+            var c = chars[i];
+            if (c >= '0' && c <= '9') {
+                sawDigit = true;
+                // Leading zeros do not consume precision.
+                if ((mantissa != 0 || c != '0') && ++significantDigits > 15) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (!sawDigit) {
+            return Double.NaN;
+        }
+        var scale = Math.max(fractionDigits, 0);
+        if (scale >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        var v = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -v : v;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException(String.format("Unexpected token %s at %s, expected %s", actual, parser.getCurrentLocation(), expected));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package dev.byblos.eval.backend;
+
+import com.netflix.iep.service.DefaultClassFactory;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValueFactory;
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TagMap;
+import dev.byblos.model.TimeSeries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Backend recording the results of another backend to a file, or replaying them from it.
+ * <p>
+ * In record mode, queries are sent to the wrapped backend, and each successful result is
+ * appended to the file along with the expression and time range it answers. In replay mode,
+ * the file is memory-mapped and queries are answered from it without any network access,
+ * which allows to benchmark the rest of the pipeline deterministically. Queries not found in
+ * the recording fail.
+ * <p>
+ * By default, a query must match a recorded one exactly. Recordings can optionally be
+ * time-shifted, in which case a query matches a recorded one with the same expression, step
+ * and duration, whose data is shifted to the requested time range. This allows to replay
+ * queries relative to "now" long after they were recorded.
+ * <p>
+ * The file starts with a magic number and a version, followed by one record per result:
+ * <pre>
+ * record = length:int expr:string start:long end:long step:long count:int series*
+ * series = label:string tags:int (key:string value:string)* start:long values:int double*
+ * string = length:int utf8-bytes
+ * </pre>
+ * All numbers are big-endian. The sequence of each series covers the time range of its
+ * query. Files are limited to 2 GiB.
+ */
+public final class RecordReplayBackend implements Backend {
+    private static final int MAGIC = 0x42594252;
+    private static final int VERSION = 1;
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordReplayBackend.class);
+
+    enum Mode {
+        RECORD, REPLAY
+    }
+
+    private final Mode mode;
+    private final Backend delegate;
+    private final OutputStream out;
+    private final ByteBuffer recording;
+    private final Map<Key, Integer> index;
+    private final boolean timeShift;
+
+    public RecordReplayBackend(Config config) throws IOException {
+        this(
+                Mode.valueOf(config.getString("record-replay.mode").toUpperCase(Locale.ROOT)),
+                Path.of(config.getString("record-replay.file")),
+                config.getBoolean("record-replay.time-shift"),
+                config);
+    }
+
+    private RecordReplayBackend(Mode mode, Path file, boolean timeShift, Config config) throws IOException {
+        this(mode == Mode.RECORD ? newDelegate(config) : null, file, mode, timeShift);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate  Backend to record, only used in record mode.
+     * @param file      File to record to or replay from.
+     * @param mode      Whether to record or replay.
+     * @param timeShift Whether to replay recorded results for queries at another time.
+     */
+    RecordReplayBackend(Backend delegate, Path file, Mode mode, boolean timeShift) throws IOException {
+        this.mode = requireNonNull(mode);
+        this.timeShift = timeShift;
+        if (mode == Mode.RECORD) {
+            this.delegate = requireNonNull(delegate);
+            var exists = Files.exists(file) && Files.size(file) > 0;
+            out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            if (!exists) {
+                var header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.flush();
+            }
+            recording = null;
+            index = Map.of();
+            LOGGER.info("Recording backend results to {}", file);
+        } else {
+            this.delegate = null;
+            out = null;
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("recording [%s] is larger than 2 GiB", file));
+                }
+                recording = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            index = buildIndex(recording, timeShift);
+            LOGGER.info("Replaying {} backend results from {}", index.size(), file);
+        }
+    }
+
+    @Override
+    public List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException {
+        return Futures.await(queryAsync(context, expr));
+    }
+
+    @Override
+    public CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+        if (mode == Mode.RECORD) {
+            return delegate.queryAsync(context, expr).thenApply(result -> {
+                try {
+                    record(context, expr, result);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return result;
+            });
+        }
+        var offset = index.get(key(expr.exprString(), context.start(), context.end(), context.step(), timeShift));
+        if (null == offset) {
+            return CompletableFuture.failedFuture(new IOException(String.format("no recorded result for [%s] from %s to %s", expr.exprString(), context.start(), context.end())));
+        }
+        return CompletableFuture.completedFuture(replay(offset, context));
+    }
+
+    private void record(EvalContext context, DataExpr expr, List<TimeSeries> result) throws IOException {
+        var start = Math.floorDiv(context.start(), context.step()) * context.step();
+        var size = (int) ((context.end() - start) / context.step()) + 1;
+        var baos = new ByteArrayOutputStream();
+        var data = new DataOutputStream(baos);
+        writeString(data, expr.exprString());
+        data.writeLong(context.start());
+        data.writeLong(context.end());
+        data.writeLong(context.step());
+        data.writeInt(result.size());
+        for (var series : result) {
+            writeString(data, series.label());
+            data.writeInt(series.tags().size());
+            for (var tag : series.tags().entrySet()) {
+                writeString(data, tag.getKey());
+                writeString(data, tag.getValue());
+            }
+            data.writeLong(start);
+            data.writeInt(size);
+            for (var i = 0; i < size; i++) {
+                data.writeDouble(series.data().get(start + i * context.step()));
+            }
+        }
+        data.flush();
+        synchronized (out) {
+            var header = new DataOutputStream(out);
+            header.writeInt(baos.size());
+            baos.writeTo(out);
+            // Flushed after each record, as the backend is never closed.
+            out.flush();
+        }
+    }
+
+    private List<TimeSeries> replay(int offset, EvalContext context) {
+        var buf = recording.duplicate().position(offset);
+        buf.getInt();
+        readString(buf);
+        var recordedStart = buf.getLong();
+        buf.getLong();
+        var step = buf.getLong();
+        // Data is shifted by whole steps, recorded values are never interpolated.
+        var shift = timeShift ? Math.floorDiv(context.start(), step) * step - Math.floorDiv(recordedStart, step) * step : 0;
+        var count = buf.getInt();
+        var result = new ArrayList<TimeSeries>(count);
+        for (var i = 0; i < count; i++) {
+            var label = readString(buf);
+            var tagCount = buf.getInt();
+            var tags = TagMap.builder();
+            for (var j = 0; j < tagCount; j++) {
+                tags.put(readString(buf), readString(buf));
+            }
+            var start = buf.getLong();
+            var values = new double[buf.getInt()];
+            buf.asDoubleBuffer().get(values);
+            buf.position(buf.position() + values.length * Double.BYTES);
+            result.add(new TimeSeries(new ArrayTimeSeq(start + shift, step, values), label, tags.build()));
+        }
+        return result;
+    }
+
+    /**
+     * Index the records of a recording by query. Later records win over earlier ones for the
+     * same query, and a truncated record at the end of the file is ignored.
+     */
+    private static Map<Key, Integer> buildIndex(ByteBuffer recording, boolean timeShift) throws IOException {
+        var buf = recording.duplicate();
+        if (buf.remaining() < 8 || buf.getInt() != MAGIC) {
+            throw new IOException("not a recording of backend results");
+        }
+        var version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException(String.format("unsupported recording version [%s]", version));
+        }
+        var index = new HashMap<Key, Integer>();
+        while (buf.remaining() >= Integer.BYTES) {
+            var offset = buf.position();
+            var length = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                LOGGER.warn("Ignoring truncated record at offset {}", offset);
+                break;
+            }
+            var next = buf.position() + length;
+            try {
+                var expr = readString(buf);
+                index.put(key(expr, buf.getLong(), buf.getLong(), buf.getLong(), timeShift), offset);
+            } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+                throw new IOException(String.format("corrupted record at offset %s", offset), e);
+            }
+            buf.position(next);
+        }
+        return index;
+    }
+
+    private static Key key(String expr, long start, long end, long step, boolean timeShift) {
+        return timeShift ? new Key(expr, 0, end - start, step) : new Key(expr, start, end, step);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        var bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        var bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Backend newDelegate(Config config) {
+        var className = config.getString("record-replay.delegate-class");
+        try {
+            return new DefaultClassFactory().newInstance(className, clz -> config.withValue("class", ConfigValueFactory.fromAnyRef(className)));
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("backend class [" + className + "] does not exist", e);
+        }
+    }
+
+    private record Key(String expr, long start, long end, long step) {
+    }
+}
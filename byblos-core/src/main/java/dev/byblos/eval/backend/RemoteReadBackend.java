@@ -0,0 +1,88 @@
+package dev.byblos.eval.backend;
+
+import com.typesafe.config.Config;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Backend querying a Prometheus server through its remote-read endpoint.
+ * <p>
+ * Expressions that are plain series selectors are answered from the raw samples, which are
+ * transferred as compressed chunks in a binary format instead of JSON. Other expressions need
+ * to be evaluated by the server, and are sent to the `query_range` endpoint by a
+ * {@link PrometheusBackend}, with which requests share the same connection and concurrency
+ * limit.
+ */
+public final class RemoteReadBackend implements Backend {
+    private final PrometheusBackend fallback;
+    private final long lookback;
+
+    public RemoteReadBackend(Config config) {
+        fallback = new PrometheusBackend(config);
+        lookback = config.getDuration("remote-read.lookback-delta").toMillis();
+    }
+
+    @Override
+    public List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException {
+        return Futures.await(queryAsync(context, expr));
+    }
+
+    @Override
+    public CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+        var matchers = Selector.parse(expr.exprString());
+        if (matchers.isEmpty()) {
+            return fallback.queryAsync(context, expr);
+        }
+        var request = fallback.newHttpRequest()
+                .header("Content-Type", "application/x-protobuf")
+                .header("Content-Encoding", "snappy")
+                .header("X-Prometheus-Remote-Read-Version", "0.1.0")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(Snappy.compress(encodeRequest(context, matchers.get()))));
+        return fallback.send("/api/v1/read", request, response -> decode(response, context), context.deadline());
+    }
+
+    /**
+     * Encode a read request with a single query. Samples needed to fill the first steps may be
+     * up to the lookback delta older than the start of the context.
+     */
+    private byte[] encodeRequest(EvalContext context, List<Selector.Matcher> matchers) {
+        var query = new ProtoWriter()
+                .writeVarint(1, context.start() - lookback)
+                .writeVarint(2, context.end());
+        for (var matcher : matchers) {
+            query.writeMessage(3, new ProtoWriter()
+                    .writeVarint(1, matcher.type().ordinal())
+                    .writeString(2, matcher.name())
+                    .writeString(3, matcher.value()));
+        }
+        query.writeMessage(4, new ProtoWriter()
+                .writeVarint(1, context.step())
+                .writeVarint(3, context.start())
+                .writeVarint(4, context.end()));
+        return new ProtoWriter()
+                .writeMessage(1, query)
+                // Streamed XOR chunks are preferred, servers not supporting them send samples.
+                .writeVarint(2, 1)
+                .writeVarint(2, 0)
+                .toByteArray();
+    }
+
+    private List<TimeSeries> decode(HttpResponse<InputStream> response, EvalContext context) throws IOException {
+        if (response.statusCode() != 200) {
+            PrometheusBackend.validateResponse(response.statusCode(), response.body().readAllBytes());
+        }
+        var contentType = response.headers().firstValue("Content-Type").orElse("");
+        return RemoteReadDecoder.decode(response.body(), contentType, context, lookback).stream()
+                .map(PrometheusBackend::toTimeSeries)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,249 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.EvalContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Decoder for the responses of the Prometheus `/api/v1/read` endpoint.
+ * <p>
+ * Both streamed responses, made of XOR chunks, and snappy-compressed responses with raw samples
+ * are supported. Samples are written straight into step-aligned sequences, each step taking
+ * the value of the latest sample at or before it within the lookback delta, like Prometheus
+ * does when evaluating a selector over a range.
+ */
+final class RemoteReadDecoder {
+    static final String STREAMED_CONTENT_TYPE = "application/x-streamed-protobuf";
+
+    /**
+     * Value marking a series as stale, which Prometheus treats as the absence of a sample.
+     */
+    private static final long STALE_NAN = 0x7ff0000000000002L;
+
+    private static final int XOR_ENCODING = 1;
+
+    private final EvalContext context;
+    private final long lookback;
+    private final Map<Map<String, String>, SeriesBuilder> series = new LinkedHashMap<>();
+
+    private RemoteReadDecoder(EvalContext context, long lookback) {
+        this.context = context;
+        this.lookback = lookback;
+    }
+
+    /**
+     * Decode a response.
+     *
+     * @param body        Body of the response. Streamed responses are decoded one frame at a time,
+     *                    while snappy-compressed ones need to be read entirely first.
+     * @param contentType Content type of the response, telling whether it is streamed.
+     * @param context     Evaluation context of the query.
+     * @param lookback    Maximum age of a sample to be used for a step, in milliseconds.
+     * @return Decoded series, without those having no value over the context.
+     */
+    static List<QueryRangeDecoder.Series> decode(InputStream body, String contentType, EvalContext context, long lookback) throws IOException {
+        var decoder = new RemoteReadDecoder(context, lookback);
+        if (contentType.startsWith(STREAMED_CONTENT_TYPE)) {
+            decoder.decodeFrames(body);
+        } else {
+            decoder.decodeReadResponse(new ProtoReader(Snappy.uncompress(body.readAllBytes())));
+        }
+        var result = new ArrayList<QueryRangeDecoder.Series>(decoder.series.size());
+        decoder.series.forEach((metric, builder) -> {
+            if (builder.hasValue) {
+                result.add(new QueryRangeDecoder.Series(metric, builder.builder.build()));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * A streamed response is a sequence of frames, each one made of the size of the message as
+     * a varint, its CRC32C checksum on 4 bytes, and the message itself.
+     */
+    private void decodeFrames(InputStream body) throws IOException {
+        var crc = new CRC32C();
+        var first = body.read();
+        while (first >= 0) {
+            var size = readVarint(body, first);
+            if (size < 0 || size > Integer.MAX_VALUE - 4) {
+                throw new IOException(String.format("Invalid frame size [%s]", size));
+            }
+            var frame = body.readNBytes(4 + (int) size);
+            if (frame.length < 4 + size) {
+                throw new IOException(String.format("Invalid frame size [%s]", size));
+            }
+            var expected = (frame[0] & 0xffL) << 24 | (frame[1] & 0xffL) << 16 | (frame[2] & 0xffL) << 8 | (frame[3] & 0xffL);
+            crc.reset();
+            crc.update(frame, 4, (int) size);
+            if (crc.getValue() != expected) {
+                throw new IOException("Invalid frame checksum");
+            }
+            decodeChunkedReadResponse(new ProtoReader(frame, 4, (int) size));
+            first = body.read();
+        }
+    }
+
+    /**
+     * Read a varint from a stream, given its first byte.
+     */
+    private static long readVarint(InputStream in, int first) throws IOException {
+        var result = 0L;
+        var b = first;
+        for (var shift = 0; shift < 64; shift += 7) {
+            if (b < 0) {
+                throw new IOException("Truncated varint");
+            }
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            b = in.read();
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private void decodeChunkedReadResponse(ProtoReader in) throws IOException {
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            if (ProtoReader.fieldNumber(tag) == 1) {
+                decodeChunkedSeries(in.readMessage());
+            } else {
+                in.skip(ProtoReader.wireType(tag));
+            }
+        }
+    }
+
+    private void decodeChunkedSeries(ProtoReader in) throws IOException {
+        var labels = new HashMap<String, String>();
+        SeriesBuilder builder = null;
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            switch (ProtoReader.fieldNumber(tag)) {
+                case 1 -> decodeLabel(in.readMessage(), labels);
+                case 2 -> {
+                    // Labels come first on the wire.
+                    if (null == builder) {
+                        builder = series.computeIfAbsent(labels, k -> new SeriesBuilder());
+                    }
+                    decodeChunk(in.readMessage(), builder);
+                }
+                default -> in.skip(ProtoReader.wireType(tag));
+            }
+        }
+    }
+
+    private void decodeChunk(ProtoReader in, SeriesBuilder builder) throws IOException {
+        var encoding = XOR_ENCODING;
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            switch (ProtoReader.fieldNumber(tag)) {
+                case 3 -> encoding = (int) in.readVarint();
+                case 4 -> {
+                    if (encoding != XOR_ENCODING) {
+                        throw new IOException("Histograms are not supported");
+                    }
+                    var data = in.readMessage();
+                    XorChunk.decode(data.array(), data.position(), data.remaining(), builder::add);
+                }
+                default -> in.skip(ProtoReader.wireType(tag));
+            }
+        }
+    }
+
+    private void decodeReadResponse(ProtoReader in) throws IOException {
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            if (ProtoReader.fieldNumber(tag) == 1) {
+                decodeQueryResult(in.readMessage());
+            } else {
+                in.skip(ProtoReader.wireType(tag));
+            }
+        }
+    }
+
+    private void decodeQueryResult(ProtoReader in) throws IOException {
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            if (ProtoReader.fieldNumber(tag) == 1) {
+                decodeTimeSeries(in.readMessage());
+            } else {
+                in.skip(ProtoReader.wireType(tag));
+            }
+        }
+    }
+
+    private void decodeTimeSeries(ProtoReader in) throws IOException {
+        var labels = new HashMap<String, String>();
+        SeriesBuilder builder = null;
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            switch (ProtoReader.fieldNumber(tag)) {
+                case 1 -> decodeLabel(in.readMessage(), labels);
+                case 2 -> {
+                    if (null == builder) {
+                        builder = series.computeIfAbsent(labels, k -> new SeriesBuilder());
+                    }
+                    decodeSample(in.readMessage(), builder);
+                }
+                // Exemplars (3) are skipped.
+                case 4 -> throw new IOException("Histograms are not supported");
+                default -> in.skip(ProtoReader.wireType(tag));
+            }
+        }
+    }
+
+    private static void decodeSample(ProtoReader in, SeriesBuilder builder) throws IOException {
+        var value = 0.0;
+        var timestamp = 0L;
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            switch (ProtoReader.fieldNumber(tag)) {
+                case 1 -> value = in.readDouble();
+                case 2 -> timestamp = in.readVarint();
+                default -> in.skip(ProtoReader.wireType(tag));
+            }
+        }
+        builder.add(timestamp, value);
+    }
+
+    private static void decodeLabel(ProtoReader in, Map<String, String> labels) throws IOException {
+        String name = "";
+        String value = "";
+        while (in.hasRemaining()) {
+            var tag = in.readTag();
+            switch (ProtoReader.fieldNumber(tag)) {
+                case 1 -> name = in.readString();
+                case 2 -> value = in.readString();
+                default -> in.skip(ProtoReader.wireType(tag));
+            }
+        }
+        labels.put(name, value);
+    }
+
+    private final class SeriesBuilder {
+        private final TimeSeqBuilder builder = new TimeSeqBuilder(context);
+        private boolean hasValue;
+
+        /**
+         * Use a sample for all the steps within the lookback delta after it. Samples come in
+         * increasing order of timestamp, so that each step ends up with the latest one.
+         */
+        void add(long timestamp, double value) {
+            var stale = Double.doubleToRawLongBits(value) == STALE_NAN;
+            var step = context.step();
+            var t = Math.max(Math.floorDiv(timestamp + step - 1, step), Math.floorDiv(context.start(), step)) * step;
+            for (; t <= context.end() && t < timestamp + lookback; t += step) {
+                builder.add(t, stale ? Double.NaN : value);
+                hasValue |= !stale;
+            }
+        }
+    }
+}
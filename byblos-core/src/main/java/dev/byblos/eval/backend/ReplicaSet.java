@@ -0,0 +1,200 @@
+package dev.byblos.eval.backend;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Set of replicas serving the same data, among which requests are balanced.
+ * <p>
+ * Each request goes to the replica with the fewest requests in flight. Replicas failing
+ * several times in a row are ejected for a while, unless all of them are, in which case they
+ * keep being used rather than failing every request. The latency of recent successful
+ * requests is tracked to decide when a request is slow enough to be hedged.
+ */
+final class ReplicaSet {
+    private final List<Replica> replicas;
+    private final int maxFailures;
+    private final long ejectionNanos;
+    private final LongSupplier nanoTime;
+    private final LatencyWindow latencies = new LatencyWindow(1024);
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param endpoints        Base URLs of the replicas.
+     * @param maxFailures      Number of consecutive failures after which a replica is ejected.
+     * @param ejectionDuration Time during which an ejected replica does not receive requests.
+     * @param registry         Registry to report metrics about each replica.
+     * @param nanoTime         Source of the current time, in nanoseconds.
+     */
+    ReplicaSet(List<String> endpoints, int maxFailures, Duration ejectionDuration, MeterRegistry registry, LongSupplier nanoTime) {
+        checkArgument(!endpoints.isEmpty(), "at least one endpoint is required");
+        checkArgument(maxFailures > 0, "ejection.consecutive-failures must be > 0");
+        replicas = endpoints.stream().map(endpoint -> new Replica(endpoint, registry)).toList();
+        this.maxFailures = maxFailures;
+        this.ejectionNanos = ejectionDuration.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    int size() {
+        return replicas.size();
+    }
+
+    /**
+     * Select the healthy replica with the fewest requests in flight, ties being broken in
+     * turn. Ejected replicas are only selected if no healthy one is left.
+     *
+     * @param exclude Replica that must not be selected, if there are others.
+     */
+    Replica select(Optional<Replica> exclude) {
+        var now = nanoTime.getAsLong();
+        var offset = Math.floorMod(next.getAndIncrement(), replicas.size());
+        Replica best = null;
+        var bestEjected = true;
+        for (var i = 0; i < replicas.size(); i++) {
+            var replica = replicas.get((offset + i) % replicas.size());
+            if (exclude.isPresent() && exclude.get() == replica && replicas.size() > 1) {
+                continue;
+            }
+            var ejected = replica.isEjected(now);
+            if (null == best
+                    || (bestEjected && !ejected)
+                    || (bestEjected == ejected && replica.outstanding.get() < best.outstanding.get())) {
+                best = replica;
+                bestEjected = ejected;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the given percentile of the latency of recent successful requests, or empty if
+     * too few requests completed to estimate it.
+     */
+    Optional<Duration> latency(double percentile) {
+        return latencies.percentile(percentile).map(Duration::ofNanos);
+    }
+
+    /**
+     * A replica, and the state of the requests sent to it.
+     */
+    final class Replica {
+        private final String endpoint;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final Timer latency;
+        private final Counter ejections;
+        private int failures;
+        private long ejectedUntil;
+
+        private Replica(String endpoint, MeterRegistry registry) {
+            this.endpoint = endpoint;
+            latency = Timer.builder("byblos.backend.replica.latency")
+                    .tag("endpoint", endpoint)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            ejections = Counter.builder("byblos.backend.replica.ejections")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+        }
+
+        String endpoint() {
+            return endpoint;
+        }
+
+        int outstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * Record that a request is sent to this replica, returning its start time.
+         */
+        long start() {
+            outstanding.incrementAndGet();
+            return nanoTime.getAsLong();
+        }
+
+        /**
+         * Record that a request sent at the given time completed successfully.
+         */
+        void success(long startedAt) {
+            outstanding.decrementAndGet();
+            var elapsed = nanoTime.getAsLong() - startedAt;
+            latency.record(elapsed, TimeUnit.NANOSECONDS);
+            latencies.record(elapsed);
+            synchronized (this) {
+                failures = 0;
+            }
+        }
+
+        /**
+         * Record that a request failed, ejecting the replica if it failed too many times in a row.
+         */
+        void failure() {
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                failures++;
+                if (failures >= maxFailures) {
+                    failures = 0;
+                    ejectedUntil = nanoTime.getAsLong() + ejectionNanos;
+                    ejections.increment();
+                }
+            }
+        }
+
+        /**
+         * Record that a request was abandoned, which says nothing about the health of the replica.
+         */
+        void cancelled() {
+            outstanding.decrementAndGet();
+        }
+
+        synchronized boolean isEjected(long now) {
+            return ejectedUntil - now > 0;
+        }
+    }
+
+    /**
+     * Latencies of the most recent requests, from which percentiles are computed on demand.
+     */
+    private static final class LatencyWindow {
+        private static final int MIN_SAMPLES = 20;
+        private final long[] samples;
+        private int size;
+        private int pos;
+
+        LatencyWindow(int capacity) {
+            samples = new long[capacity];
+        }
+
+        synchronized void record(long nanos) {
+            samples[pos] = nanos;
+            pos = (pos + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        Optional<Long> percentile(double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                if (size < MIN_SAMPLES) {
+                    return Optional.empty();
+                }
+                sorted = Arrays.copyOf(samples, size);
+            }
+            Arrays.sort(sorted);
+            var index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return Optional.of(sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package dev.byblos.eval.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Parser recognizing PromQL expressions that are plain series selectors, such as
+ * {@code http_requests_total{job="api",status=~"5.."}}. Such expressions can be answered from
+ * the raw samples, without evaluating a query.
+ */
+final class Selector {
+
+    enum MatchType {
+        // Order matches the values of the remote-read protocol.
+        EQ, NEQ, RE, NRE
+    }
+
+    record Matcher(MatchType type, String name, String value) {
+    }
+
+    private static final String NAME_TAG = "__name__";
+
+    private final String str;
+    private int pos;
+
+    private Selector(String str) {
+        this.str = str;
+    }
+
+    /**
+     * Parse an expression, returning its matchers if it is a plain selector and nothing
+     * otherwise.
+     */
+    static Optional<List<Matcher>> parse(String expr) {
+        return Optional.ofNullable(new Selector(expr).parse());
+    }
+
+    private List<Matcher> parse() {
+        var matchers = new ArrayList<Matcher>();
+        skipWhitespace();
+        var name = readIdentifier(true);
+        if ("inf".equalsIgnoreCase(name) || "nan".equalsIgnoreCase(name)) {
+            // Number literals.
+            return null;
+        }
+        if (null != name) {
+            matchers.add(new Matcher(MatchType.EQ, NAME_TAG, name));
+            skipWhitespace();
+        }
+        if (pos < str.length() && str.charAt(pos) == '{') {
+            pos++;
+            if (!parseMatchers(matchers)) {
+                return null;
+            }
+            skipWhitespace();
+        }
+        if (pos != str.length() || matchers.isEmpty()) {
+            return null;
+        }
+        return matchers;
+    }
+
+    private boolean parseMatchers(List<Matcher> matchers) {
+        while (true) {
+            skipWhitespace();
+            if (pos < str.length() && str.charAt(pos) == '}') {
+                pos++;
+                return true;
+            }
+            var label = readIdentifier(false);
+            if (null == label) {
+                return false;
+            }
+            skipWhitespace();
+            var type = readMatchType();
+            if (null == type) {
+                return false;
+            }
+            skipWhitespace();
+            var value = readString();
+            if (null == value) {
+                return false;
+            }
+            matchers.add(new Matcher(type, label, value));
+            skipWhitespace();
+            if (pos < str.length() && str.charAt(pos) == ',') {
+                pos++;
+            } else if (pos >= str.length() || str.charAt(pos) != '}') {
+                return false;
+            }
+        }
+    }
+
+    private String readIdentifier(boolean metricName) {
+        var start = pos;
+        while (pos < str.length()) {
+            var c = str.charAt(pos);
+            var valid = c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (pos > start && c >= '0' && c <= '9')
+                    || (metricName && c == ':');
+            if (!valid) {
+                break;
+            }
+            pos++;
+        }
+        return pos > start ? str.substring(start, pos) : null;
+    }
+
+    private MatchType readMatchType() {
+        if (str.startsWith("=~", pos)) {
+            pos += 2;
+            return MatchType.RE;
+        } else if (str.startsWith("!~", pos)) {
+            pos += 2;
+            return MatchType.NRE;
+        } else if (str.startsWith("!=", pos)) {
+            pos += 2;
+            return MatchType.NEQ;
+        } else if (str.startsWith("=", pos)) {
+            pos++;
+            return MatchType.EQ;
+        }
+        return null;
+    }
+
+    /**
+     * Read a quoted string. Only the common escape sequences are supported, other expressions
+     * are left to the server.
+     */
+    private String readString() {
+        if (pos >= str.length()) {
+            return null;
+        }
+        var quote = str.charAt(pos++);
+        if (quote != '"' && quote != '\'' && quote != '`') {
+            return null;
+        }
+        var sb = new StringBuilder();
+        while (pos < str.length()) {
+            var c = str.charAt(pos++);
+            if (c == quote) {
+                return sb.toString();
+            }
+            if (c == '\\' && quote != '`') {
+                if (pos >= str.length()) {
+                    return null;
+                }
+                switch (str.charAt(pos++)) {
+                    case '\\' -> sb.append('\\');
+                    case '"' -> sb.append('"');
+                    case '\'' -> sb.append('\'');
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    default -> {
+                        return null;
+                    }
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return null;
+    }
+
+    private void skipWhitespace() {
+        while (pos < str.length() && Character.isWhitespace(str.charAt(pos))) {
+            pos++;
+        }
+    }
+}
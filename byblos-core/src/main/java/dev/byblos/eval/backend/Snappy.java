@@ -0,0 +1,118 @@
+package dev.byblos.eval.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Codec for the Snappy block format, as used to compress remote-read requests and
+ * non-streamed responses.
+ * <p>
+ * Compression only emits literals: requests are a few hundred bytes at most, and servers
+ * accept any valid block. Decompression supports the full format.
+ */
+final class Snappy {
+    private static final int MAX_LITERAL = 65536;
+
+    static byte[] compress(byte[] input) {
+        var out = new ByteArrayOutputStream(input.length + 16);
+        writeVarint(out, input.length);
+        for (var offset = 0; offset < input.length; offset += MAX_LITERAL) {
+            var length = Math.min(MAX_LITERAL, input.length - offset);
+            var n = length - 1;
+            if (n < 60) {
+                out.write(n << 2);
+            } else if (n < 256) {
+                out.write(60 << 2);
+                out.write(n);
+            } else {
+                out.write(61 << 2);
+                out.write(n);
+                out.write(n >>> 8);
+            }
+            out.write(input, offset, length);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] uncompress(byte[] input) throws IOException {
+        var in = new ProtoReader(input);
+        var length = in.readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new IOException(String.format("Invalid uncompressed length [%s]", length));
+        }
+        var out = new byte[(int) length];
+        var pos = in.position();
+        var written = 0;
+        try {
+            while (pos < input.length) {
+                var tag = input[pos++] & 0xff;
+                switch (tag & 0x3) {
+                    case 0 -> {
+                        var n = tag >>> 2;
+                        if (n >= 60) {
+                            var bytes = n - 59;
+                            n = 0;
+                            for (var i = 0; i < bytes; i++) {
+                                n |= (input[pos++] & 0xff) << (8 * i);
+                            }
+                        }
+                        var literal = n + 1;
+                        if (literal <= 0 || literal > input.length - pos || literal > out.length - written) {
+                            throw new IOException("Invalid literal length");
+                        }
+                        System.arraycopy(input, pos, out, written, literal);
+                        pos += literal;
+                        written += literal;
+                    }
+                    case 1 -> {
+                        var offset = (tag >>> 5) << 8 | (input[pos++] & 0xff);
+                        written = copy(out, written, offset, 4 + ((tag >>> 2) & 0x7));
+                    }
+                    case 2 -> {
+                        var offset = (input[pos++] & 0xff) | (input[pos++] & 0xff) << 8;
+                        written = copy(out, written, offset, 1 + (tag >>> 2));
+                    }
+                    default -> {
+                        var offset = 0;
+                        for (var i = 0; i < 4; i++) {
+                            offset |= (input[pos++] & 0xff) << (8 * i);
+                        }
+                        written = copy(out, written, offset, 1 + (tag >>> 2));
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated snappy block", e);
+        }
+        if (written != out.length) {
+            throw new IOException(String.format("Expected %s bytes, got %s", out.length, written));
+        }
+        return out;
+    }
+
+    /**
+     * Copy bytes previously written. Source and destination may overlap, in which case the
+     * copied bytes are repeated.
+     */
+    private static int copy(byte[] out, int written, int offset, int length) throws IOException {
+        if (offset <= 0 || offset > written || length > out.length - written) {
+            throw new IOException("Invalid copy offset");
+        }
+        for (var i = 0; i < length; i++) {
+            out[written + i] = out[written - offset + i];
+        }
+        return written + length;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private Snappy() {
+        // Do not instantiate.
+    }
+}
@@ -0,0 +1,186 @@
+package dev.byblos.eval.backend;
+
+import com.typesafe.config.Config;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TagMap;
+import dev.byblos.model.TimeSeries;
+import dev.byblos.util.Strings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Backend generating deterministic synthetic data, to probe the limits of the rest of the
+ * pipeline without a Prometheus server.
+ * <p>
+ * Expressions take the form {@code synthetic{series=5000,shape=sine,noise=0.1}}, values being
+ * optionally quoted. The supported parameters are:
+ * <ul>
+ *     <li>{@code series}: number of series to generate, 1 by default.</li>
+ *     <li>{@code shape}: {@code sine} (the default), {@code ramp}, {@code square} or
+ *     {@code constant}. Values range from 0 to 100.</li>
+ *     <li>{@code period}: period of the shape, 1 hour by default.</li>
+ *     <li>{@code noise}: amplitude of the random noise added to the values, relative to the
+ *     range of the shape, 0 by default.</li>
+ *     <li>{@code labels}: number of labels in addition to the {@code id} one, 0 by default.</li>
+ *     <li>{@code cardinality}: number of distinct values of each additional label, 10 by
+ *     default.</li>
+ *     <li>{@code seed}: seed of the phases and noise, 0 by default.</li>
+ * </ul>
+ * The value of a series at a given time only depends on the parameters, so that queries over
+ * overlapping ranges return the same values.
+ */
+public final class SyntheticBackend implements Backend {
+    private static final Pattern EXPR = Pattern.compile("^\\s*synthetic\\s*(?:\\{(.*)})?\\s*$");
+    private static final Set<String> PARAMS = Set.of("series", "shape", "period", "noise", "labels", "cardinality", "seed");
+
+    private final int maxSeries;
+
+    public SyntheticBackend(Config config) {
+        this(config.getInt("synthetic.max-series"));
+    }
+
+    SyntheticBackend(int maxSeries) {
+        checkArgument(maxSeries > 0, "synthetic.max-series must be > 0");
+        this.maxSeries = maxSeries;
+    }
+
+    @Override
+    public List<TimeSeries> query(EvalContext context, DataExpr expr) {
+        var params = parse(expr.exprString());
+        var series = Integer.parseInt(params.getOrDefault("series", "1"));
+        checkArgument(series >= 0 && series <= maxSeries, "series must be between 0 and %s", maxSeries);
+        var shape = Shape.fromString(params.getOrDefault("shape", "sine"));
+        var period = Strings.parseDuration(params.getOrDefault("period", "1h")).toMillis();
+        checkArgument(period > 0, "period must be positive");
+        var noise = Double.parseDouble(params.getOrDefault("noise", "0"));
+        var labels = Integer.parseInt(params.getOrDefault("labels", "0"));
+        var cardinality = Integer.parseInt(params.getOrDefault("cardinality", "10"));
+        checkArgument(labels >= 0 && cardinality > 0, "labels must be >= 0 and cardinality > 0");
+        var seed = Long.parseLong(params.getOrDefault("seed", "0"));
+
+        var step = context.step();
+        var result = new ArrayList<TimeSeries>(series);
+        for (var i = 0; i < series; i++) {
+            var phase = unit(mix(seed, i, -1)) * period;
+            var builder = new TimeSeqBuilder(context);
+            for (var t = builder.start(); t <= context.end(); t += step) {
+                var value = shape.value(Math.floorMod(t + (long) phase, period) / (double) period);
+                if (noise > 0) {
+                    value += noise * 100 * (2 * unit(mix(seed, i, t)) - 1);
+                }
+                builder.add(t, value);
+            }
+            var tags = tags(i, labels, cardinality);
+            var label = "synthetic{" + tags.without("__name__").defaultLabel() + "}";
+            result.add(new TimeSeries(builder.build(), label, tags));
+        }
+        return result;
+    }
+
+    /**
+     * Parse the parameters of an expression.
+     */
+    static Map<String, String> parse(String expr) {
+        var matcher = EXPR.matcher(expr);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(String.format("not a synthetic expression: %s", expr));
+        }
+        var params = new HashMap<String, String>();
+        var body = matcher.group(1);
+        if (null == body || body.isBlank()) {
+            return params;
+        }
+        for (var param : body.split(",")) {
+            var kv = param.split("=", 2);
+            checkArgument(kv.length == 2, "invalid parameter: %s", param.trim());
+            var key = kv[0].trim();
+            checkArgument(PARAMS.contains(key), "unknown parameter: %s", key);
+            var value = kv[1].trim();
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static TagMap tags(int i, int labels, int cardinality) {
+        var tags = TagMap.builder();
+        tags.put("__name__", "synthetic");
+        tags.put("id", String.valueOf(i));
+        // Each label splits the series in groups of the same size, nested within the groups of
+        // the previous label.
+        var n = i;
+        for (var k = 0; k < labels; k++) {
+            tags.put("l" + k, "v" + Math.floorMod(n, cardinality));
+            n /= cardinality;
+        }
+        return tags.build();
+    }
+
+    /**
+     * Hash the inputs into a pseudo-random number, using the finalizer of SplitMix64.
+     */
+    private static long mix(long seed, long i, long t) {
+        var z = seed * 0x9E3779B97F4A7C15L + i * 0xBF58476D1CE4E5B9L + t * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Map a hash to a number in [0, 1).
+     */
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    private enum Shape {
+        SINE {
+            @Override
+            double value(double x) {
+                return 50 + 50 * Math.sin(2 * Math.PI * x);
+            }
+        },
+        RAMP {
+            @Override
+            double value(double x) {
+                return 100 * x;
+            }
+        },
+        SQUARE {
+            @Override
+            double value(double x) {
+                return x < 0.5 ? 100 : 0;
+            }
+        },
+        CONSTANT {
+            @Override
+            double value(double x) {
+                return 50;
+            }
+        };
+
+        /**
+         * Returns the value at a given fraction of the period, in [0, 1).
+         */
+        abstract double value(double x);
+
+        static Shape fromString(String str) {
+            for (var shape : values()) {
+                if (shape.name().equalsIgnoreCase(str)) {
+                    return shape;
+                }
+            }
+            throw new IllegalArgumentException(String.format("unknown shape: %s", str));
+        }
+    }
+}
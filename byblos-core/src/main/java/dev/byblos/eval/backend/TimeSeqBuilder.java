@@ -0,0 +1,56 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.EvalContext;
+
+import java.util.Arrays;
+
+/**
+ * Builder materializing the samples returned by a backend as a dense {@link ArrayTimeSeq}.
+ * <p>
+ * The resulting sequence starts on the step boundary at or before the start of the evaluation
+ * context and covers it up to its end (inclusive). Steps without a sample are set to NaN.
+ * Samples are placed on the step boundary at or before their timestamp, and samples outside
+ * the range are ignored.
+ */
+public final class TimeSeqBuilder {
+    private final long start;
+    private final long step;
+    private final double[] values;
+
+    public TimeSeqBuilder(EvalContext context) {
+        step = context.step();
+        start = Math.floorDiv(context.start(), step) * step;
+        values = new double[(int) ((context.end() - start) / step) + 1];
+        Arrays.fill(values, Double.NaN);
+    }
+
+    /**
+     * Returns the timestamp of the first step of the sequence, in milliseconds.
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * Set the value for the step containing the given timestamp.
+     *
+     * @param timestamp Timestamp of the sample, in milliseconds.
+     * @param value     Value of the sample.
+     * @return This builder.
+     */
+    public TimeSeqBuilder add(long timestamp, double value) {
+        var i = Math.floorDiv(timestamp - start, step);
+        if (i >= 0 && i < values.length) {
+            values[(int) i] = value;
+        }
+        return this;
+    }
+
+    /**
+     * Build the sequence. The builder must not be used afterwards.
+     */
+    public ArrayTimeSeq build() {
+        return new ArrayTimeSeq(start, step, values);
+    }
+}
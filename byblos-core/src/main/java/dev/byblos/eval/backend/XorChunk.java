@@ -0,0 +1,164 @@
+package dev.byblos.eval.backend;
+
+import java.io.IOException;
+
+/**
+ * Decoder for the XOR chunks of the Prometheus TSDB, as returned by streamed remote-read
+ * responses.
+ * <p>
+ * A chunk starts with the number of samples on two bytes, followed by a bit stream. The first
+ * timestamp is a signed varint and the first value is stored as is. The second timestamp is
+ * stored as an unsigned varint delta, the following ones as a delta of deltas with a variable
+ * bit length. Each value is stored as its XOR with the previous value, omitting the leading
+ * and trailing zero bits.
+ */
+final class XorChunk {
+
+    /**
+     * Receives the samples of a chunk, in increasing order of timestamp.
+     */
+    @FunctionalInterface
+    interface SampleConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    /**
+     * Decode a chunk.
+     *
+     * @param data     Array containing the chunk.
+     * @param offset   Offset of the chunk in the array.
+     * @param length   Length of the chunk.
+     * @param consumer Consumer of the samples.
+     */
+    static void decode(byte[] data, int offset, int length, SampleConsumer consumer) throws IOException {
+        if (length < 2) {
+            throw new IOException("Truncated chunk");
+        }
+        var count = (data[offset] & 0xff) << 8 | (data[offset + 1] & 0xff);
+        if (count == 0) {
+            return;
+        }
+        var in = new BitReader(data, offset + 2, length - 2);
+        var uvarint = in.readUvarint();
+        var timestamp = (uvarint >>> 1) ^ -(uvarint & 1);
+        var bits = in.readBits(64);
+        consumer.accept(timestamp, Double.longBitsToDouble(bits));
+        if (count == 1) {
+            return;
+        }
+        var delta = in.readUvarint();
+        timestamp += delta;
+        var xor = new XorState(bits);
+        consumer.accept(timestamp, xor.read(in));
+        for (var i = 2; i < count; i++) {
+            delta += readDeltaOfDelta(in);
+            timestamp += delta;
+            consumer.accept(timestamp, xor.read(in));
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) throws IOException {
+        var prefix = 0;
+        for (var i = 0; i < 4; i++) {
+            prefix <<= 1;
+            if (!in.readBit()) {
+                break;
+            }
+            prefix |= 1;
+        }
+        var size = switch (prefix) {
+            case 0b0 -> 0;
+            case 0b10 -> 14;
+            case 0b110 -> 17;
+            case 0b1110 -> 20;
+            default -> 64;
+        };
+        if (size == 0) {
+            return 0;
+        }
+        var bits = in.readBits(size);
+        if (size < 64 && bits > (1L << (size - 1))) {
+            // Negative numbers come back as high unsigned numbers.
+            bits -= 1L << size;
+        }
+        return bits;
+    }
+
+    private static final class XorState {
+        private long bits;
+        private int leading;
+        private int trailing;
+
+        XorState(long bits) {
+            this.bits = bits;
+        }
+
+        double read(BitReader in) throws IOException {
+            if (in.readBit()) {
+                int significant;
+                if (in.readBit()) {
+                    leading = (int) in.readBits(5);
+                    significant = (int) in.readBits(6);
+                    // 0 significant bits actually means 64, as it does not fit on 6 bits.
+                    if (significant == 0) {
+                        significant = 64;
+                    }
+                    trailing = 64 - leading - significant;
+                } else {
+                    significant = 64 - leading - trailing;
+                }
+                bits ^= in.readBits(significant) << trailing;
+            }
+            return Double.longBitsToDouble(bits);
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] data;
+        private final long limit;
+        private long pos;
+
+        BitReader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.pos = (long) offset * 8;
+            this.limit = (long) (offset + length) * 8;
+        }
+
+        boolean readBit() throws IOException {
+            return readBits(1) != 0;
+        }
+
+        long readBits(int n) throws IOException {
+            if (limit - pos < n) {
+                throw new IOException("Truncated chunk");
+            }
+            var result = 0L;
+            while (n > 0) {
+                var bitOffset = (int) (pos & 7);
+                var available = 8 - bitOffset;
+                var take = Math.min(available, n);
+                var b = data[(int) (pos >>> 3)] & 0xff;
+                result = (result << take) | ((b >>> (available - take)) & ((1 << take) - 1));
+                n -= take;
+                pos += take;
+            }
+            return result;
+        }
+
+        long readUvarint() throws IOException {
+            var result = 0L;
+            for (var shift = 0; shift < 64; shift += 7) {
+                var b = readBits(8);
+                result |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+
+    private XorChunk() {
+        // Do not instantiate.
+    }
+}
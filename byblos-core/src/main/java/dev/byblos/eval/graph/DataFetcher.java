@@ -0,0 +1,228 @@
+package dev.byblos.eval.graph;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dev.byblos.eval.backend.AsyncSemaphore;
+import dev.byblos.eval.backend.Backend;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.Deadline;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Fetches the data for a set of data expressions from a backend.
+ * <p>
+ * Queries for a single graph are issued concurrently through {@link Backend#queryAsync}, with
+ * at most `parallelism` of them in flight at once. All graphs share `maxConcurrency` permits,
+ * which bound the total number of queries sent to the backend. Queries are started from a
+ * pool of as many threads, so that backends without asynchronous support do not block the
+ * caller. The result is always assembled in the order of the input expressions, regardless
+ * of the order in which the queries complete.
+ * <p>
+ * The time spent fetching is bounded by the request deadline, minus a reserve kept for
+ * evaluating and rendering the graph. If it runs out once some expressions have been
+ * fetched, the graph is rendered with the data available and a warning listing how many
+ * were skipped. Cancelling the deadline stops the queries in flight.
+ */
+final class DataFetcher {
+    private final Backend backend;
+    private final int parallelism;
+    private final Duration timeout;
+    private final Duration renderReserve;
+    private final AsyncSemaphore shared;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param backend        Backend to query for the data.
+     * @param parallelism    Maximum number of queries in flight for a single graph.
+     * @param maxConcurrency Maximum number of queries in flight across all graphs.
+     * @param timeout        Overall deadline to fetch all the data for a single graph.
+     * @param renderReserve  Time to keep before the request deadline to render the graph.
+     */
+    DataFetcher(Backend backend, int parallelism, int maxConcurrency, Duration timeout, Duration renderReserve) {
+        checkArgument(parallelism > 0, "parallelism must be > 0");
+        checkArgument(maxConcurrency > 0, "max concurrency must be > 0");
+        this.backend = requireNonNull(backend);
+        this.parallelism = parallelism;
+        this.timeout = requireNonNull(timeout);
+        this.renderReserve = requireNonNull(renderReserve);
+        shared = new AsyncSemaphore(maxConcurrency);
+        executor = new ThreadPoolExecutor(
+                maxConcurrency,
+                maxConcurrency,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("byblos-fetch-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fetch the data for all expressions, keyed by expression in the same order as the input.
+     */
+    Result fetch(EvalContext context, List<DataExpr> exprs) throws IOException {
+        var results = exprs.isEmpty() ? List.<List<TimeSeries>>of() : fetchConcurrently(context, exprs);
+        var builder = ImmutableListMultimap.<DataExpr, TimeSeries>builder();
+        var missing = 0;
+        for (var i = 0; i < exprs.size(); i++) {
+            var result = results.get(i);
+            if (null == result) {
+                missing++;
+            } else {
+                builder.putAll(exprs.get(i), result);
+            }
+        }
+        if (missing > 0 && missing == exprs.size()) {
+            // Workers stopped before fetching anything, there is nothing to render.
+            context.deadline().check();
+        }
+        var warnings = missing == 0
+                ? List.<String>of()
+                : List.of(String.format("Data is incomplete, %s of %s expressions could not be fetched in time.", missing, exprs.size()));
+        return new Result(builder.build(), warnings);
+    }
+
+    private List<List<TimeSeries>> fetchConcurrently(EvalContext context, List<DataExpr> exprs) throws IOException {
+        // Queries for this graph wait for a local permit before competing for a shared one,
+        // which limits the number of queries in flight without blocking any thread.
+        var deadline = context.deadline();
+        var local = new AsyncSemaphore(parallelism);
+        var futures = new ArrayList<CompletableFuture<List<TimeSeries>>>(exprs.size());
+        for (var expr : exprs) {
+            futures.add(local.submit(() -> shared.submit(() -> query(context, expr))));
+        }
+
+        // Completed once all queries complete, or as soon as one of them fails.
+        var done = new CompletableFuture<Void>();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenRun(() -> done.complete(null));
+        futures.forEach(future -> future.whenComplete((v, e) -> {
+            if (null != e) {
+                done.completeExceptionally(e instanceof CompletionException && null != e.getCause() ? e.getCause() : e);
+            }
+        }));
+
+        var budget = budget(deadline);
+        var unregister = deadline.onCancel(() -> done.cancel(true));
+        try {
+            done.get(budget.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (!anyFetched(futures)) {
+                throw new IOException(String.format("fetching data took longer than %sms", budget.toMillis()), e);
+            }
+        } catch (CancellationException e) {
+            deadline.check();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while fetching data", e);
+        } catch (ExecutionException e) {
+            // Queries stopped by an expired deadline report it rather than their own error.
+            deadline.check();
+            var cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            unregister.run();
+            // No-op for completed queries, stops the remaining ones on failure.
+            futures.forEach(f -> f.cancel(true));
+        }
+        var list = new ArrayList<List<TimeSeries>>(exprs.size());
+        for (var future : futures) {
+            list.add(fetched(future));
+        }
+        return list;
+    }
+
+    /**
+     * Start a query, unless the deadline already expired in which case it completes with null.
+     * <p>
+     * The query is started from the pool, as backends without asynchronous support run it in
+     * the calling thread. Cancelling the returned future interrupts that thread.
+     */
+    private CompletableFuture<List<TimeSeries>> query(EvalContext context, DataExpr expr) {
+        if (context.deadline().isExpired()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var result = new CompletableFuture<List<TimeSeries>>();
+        var task = executor.submit(() -> {
+            CompletableFuture<List<TimeSeries>> future;
+            try {
+                future = backend.queryAsync(context, expr);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            var f = future;
+            f.whenComplete((v, e) -> {
+                if (null != e) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(v);
+                }
+            });
+            result.whenComplete((v, e) -> {
+                if (result.isCancelled()) {
+                    f.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((v, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the time available to fetch the data, which is the configured timeout unless
+     * the request deadline leaves less than that before the render reserve.
+     */
+    private Duration budget(Deadline deadline) {
+        var remaining = deadline.remaining(timeout.plus(renderReserve)).minus(renderReserve);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    private static boolean anyFetched(List<CompletableFuture<List<TimeSeries>>> futures) {
+        return futures.stream().anyMatch(f -> null != fetched(f));
+    }
+
+    /**
+     * Returns the data fetched by a query, or null if it did not complete successfully.
+     */
+    private static List<TimeSeries> fetched(CompletableFuture<List<TimeSeries>> future) {
+        return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * Data fetched for a graph.
+     *
+     * @param data     Time series keyed by expression. Expressions that could not be fetched
+     *                 in time have no entry.
+     * @param warnings Warnings to display on the graph.
+     */
+    record Result(ImmutableListMultimap<DataExpr, TimeSeries> data, List<String> warnings) {
+    }
+}
@@ -0,0 +1,35 @@
+package dev.byblos.eval.graph;
+
+import dev.byblos.model.Deadline;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Output stream failing with a {@link dev.byblos.model.DeadlineExceededException} as soon as
+ * something is written after the deadline has expired, which aborts the encoding of an image
+ * nobody is waiting for anymore.
+ */
+final class DeadlineOutputStream extends FilterOutputStream {
+    private final Deadline deadline;
+
+    DeadlineOutputStream(OutputStream out, Deadline deadline) {
+        super(out);
+        this.deadline = requireNonNull(deadline);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        deadline.check();
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        deadline.check();
+        out.write(b, off, len);
+    }
+}
@@ -9,6 +9,7 @@ import dev.byblos.stacklang.Vocabulary;
 import dev.byblos.util.Strings;
 
 import java.awt.Color;
+import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -35,6 +36,13 @@ public final class DefaultSettings {
     private final Map<String, String> contentTypes;
     private final Vocabulary vocabulary;
     private final Interpreter interpreter;
+    private final int fetchParallelism;
+    private final int fetchMaxConcurrency;
+    private final Duration timeout;
+    private final long queryCacheSize;
+    private final Duration fetchTimeout;
+    private final Duration fetchRenderReserve;
+    private final boolean limitPushdown;
 
     /**
      * Constructor.
@@ -55,6 +63,8 @@ public final class DefaultSettings {
         theme = config.getString("theme");
         metadataEnabled = config.getBoolean("png-metadata-enabled");
         maxDatapoints = config.getInt("max-datapoints");
+        timeout = config.getDuration("timeout");
+        queryCacheSize = config.getLong("query-cache-size");
         browserAgentPattern = Pattern.compile(config.getString("browser-agent-pattern"), Pattern.CASE_INSENSITIVE);
         engines = config.getStringList("engines")
                 .stream()
@@ -66,6 +76,12 @@ public final class DefaultSettings {
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
         vocabulary = createVocabulary(root);
         interpreter = new Interpreter(vocabulary.allWords());
+        var fetch = root.getConfig("byblos.eval.fetch");
+        fetchParallelism = fetch.getInt("parallelism");
+        fetchMaxConcurrency = fetch.getInt("max-concurrency");
+        fetchTimeout = fetch.getDuration("timeout");
+        fetchRenderReserve = fetch.getDuration("render-reserve");
+        limitPushdown = fetch.getBoolean("limit-pushdown");
     }
 
     public static DefaultSettings fromConfig(Config root) {
@@ -159,6 +175,20 @@ public final class DefaultSettings {
         return maxDatapoints;
     }
 
+    /**
+     * Returns maximum time to produce a graph, which can only be lowered by the request.
+     */
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns maximum number of parsed queries to cache.
+     */
+    public long queryCacheSize() {
+        return queryCacheSize;
+    }
+
     /**
      * Returns available engines for rendering a chart.
      */
@@ -181,12 +211,48 @@ public final class DefaultSettings {
     }
 
     /**
-     * Returns the vocabulary used by the interpreter.
+     * Returns the vocabulary used by the interpreter. It is created along with the settings,
+     * and never changes afterwards.
      */
     public Vocabulary vocabulary() {
         return vocabulary;
     }
 
+    /**
+     * Returns maximum number of data expressions fetched concurrently for a single graph.
+     */
+    public int fetchParallelism() {
+        return fetchParallelism;
+    }
+
+    /**
+     * Returns maximum number of backend queries in flight across all graphs.
+     */
+    public int fetchMaxConcurrency() {
+        return fetchMaxConcurrency;
+    }
+
+    /**
+     * Returns overall deadline to fetch the data for a single graph.
+     */
+    public Duration fetchTimeout() {
+        return fetchTimeout;
+    }
+
+    /**
+     * Returns time kept before the request deadline to render a graph once its data is fetched.
+     */
+    public Duration fetchRenderReserve() {
+        return fetchRenderReserve;
+    }
+
+    /**
+     * Returns whether line limits sorted by a statistic are pushed down into backend queries.
+     */
+    public boolean limitPushdown() {
+        return limitPushdown;
+    }
+
     private Vocabulary createVocabulary(Config root) {
         var vocabularyName = config.getString("vocabulary");
         if (vocabularyName.equals("default")) {
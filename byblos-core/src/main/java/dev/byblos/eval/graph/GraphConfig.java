@@ -4,6 +4,7 @@ import dev.byblos.chart.GraphEngine;
 import dev.byblos.chart.model.GraphDef;
 import dev.byblos.chart.model.ImmutableGraphDef;
 import dev.byblos.chart.model.PlotDef;
+import dev.byblos.model.Deadline;
 import dev.byblos.model.EvalContext;
 import dev.byblos.model.StyleExpr;
 import dev.byblos.util.Features;
@@ -38,6 +39,8 @@ public abstract class GraphConfig {
 
     public abstract Optional<String> step();
 
+    public abstract Optional<String> timeout();
+
     public abstract List<String> timezones();
 
     public abstract ImageFlags flags();
@@ -97,7 +100,22 @@ public abstract class GraphConfig {
     @Value.Derived
     public EvalContext evalContext() {
         var timeRange = finalTimeRange();
-        return new EvalContext(timeRange.first().toEpochMilli(), timeRange.second().toEpochMilli() + stepSize(), stepSize());
+        return new EvalContext(timeRange.first().toEpochMilli(), timeRange.second().toEpochMilli() + stepSize(), stepSize(), deadline());
+    }
+
+    /**
+     * Returns the deadline of the request, which starts when the config is created. The
+     * requested timeout can only lower the one configured in the settings.
+     */
+    @Value.Derived
+    @Value.Auxiliary
+    public Deadline deadline() {
+        var max = settings().timeout();
+        var timeout = timeout().map(Strings::parseDuration).orElse(max);
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException(String.format("timeout must be positive: %s", timeout().get()));
+        }
+        return Deadline.after(timeout.compareTo(max) < 0 ? timeout : max);
     }
 
     @Value.Derived
@@ -1,15 +1,23 @@
 package dev.byblos.eval.graph;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import dev.byblos.chart.GraphConstants;
 import dev.byblos.chart.model.Layout;
 import dev.byblos.model.StyleExpr;
 import dev.byblos.stacklang.InvalidSyntaxException;
 import dev.byblos.util.Features;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -20,9 +28,29 @@ import static java.util.Objects.requireNonNull;
 
 public final class GraphConfigFactory {
     private final DefaultSettings settings;
+    private final Cache<QueryKey, ParsedQuery> queryCache;
+    private final Counter hits;
+    private final Counter misses;
 
     public GraphConfigFactory(DefaultSettings settings) {
+        this(settings, Metrics.globalRegistry);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param settings Settings of the graphs, including the interpreter of the queries.
+     * @param registry Registry to report metrics about the cache of parsed queries.
+     */
+    @VisibleForTesting
+    GraphConfigFactory(DefaultSettings settings, MeterRegistry registry) {
         this.settings = requireNonNull(settings);
+        // Parsed queries only depend on the vocabulary of the settings, which is fixed for their
+        // lifetime, so that the cache never needs to be invalidated.
+        queryCache = CacheBuilder.newBuilder().maximumSize(settings.queryCacheSize()).build();
+        hits = Counter.builder("byblos.graph.query.cache.requests").tag("result", "hit").register(registry);
+        misses = Counter.builder("byblos.graph.query.cache.requests").tag("result", "miss").register(registry);
+        Gauge.builder("byblos.graph.query.cache.size", queryCache, Cache::size).register(registry);
     }
 
     /**
@@ -40,6 +68,7 @@ public final class GraphConfigFactory {
                 .start(request.getFirstParam("s"))
                 .end(request.getFirstParam("e"))
                 .step(request.getFirstParam("step"))
+                .timeout(request.getFirstParam("timeout"))
                 .uri(request.uri());
 
         request.getFirstParam("format").ifPresent(builder::format);
@@ -62,7 +91,10 @@ public final class GraphConfigFactory {
                 .ifPresent(builder::browser);
 
         try {
-            builder.parsedQuery(parseQuery(q.get(), timezones, features));
+            var tz = GraphConfig.getTimeZoneIds(settings, timezones).get(0);
+            var parsed = parseQuery(new QueryKey(q.get(), tz, features));
+            parsed.exprs().ifPresent(builder::parsedQuery);
+            parsed.exception().ifPresent(builder::parseException);
         } catch (Exception e) {
             builder.parseException(e);
         }
@@ -146,8 +178,30 @@ public final class GraphConfigFactory {
         return !asBoolean(value);
     }
 
-    private List<StyleExpr> parseQuery(String q, List<String> timezones, Features features) throws InvalidSyntaxException {
-        var vars = Map.<String, Object>of("tz", GraphConfig.getTimeZoneIds(settings, timezones).get(0));
+    /**
+     * Parse a query, or return the result of a previous parsing of the same query. Invalid
+     * queries are cached too, as they are as deterministic as successes. Other failures are
+     * not, as they could be transient.
+     */
+    private ParsedQuery parseQuery(QueryKey key) {
+        var cached = queryCache.getIfPresent(key);
+        if (null != cached) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        ParsedQuery parsed;
+        try {
+            parsed = new ParsedQuery(Optional.of(parseQuery(key.query(), key.tz(), key.features())), Optional.empty());
+        } catch (InvalidSyntaxException | IllegalArgumentException e) {
+            parsed = new ParsedQuery(Optional.empty(), Optional.of(e));
+        }
+        queryCache.put(key, parsed);
+        return parsed;
+    }
+
+    private List<StyleExpr> parseQuery(String q, ZoneId tz, Features features) throws InvalidSyntaxException {
+        var vars = Map.<String, Object>of("tz", tz);
         var exprs = new ArrayList<StyleExpr>();
         for (var v : settings.interpreter().execute(q, vars, features).stack().reverse()) {
             if (!isPresentationType(v)) {
@@ -155,6 +209,12 @@ public final class GraphConfigFactory {
             }
             exprs.add(asPresentationType(v));
         }
-        return exprs;
+        return List.copyOf(exprs);
+    }
+
+    private record QueryKey(String query, ZoneId tz, Features features) {
+    }
+
+    private record ParsedQuery(Optional<List<StyleExpr>> exprs, Optional<Exception> exception) {
     }
 }
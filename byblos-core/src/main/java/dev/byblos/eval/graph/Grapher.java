@@ -2,7 +2,6 @@ package dev.byblos.eval.graph;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Multimap;
 import dev.byblos.chart.Colors;
 import dev.byblos.chart.graphics.Dimensions;
@@ -27,12 +26,14 @@ import static java.util.Objects.requireNonNull;
 
 public final class Grapher {
     private final DefaultSettings settings;
-    private final Backend backend;
+    private final DataFetcher fetcher;
+    private final boolean limitPushdown;
     private static final Logger LOGGER = LoggerFactory.getLogger(Grapher.class);
 
     public Grapher(DefaultSettings settings, Backend backend) {
         this.settings = requireNonNull(settings);
-        this.backend = requireNonNull(backend);
+        fetcher = new DataFetcher(requireNonNull(backend), settings.fetchParallelism(), settings.fetchMaxConcurrency(), settings.fetchTimeout(), settings.fetchRenderReserve());
+        limitPushdown = settings.limitPushdown() && backend.supportsLimitPushdown();
     }
 
     /**
@@ -43,18 +44,22 @@ public final class Grapher {
             return createErrorResult(config, config.parseException().get());
         }
         try {
-            var dataExprs = config.parsedQuery()
+            // The request may have waited for a thread long enough to be abandoned already.
+            config.deadline().check();
+            // Expressions as fetched from the backend, the original ones being kept for display.
+            var fetched = config.parsedQuery()
+                    .stream()
+                    .distinct()
+                    .collect(Collectors.toMap(Function.identity(), e -> limitPushdown ? LimitPushdown.rewrite(e, config) : e));
+            var dataExprs = fetched.values()
                     .stream()
                     .flatMap(e -> e.expr().dataExprs().stream())
                     .distinct()
                     .toList();
-            var result = ImmutableListMultimap.<DataExpr, TimeSeries>builder();
             var stopWatch = Stopwatch.createStarted();
-            for (var expr : dataExprs) {
-                result.putAll(expr, backend.query(config.evalContext(), expr));
-            }
+            var result = fetcher.fetch(config.evalContext(), dataExprs);
             stopWatch.stop();
-            return evalAndRender(config, stopWatch.elapsed(), result.build());
+            return evalAndRender(config, stopWatch.elapsed(), fetched, result.data(), result.warnings());
         } catch (Exception e) {
             return createErrorResult(config, e);
         }
@@ -62,7 +67,9 @@ public final class Grapher {
 
     private GraphResult createErrorResult(GraphConfig config, Throwable t) {
         var userError = Throwables.isUserError(t);
-        if (!userError) {
+        if (t instanceof DeadlineExceededException) {
+            LOGGER.debug("Abandoned graph: {}", t.getMessage());
+        } else if (!userError) {
             LOGGER.error("Error while rendering graph", t);
         }
         var data = new byte[0];
@@ -81,22 +88,28 @@ public final class Grapher {
         return baos.toByteArray();
     }
 
-    private GraphResult evalAndRender(GraphConfig config, Duration fetchTime, Multimap<DataExpr, TimeSeries> data) throws IOException {
-        var graphDef = create(config, fetchTime, e -> e.expr().eval(config.evalContext(), data));
+    private GraphResult evalAndRender(GraphConfig config, Duration fetchTime, Map<StyleExpr, StyleExpr> fetched, Multimap<DataExpr, TimeSeries> data, List<String> fetchWarnings) throws IOException {
+        var deadline = config.deadline();
+        var graphDef = create(config, fetchTime, fetchWarnings, e -> {
+            deadline.check();
+            return fetched.get(e).expr().eval(config.evalContext(), data);
+        });
         if (graphDef.numLines() == 0) {
             // Do not draw an empty graph. "q" is a required parameter.
             throw new IllegalStateException("expression generated no lines");
         }
+        deadline.check();
         var baos = new ByteArrayOutputStream();
-        config.engine().writeGraph(graphDef, baos);
+        // Encoding stops at the next write once the deadline has expired.
+        config.engine().writeGraph(graphDef, new DeadlineOutputStream(baos, deadline));
         return GraphResult.ok(config, baos.toByteArray());
     }
 
     /**
      * Create a new graph definition based on the specified config and data.
      */
-    private GraphDef create(GraphConfig config, Duration fetchTime, Function<StyleExpr, ResultSet> eval) {
-        var warnings = ImmutableList.<String>builder();
+    private GraphDef create(GraphConfig config, Duration fetchTime, List<String> fetchWarnings, Function<StyleExpr, ResultSet> eval) {
+        var warnings = ImmutableList.<String>builder().addAll(fetchWarnings);
 
         var plotExprs = config.parsedQuery().stream().collect(Collectors.groupingBy(e -> e.axis().orElse(0)));
         var multiY = plotExprs.size() > 1 && !GraphDef.ambiguousMultiY(config.flags().hints());
@@ -147,9 +160,8 @@ public final class Grapher {
             var stats = SummaryStats.fromData(t.data(), config.startMillis(), config.endMillis());
             // Additional stats can be used for substitutions, but should not be included
             // as part of the output tag map
-            var legendTags = new HashMap<>(t.tags());
-            legendTags.putAll(stats.tags(axis.statFormatter()));
-            return Map.entry(new TimeSeries(t.data(), expr.legend(t.label(), legendTags), t.tags()), stats);
+            var legend = expr.legend(t.label(), t.tags(), stats.tags(axis.statFormatter()));
+            return Map.entry(new TimeSeries(t.data(), legend, t.tags()), stats);
         }).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
         var palette = expr.palette().map(Grapher::newPalette).orElseGet(() -> {
@@ -0,0 +1,67 @@
+package dev.byblos.eval.graph;
+
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.StyleExpr;
+
+import java.util.Map;
+
+/**
+ * Pushes down the line limit of an expression into the query sent to the backend.
+ * <p>
+ * When an expression with {@code :limit} is sorted by a summary statistic, only the lines
+ * ranking first on this statistic over the graph window are displayed. The query is rewritten
+ * so that Prometheus only returns these series, instead of fetching all of them and dropping
+ * most after computing their statistics:
+ * <pre>
+ * q and topk(n, max_over_time((q)[window:step] @ end))
+ * </pre>
+ * The subquery evaluates the expression at the same timestamps as the graph, over the window
+ * used for the legend statistics, so that the ranking is the same. The local sort and limit
+ * still apply to the returned series. Series tied at the cutoff may be picked differently, and
+ * series without any value within the window are never returned, though with a descending
+ * sort they would rank first locally as their statistic is NaN.
+ * <p>
+ * Only plain data expressions are rewritten. Math applied on top of the data, or sorting by
+ * legend, would change which series are kept, so those expressions are evaluated locally.
+ */
+final class LimitPushdown {
+    private static final Map<String, String> FUNCTIONS = Map.of(
+            "min", "min_over_time",
+            "max", "max_over_time",
+            "avg", "avg_over_time",
+            "count", "count_over_time",
+            "total", "sum_over_time",
+            "last", "last_over_time");
+
+    /**
+     * Rewrite an expression to push its limit down, or return it as is if it cannot be.
+     *
+     * @param expr   Expression to rewrite.
+     * @param config Graph configuration, defining the window of the legend statistics.
+     */
+    static StyleExpr rewrite(StyleExpr expr, GraphConfig config) {
+        if (!(expr.expr() instanceof DataExpr data) || expr.limit().isEmpty()) {
+            return expr;
+        }
+        var function = expr.sortBy().map(FUNCTIONS::get);
+        // Series without values rank first in ascending count order, but are not returned.
+        if (function.isEmpty() || ("count".equals(expr.sortBy().get()) && !expr.useDescending())) {
+            return expr;
+        }
+        var limit = expr.limit().get();
+        var op = expr.useDescending() ? "topk" : "bottomk";
+        var step = config.stepSize();
+        // The legend statistics cover the steps within [startMillis, endMillis), while a
+        // subquery covers the steps within (end - range, end].
+        var end = config.endMillis() - step;
+        var range = config.endMillis() - config.startMillis();
+        var query = data.exprString();
+        var rewritten = String.format("(%s) and %s(%d, %s((%s)[%dms:%dms] @ %d.%03d))",
+                query, op, limit, function.get(), query, range, step, end / 1000, end % 1000);
+        return new StyleExpr(new DataExpr(rewritten), expr.settings());
+    }
+
+    private LimitPushdown() {
+        // Do not instantiate.
+    }
+}
@@ -1,6 +1,7 @@
 package dev.byblos.model;
 
 import java.util.Arrays;
+import java.util.function.DoubleConsumer;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -32,6 +33,45 @@ public final class ArrayTimeSeq implements TimeSeq {
         return data[(int) i];
     }
 
+    @Override
+    public void forEach(long s, long e, DoubleConsumer consumer) {
+        checkArgument(s <= e, "start must be <= end");
+        var t = s / step * step;
+        var n = size(s, e);
+        var offset = (t - start) / step;
+        for (var i = 0; i < n; i++) {
+            var j = offset + i;
+            consumer.accept(j >= 0 && j < data.length ? data[(int) j] : Double.NaN);
+        }
+    }
+
+    @Override
+    public int copyTo(double[] dest, long s, long e) {
+        checkArgument(s <= e, "start must be <= end");
+        var t = s / step * step;
+        var n = size(s, e);
+        var offset = (t - start) / step;
+        // Indices of the destination overlapping with the data, everything else is NaN.
+        var from = (int) Math.max(0, Math.min(n, -offset));
+        var to = (int) Math.max(from, Math.min(n, data.length - offset));
+        Arrays.fill(dest, 0, from, Double.NaN);
+        if (from < to) {
+            System.arraycopy(data, (int) (offset + from), dest, from, to - from);
+        }
+        Arrays.fill(dest, to, n, Double.NaN);
+        return n;
+    }
+
+    @Override
+    public ArrayTimeSeq bounded(long s, long e) {
+        // Sequences are never modified once created, so there is no need to copy the data
+        // if it already covers the exact range.
+        if (s / step * step == start && size(s, e) == data.length) {
+            return this;
+        }
+        return TimeSeq.super.bounded(s, e);
+    }
+
     public double[] data() {
         return data;
     }
@@ -33,7 +33,7 @@ public final class DataVocabulary implements Vocabulary {
 
     private static final class Query extends SimpleWord {
         private Query() {
-            super("query", "String -- TimeSeriesExpr");
+            super("query", "String -- TimeSeriesExpr", StackPattern.of(TypeUtils.STRING));
         }
 
         @Override
@@ -41,17 +41,12 @@ public final class DataVocabulary implements Vocabulary {
             var expr = new DataExpr(TypeUtils.asString(stack.get(0)));
             return stack.popAndPush(expr);
         }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString);
-        }
     }
 
     static final class Const extends SimpleWord {
 
         Const() {
-            super("const", "Double -- TimeSeriesExpr");
+            super("const", "Double -- TimeSeriesExpr", StackPattern.of(TypeUtils.DOUBLE));
         }
 
         @Override
@@ -59,22 +54,12 @@ public final class DataVocabulary implements Vocabulary {
             var expr = new ConstantExpr(TypeUtils.asDouble(stack.get(0)));
             return stack.popAndPush(expr);
         }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isDouble);
-        }
     }
 
     static final class Time extends SimpleWord {
 
         Time() {
-            super("time", "String -- TimeSeriesExpr");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString);
+            super("time", "String -- TimeSeriesExpr", StackPattern.of(TypeUtils.STRING));
         }
 
         @Override
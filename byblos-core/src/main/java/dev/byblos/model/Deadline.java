@@ -0,0 +1,118 @@
+package dev.byblos.model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deadline of a request, shared by all the work done on its behalf.
+ * <p>
+ * A deadline expires once its timeout has elapsed, or as soon as it is cancelled, for example
+ * because the client went away. Expiration is cooperative: work is expected to check the
+ * deadline between steps, and to bound its own timeouts by the remaining time. Work that
+ * cannot check it, such as requests in flight, can register to be notified of a cancellation.
+ */
+public final class Deadline {
+    private final long expiresAt;
+    private final boolean bounded;
+    private final List<Runnable> listeners = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    private Deadline(long expiresAt, boolean bounded) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Returns a deadline that never expires, unless it is cancelled.
+     */
+    public static Deadline none() {
+        return new Deadline(0, false);
+    }
+
+    /**
+     * Returns a deadline expiring after the given timeout.
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    /**
+     * Returns whether the deadline has been cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns whether the deadline has been cancelled or its timeout has elapsed.
+     */
+    public boolean isExpired() {
+        return cancelled || (bounded && System.nanoTime() - expiresAt >= 0);
+    }
+
+    /**
+     * Returns the time remaining before the deadline, at most the given duration.
+     */
+    public Duration remaining(Duration max) {
+        if (cancelled) {
+            return Duration.ZERO;
+        }
+        if (!bounded) {
+            return max;
+        }
+        var remaining = Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+        return remaining.compareTo(max) < 0 ? remaining : max;
+    }
+
+    /**
+     * Throw a {@link DeadlineExceededException} if the deadline has expired.
+     */
+    public void check() {
+        if (cancelled) {
+            throw new DeadlineExceededException("request was cancelled");
+        }
+        if (isExpired()) {
+            throw new DeadlineExceededException("request deadline exceeded");
+        }
+    }
+
+    /**
+     * Cancel the deadline, notifying the registered listeners.
+     */
+    public void cancel() {
+        List<Runnable> toNotify;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toNotify = List.copyOf(listeners);
+            listeners.clear();
+        }
+        toNotify.forEach(Runnable::run);
+    }
+
+    /**
+     * Register a listener to be notified when the deadline is cancelled. It is run immediately
+     * if the deadline is already cancelled.
+     *
+     * @param listener Listener to notify.
+     * @return Handle to unregister the listener, once the work it cancels has completed.
+     */
+    public Runnable onCancel(Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return () -> {
+                    synchronized (this) {
+                        listeners.remove(listener);
+                    }
+                };
+            }
+        }
+        listener.run();
+        return () -> {
+        };
+    }
+}
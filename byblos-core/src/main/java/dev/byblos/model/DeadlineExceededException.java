@@ -0,0 +1,12 @@
+package dev.byblos.model;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown when work is abandoned because the deadline of the request has expired.
+ */
+public final class DeadlineExceededException extends CancellationException {
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,17 +1,24 @@
 package dev.byblos.model;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
 
 public final class EvalContext {
     private final long start;
     private final long end;
     private final long step;
+    private final Deadline deadline;
 
     public EvalContext(long start, long end, long step) {
+        this(start, end, step, Deadline.none());
+    }
+
+    public EvalContext(long start, long end, long step, Deadline deadline) {
         checkArgument(start < end, String.format("start time must be less than end time (%s >= %s)", start, end));
         this.start = start;
         this.end = end;
         this.step = step;
+        this.deadline = requireNonNull(deadline);
     }
 
     public long start() {
@@ -26,8 +33,22 @@ public final class EvalContext {
         return step;
     }
 
+    /**
+     * Returns the deadline of the request this context is evaluated for.
+     */
+    public Deadline deadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns a context covering another time range, for the same request.
+     */
+    public EvalContext withRange(long start, long end) {
+        return new EvalContext(start, end, step, deadline);
+    }
+
     public EvalContext withOffset(long offset) {
         var dur = offset / step * step;
-        return (dur < step) ? this : new EvalContext(start - dur, end - dur, step);
+        return (dur < step) ? this : withRange(start - dur, end - dur);
     }
 }
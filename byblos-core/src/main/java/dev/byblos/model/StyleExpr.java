@@ -19,8 +19,16 @@ public record StyleExpr(TimeSeriesExpr expr, Map<String, String> settings) imple
     }
 
     public String legend(String label, Map<String, String> tags) {
+        return legend(label, tags, Map.of());
+    }
+
+    /**
+     * Returns the legend of a series, variables being substituted from the overrides first,
+     * then from the tags.
+     */
+    public String legend(String label, Map<String, String> tags, Map<String, String> overrides) {
         var fmt = settings.getOrDefault("legend", label);
-        return sed(Strings.substitute(fmt, tags));
+        return sed(TagMap.of(tags).substitute(fmt, overrides));
     }
 
     public Optional<String> palette() {
@@ -40,7 +48,7 @@ public record StyleExpr(TimeSeriesExpr expr, Map<String, String> settings) imple
     }
 
     public boolean useDescending() {
-        return "desc".equals(settings.get("sort"));
+        return "desc".equals(settings.get("order"));
     }
 
     public Float lineWidth() {
@@ -11,6 +11,10 @@ import java.util.List;
 public final class StyleVocabulary implements Vocabulary {
     public final static Vocabulary INSTANCE = new StyleVocabulary();
 
+    private static final StackPattern.Param STRING_OR_STRING_LIST = new StackPattern.Param(
+            v -> TypeUtils.isString(v) || TypeUtils.isStringList(v),
+            c -> c == String.class ? StackPattern.Decision.MATCH : TypeUtils.STRING_LIST.byClass().apply(c));
+
     private StyleVocabulary() {
         // Singleton.
     }
@@ -50,12 +54,7 @@ public final class StyleVocabulary implements Vocabulary {
 
     private static class StyleWord extends SimpleWord {
         protected StyleWord(String name) {
-            super(name, "TimeSeriesExpr String -- StyleExpr");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString, TypeUtils::isPresentationType);
+            super(name, "TimeSeriesExpr String -- StyleExpr", StackPattern.of(TypeUtils.STRING, TypeUtils.PRESENTATION));
         }
 
         @Override
@@ -71,12 +70,7 @@ public final class StyleVocabulary implements Vocabulary {
 
     static final class Alpha extends SimpleWord {
         Alpha() {
-            super("alpha", "TimeSeriesExpr String -- StyleExpr");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString, TypeUtils::isPresentationType);
+            super("alpha", "TimeSeriesExpr String -- StyleExpr", StackPattern.of(TypeUtils.STRING, TypeUtils.PRESENTATION));
         }
 
         @Override
@@ -105,12 +99,7 @@ public final class StyleVocabulary implements Vocabulary {
 
     static final class Color extends SimpleWord {
         Color() {
-            super("color", "TimeSeriesExpr String -- StyleExpr");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString, TypeUtils::isPresentationType);
+            super("color", "TimeSeriesExpr String -- StyleExpr", StackPattern.of(TypeUtils.STRING, TypeUtils.PRESENTATION));
         }
 
         @Override
@@ -128,12 +117,7 @@ public final class StyleVocabulary implements Vocabulary {
 
     static final class Palette extends SimpleWord {
         Palette() {
-            super("palette", "TimeSeriesExpr String -- StyleExpr");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(v -> (TypeUtils.isString(v) || TypeUtils.isStringList(v)), TypeUtils::isPresentationType);
+            super("palette", "TimeSeriesExpr String -- StyleExpr", StackPattern.of(STRING_OR_STRING_LIST, TypeUtils.PRESENTATION));
         }
 
         @Override
@@ -153,12 +137,7 @@ public final class StyleVocabulary implements Vocabulary {
 
     static final class Decode extends SimpleWord {
         Decode() {
-            super("decode", "TimeSeriesExpr String -- StyleExpr");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString, TypeUtils::isPresentationType);
+            super("decode", "TimeSeriesExpr String -- StyleExpr", StackPattern.of(TypeUtils.STRING, TypeUtils.PRESENTATION));
         }
 
         @Override
@@ -172,12 +151,7 @@ public final class StyleVocabulary implements Vocabulary {
 
     static final class SearchAndReplace extends SimpleWord {
         SearchAndReplace() {
-            super("s", "TimeSeriesExpr s:String r:String -- StyleExpr");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString, TypeUtils::isString, TypeUtils::isPresentationType);
+            super("s", "TimeSeriesExpr s:String r:String -- StyleExpr", StackPattern.of(TypeUtils.STRING, TypeUtils.STRING, TypeUtils.PRESENTATION));
         }
 
         @Override
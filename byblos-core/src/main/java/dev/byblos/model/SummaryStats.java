@@ -1,6 +1,7 @@
 package dev.byblos.model;
 
 import java.util.Map;
+import java.util.function.DoubleConsumer;
 import java.util.function.Function;
 
 public final class SummaryStats {
@@ -25,13 +26,23 @@ public final class SummaryStats {
     }
 
     public static SummaryStats fromData(TimeSeq ts, long start, long end) {
-        var total = 0.0;
-        var count = 0;
-        var max = Double.NEGATIVE_INFINITY;
-        var min = Double.POSITIVE_INFINITY;
-        var last = Double.NaN;
+        var acc = new Accumulator();
+        ts.forEach(start, end, acc);
+        return acc.stats();
+    }
 
-        for (var v : ts.range(start, end)) {
+    /**
+     * Accumulates the statistics for a sequence of values, ignoring NaN.
+     */
+    public static final class Accumulator implements DoubleConsumer {
+        private double total = 0.0;
+        private int count = 0;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double min = Double.POSITIVE_INFINITY;
+        private double last = Double.NaN;
+
+        @Override
+        public void accept(double v) {
             if (!Double.isNaN(v)) {
                 total += v;
                 count += 1;
@@ -41,7 +52,9 @@ public final class SummaryStats {
             }
         }
 
-        return (count == 0) ? EMPTY : new SummaryStats(count, min, max, last, total);
+        public SummaryStats stats() {
+            return (count == 0) ? EMPTY : new SummaryStats(count, min, max, last, total);
+        }
     }
 
     public int count() {
@@ -0,0 +1,302 @@
+package dev.byblos.model;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import dev.byblos.util.Strings;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable map of tags, backed by a single array of keys and values sorted by key.
+ * <p>
+ * Tag maps are canonical: instances are interned, as well as their keys and values, so that
+ * series sharing a label set share a single instance, and label strings such as the job or
+ * the instance are not duplicated across thousands of series. This also allows to cache
+ * what is derived from a label set, such as its default label or its legends.
+ */
+public final class TagMap extends AbstractMap<String, String> {
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final Interner<TagMap> MAPS = Interners.newWeakInterner();
+    private static final TagMap EMPTY = new TagMap(new String[0]);
+
+    /**
+     * Keys and values, interleaved and sorted by key.
+     */
+    private final String[] entries;
+    private final int hash;
+    private volatile String defaultLabel;
+    private volatile Legend legend;
+
+    private TagMap(String[] entries) {
+        this.entries = entries;
+        var h = 0;
+        for (var i = 0; i < entries.length; i += 2) {
+            // Same as the hash code of a map entry, to honor the contract of Map.
+            h += entries[i].hashCode() ^ entries[i + 1].hashCode();
+        }
+        this.hash = h;
+    }
+
+    /**
+     * Returns the canonical instance of a string used as a tag key or value.
+     */
+    public static String intern(String str) {
+        return STRINGS.intern(str);
+    }
+
+    public static TagMap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the canonical tag map holding the same tags as the given map.
+     */
+    public static TagMap of(Map<String, String> tags) {
+        if (tags instanceof TagMap m) {
+            return m;
+        }
+        var builder = new Builder(tags.size());
+        tags.forEach(builder::put);
+        return builder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder(8);
+    }
+
+    /**
+     * Returns the canonical tag map holding the same tags, except the given key.
+     */
+    public TagMap without(String key) {
+        var i = indexOf(key);
+        if (i < 0) {
+            return this;
+        }
+        var copy = new String[entries.length - 2];
+        System.arraycopy(entries, 0, copy, 0, i);
+        System.arraycopy(entries, i + 2, copy, i, entries.length - i - 2);
+        return canonical(copy);
+    }
+
+    /**
+     * Returns the tags formatted as {@code k1=v1, k2=v2}, sorted by key, or {@code NO TAGS} if
+     * there are none.
+     */
+    public String defaultLabel() {
+        var label = defaultLabel;
+        if (null == label) {
+            if (entries.length == 0) {
+                label = "NO TAGS";
+            } else {
+                var sb = new StringBuilder();
+                for (var i = 0; i < entries.length; i += 2) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(entries[i]).append('=').append(entries[i + 1]);
+                }
+                label = sb.toString();
+            }
+            defaultLabel = label;
+        }
+        return label;
+    }
+
+    /**
+     * Substitute the tags into a format, see {@link Strings#substitute(String, Map)}. Variables
+     * found in the overrides take precedence over the tags. The last result whose variables
+     * were all found in the tags is cached, and reused as long as the overrides contain none
+     * of them.
+     */
+    public String substitute(String fmt, Map<String, String> overrides) {
+        var cached = legend;
+        if (null != cached && cached.fmt().equals(fmt) && cached.keys().stream().noneMatch(overrides::containsKey)) {
+            return cached.value();
+        }
+        // A variable missing from the tags could be found in other overrides.
+        var keys = new ArrayList<String>();
+        var resolved = new boolean[]{true};
+        var value = Strings.substitute(fmt, k -> {
+            var v = overrides.get(k);
+            if (null != v) {
+                resolved[0] = false;
+                return v;
+            }
+            v = get(k);
+            if (null == v) {
+                resolved[0] = false;
+                return k;
+            }
+            keys.add(k);
+            return v;
+        });
+        if (resolved[0]) {
+            legend = new Legend(fmt, List.copyOf(keys), value);
+        }
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String k && indexOf(k) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String k)) {
+            return null;
+        }
+        var i = indexOf(k);
+        return i < 0 ? null : entries[i + 1];
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < entries.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (i >= entries.length) {
+                            throw new NoSuchElementException();
+                        }
+                        var entry = new SimpleImmutableEntry<>(entries[i], entries[i + 1]);
+                        i += 2;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return TagMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof TagMap other) {
+            return hash == other.hash && Arrays.equals(entries, other.entries);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the index of the key in the entries, or a negative number if it is absent.
+     */
+    private int indexOf(String key) {
+        var lo = 0;
+        var hi = entries.length / 2 - 1;
+        while (lo <= hi) {
+            var mid = (lo + hi) >>> 1;
+            var cmp = entries[2 * mid].compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return 2 * mid;
+            }
+        }
+        return -1;
+    }
+
+    private static TagMap canonical(String[] entries) {
+        return entries.length == 0 ? EMPTY : MAPS.intern(new TagMap(entries));
+    }
+
+    /**
+     * Format substituted with the tags.
+     *
+     * @param fmt   Format.
+     * @param keys  Variables of the format, all found in the tags.
+     * @param value Result of the substitution.
+     */
+    private record Legend(String fmt, List<String> keys, String value) {
+    }
+
+    /**
+     * Builder of tag maps. If a key is put several times, the last value wins.
+     */
+    public static final class Builder {
+        private String[] entries;
+        private int size;
+
+        private Builder(int capacity) {
+            entries = new String[2 * Math.max(capacity, 1)];
+        }
+
+        public Builder put(String key, String value) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, 2 * entries.length);
+            }
+            entries[size++] = intern(requireNonNull(key, "key"));
+            entries[size++] = intern(requireNonNull(value, "value"));
+            return this;
+        }
+
+        public TagMap build() {
+            var sorted = Arrays.copyOf(entries, size);
+            // Insertion sort, as label sets are small. It is stable, so that the last value put
+            // for a key ends up last among its duplicates.
+            for (var i = 2; i < size; i += 2) {
+                var key = sorted[i];
+                var value = sorted[i + 1];
+                var j = i;
+                while (j > 0 && sorted[j - 2].compareTo(key) > 0) {
+                    sorted[j] = sorted[j - 2];
+                    sorted[j + 1] = sorted[j - 1];
+                    j -= 2;
+                }
+                sorted[j] = key;
+                sorted[j + 1] = value;
+            }
+            var len = 0;
+            for (var i = 0; i < size; i += 2) {
+                if (len > 0 && sorted[len - 2].equals(sorted[i])) {
+                    len -= 2;
+                }
+                sorted[len++] = sorted[i];
+                sorted[len++] = sorted[i + 1];
+            }
+            return canonical(len == size ? sorted : Arrays.copyOf(sorted, len));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package dev.byblos.model;
 
 import com.google.common.collect.AbstractIterator;
 
+import java.util.function.DoubleConsumer;
+
 import static com.google.common.base.Preconditions.checkArgument;
 
 /** TimeSeries can be lazy or eager. By default manipulations are done as a view over another
@@ -31,17 +33,53 @@ public interface TimeSeq {
         };
     }
 
-    default ArrayTimeSeq bounded(long s, long e) {
+    /**
+     * Call the consumer with the value of each step in the range, in order. Unlike
+     * {@link #range(long, long)} values are never boxed.
+     *
+     * @param s        Start time in milliseconds, inclusive.
+     * @param e        End time in milliseconds, exclusive.
+     * @param consumer Consumer of the values.
+     */
+    default void forEach(long s, long e, DoubleConsumer consumer) {
         checkArgument(s <= e, "start must be <= end");
-        var end = e / step() * step();
-        var start = s / step() * step();
-        var length = (int)((end - start) / step());
-        var data = new double[length];
+        var step = step();
+        var end = e / step * step;
+        for (var t = s / step * step; t < end; t += step) {
+            consumer.accept(get(t));
+        }
+    }
+
+    /**
+     * Copy the value of each step in the range into an array, starting at index 0.
+     *
+     * @param dest Destination array, it must be large enough to hold all the steps.
+     * @param s    Start time in milliseconds, inclusive.
+     * @param e    End time in milliseconds, exclusive.
+     * @return Number of values copied.
+     */
+    default int copyTo(double[] dest, long s, long e) {
+        checkArgument(s <= e, "start must be <= end");
+        var step = step();
+        var end = e / step * step;
         var i = 0;
-        for (var v: range(start, end)) {
-            data[i] = v;
-            i += 1;
+        for (var t = s / step * step; t < end; t += step) {
+            dest[i++] = get(t);
         }
-        return new ArrayTimeSeq(start, step(), data);
+        return i;
+    }
+
+    /**
+     * Return the number of steps in the range.
+     */
+    default int size(long s, long e) {
+        checkArgument(s <= e, "start must be <= end");
+        return (int) (e / step() - s / step());
+    }
+
+    default ArrayTimeSeq bounded(long s, long e) {
+        var data = new double[size(s, e)];
+        copyTo(data, s, e);
+        return new ArrayTimeSeq(s / step() * step(), step(), data);
     }
 }
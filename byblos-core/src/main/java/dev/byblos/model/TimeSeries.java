@@ -1,10 +1,13 @@
 package dev.byblos.model;
 
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public record TimeSeries(TimeSeq data, String label, Map<String, String> tags) {
+    public TimeSeries {
+        // Tags are always canonical, so that series with the same tags share them.
+        tags = TagMap.of(tags);
+    }
+
     public TimeSeries withData(TimeSeq data) {
         return new TimeSeries(data, label, tags);
     }
@@ -14,13 +17,6 @@ public record TimeSeries(TimeSeq data, String label, Map<String, String> tags) {
     }
 
     public static String defaultLabel(Map<String, String> tags) {
-        if (tags.isEmpty()) {
-            return "NO TAGS";
-        }
-        return defaultLabel(tags.keySet().stream().sorted().collect(Collectors.toList()), tags);
-    }
-
-    private static String defaultLabel(List<String> keys, Map<String, String> tags) {
-        return keys.stream().map(k -> k + "=" + tags.getOrDefault(k, "NULL")).collect(Collectors.joining(", "));
+        return TagMap.of(tags).defaultLabel();
     }
 }
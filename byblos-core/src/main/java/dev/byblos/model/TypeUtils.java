@@ -1,10 +1,23 @@
 package dev.byblos.model;
 
+import dev.byblos.stacklang.StackPattern.Decision;
+import dev.byblos.stacklang.StackPattern.Param;
+
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 public final class TypeUtils {
+    /**
+     * Stack parameters matching the types below. Strings may be parsed as numbers, hence their
+     * values have to be checked.
+     */
+    public static final Param STRING = Param.instanceOf(String.class);
+    public static final Param INT = new Param(TypeUtils::isInt, c -> c == Integer.class ? Decision.MATCH : c == String.class ? Decision.CHECK : Decision.NO_MATCH);
+    public static final Param DOUBLE = new Param(TypeUtils::isDouble, c -> c == Double.class ? Decision.MATCH : c == String.class ? Decision.CHECK : Decision.NO_MATCH);
+    public static final Param PRESENTATION = Param.instanceOf(StyleExpr.class, TimeSeriesExpr.class, String.class);
+    public static final Param STRING_LIST = new Param(TypeUtils::isStringList, c -> List.class.isAssignableFrom(c) ? Decision.CHECK : Decision.NO_MATCH);
+
     public static boolean isPresentationType(Object v) {
         return v instanceof StyleExpr || isTimeSeriesType(v);
     }
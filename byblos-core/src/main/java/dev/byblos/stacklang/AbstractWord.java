@@ -1,14 +1,32 @@
 package dev.byblos.stacklang;
 
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkState;
 import static java.util.Objects.requireNonNull;
 
 public abstract class AbstractWord implements Word {
     private final String name;
     private final String signature;
+    private final StackPattern pattern;
 
+    /**
+     * Constructor for words that override {@link #matches(Stack)}.
+     */
     protected AbstractWord(String name, String signature) {
         this.name = requireNonNull(name);
         this.signature = requireNonNull(signature);
+        this.pattern = null;
+    }
+
+    /**
+     * Constructor for words matching a pattern, which must not override
+     * {@link #matches(Stack)}.
+     */
+    protected AbstractWord(String name, String signature, StackPattern pattern) {
+        this.name = requireNonNull(name);
+        this.signature = requireNonNull(signature);
+        this.pattern = requireNonNull(pattern);
     }
 
     @Override
@@ -21,6 +39,17 @@ public abstract class AbstractWord implements Word {
         return signature;
     }
 
+    @Override
+    public boolean matches(Stack stack) {
+        checkState(null != pattern, "word :%s must declare a pattern or override matches", name);
+        return pattern.matches(stack);
+    }
+
+    @Override
+    public Optional<StackPattern> pattern() {
+        return Optional.ofNullable(pattern);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
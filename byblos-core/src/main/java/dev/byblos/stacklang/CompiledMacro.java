@@ -0,0 +1,111 @@
+package dev.byblos.stacklang;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Body of a macro compiled for an interpreter, as a flat list of instructions.
+ * <p>
+ * Lists are parsed once, and the words are resolved to their overloads. As overloads are
+ * selected from the stack, the word to execute is still resolved when the macro runs,
+ * except for the names whose first word is a macro: it always matches, so its body is
+ * inlined. Recursive macros are left as calls, to fail the same way as they would otherwise.
+ */
+final class CompiledMacro {
+    private final Macro macro;
+    private final List<Instruction> instructions;
+
+    private CompiledMacro(Macro macro, List<Instruction> instructions) {
+        this.macro = macro;
+        this.instructions = List.copyOf(instructions);
+    }
+
+    /**
+     * Compile a macro.
+     *
+     * @param macro Macro to compile.
+     * @param words Overloads of the interpreter, by name.
+     * @throws InvalidSyntaxException If the body of the macro contains unmatched parentheses.
+     */
+    static CompiledMacro compile(Macro macro, Map<String, Overloads> words) throws InvalidSyntaxException {
+        var instructions = new ArrayList<Instruction>();
+        var expanding = new HashSet<Macro>();
+        expanding.add(macro);
+        compile(macro.body(), words, expanding, instructions);
+        return new CompiledMacro(macro, instructions);
+    }
+
+    private static void compile(List<Object> body, Map<String, Overloads> words, Set<Macro> expanding, List<Instruction> instructions) throws InvalidSyntaxException {
+        var i = 0;
+        while (i < body.size()) {
+            var token = body.get(i);
+            if ("(".equals(token)) {
+                var end = Interpreter.closingParenthesis(body, i + 1);
+                instructions.add(new Push(List.copyOf(body.subList(i + 1, end))));
+                i = end;
+            } else if (")".equals(token)) {
+                throw new InvalidSyntaxException("unmatched closing parenthesis");
+            } else if (token instanceof String str && str.startsWith(":")) {
+                var name = str.substring(1);
+                var overloads = words.get(name);
+                if (null != overloads && overloads.words().get(0) instanceof Macro nested && expanding.add(nested)) {
+                    compile(nested.body(), words, expanding, instructions);
+                    expanding.remove(nested);
+                } else {
+                    instructions.add(new Call(name, overloads));
+                }
+            } else {
+                instructions.add(new Push(token));
+            }
+            i++;
+        }
+    }
+
+    Macro macro() {
+        return macro;
+    }
+
+    List<Instruction> instructions() {
+        return instructions;
+    }
+
+    /**
+     * Returns the instructions as a program, which would have the same effect if executed.
+     */
+    List<Object> program() {
+        var program = new ArrayList<>();
+        for (var instruction : instructions) {
+            if (instruction instanceof Push push && push.value() instanceof List<?> list) {
+                program.add("(");
+                program.addAll(list);
+                program.add(")");
+            } else if (instruction instanceof Push push) {
+                program.add(push.value());
+            } else if (instruction instanceof Call call) {
+                program.add(":" + call.name());
+            }
+        }
+        return program;
+    }
+
+    sealed interface Instruction permits Push, Call {
+    }
+
+    /**
+     * Push a value on the stack.
+     */
+    record Push(Object value) implements Instruction {
+    }
+
+    /**
+     * Execute the word selected among overloads.
+     *
+     * @param name      Name of the word.
+     * @param overloads Words with this name, or null if there is none.
+     */
+    record Call(String name, Overloads overloads) implements Instruction {
+    }
+}
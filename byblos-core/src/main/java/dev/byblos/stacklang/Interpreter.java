@@ -1,20 +1,23 @@
 package dev.byblos.stacklang;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import dev.byblos.util.Features;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 public final class Interpreter {
     private final List<Word> vocabulary;
     private final int vocabularySize;
-    private final Map<String, List<Word>> words;
+    private final Map<String, Overloads> words;
+    private final Map<Macro, CompiledMacro> macros;
 
     /**
      * Constructor.
@@ -26,7 +29,9 @@ public final class Interpreter {
     public Interpreter(List<Word> words) {
         this.vocabulary = List.copyOf(words);
         vocabularySize = words.size();
-        this.words = words.stream().collect(Collectors.groupingBy(Word::name));
+        this.words = words.stream().collect(Collectors.groupingBy(Word::name)).entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> new Overloads(e.getValue())));
+        macros = compileMacros(words, this.words);
     }
 
     public record Step(List<Object> program, Context context) {
@@ -66,16 +71,46 @@ public final class Interpreter {
     }
 
     public List<Step> debug(List<Object> program, Context context) throws InvalidSyntaxException {
-        var result = debugImpl(List.of(), new Step(program, context));
-        if (result.isEmpty()) {
-            return result;
+        return debug(program, context, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Execute a program step by step, recording the program left and the context before each
+     * step, and after the last one. Steps share the remaining program and the items of the
+     * stacks with each other.
+     *
+     * @param maxSteps Maximum number of steps to record. If the program needs more steps, the
+     *                 first ones are recorded along with the last one, which holds the result.
+     */
+    public List<Step> debug(List<Object> program, Context context, int maxSteps) throws InvalidSyntaxException {
+        checkArgument(maxSteps >= 2, "maxSteps must be at least 2, got %s", maxSteps);
+        var steps = new ArrayList<Step>();
+        var step = new Step(program, context);
+        while (!step.program.isEmpty()) {
+            if (steps.size() < maxSteps - 1) {
+                steps.add(step);
+            }
+            step = nextStep(step);
         }
-        return Lists.reverse(Stream.concat(Stream.of(new Step(result.get(0).program, result.get(0).context.unfreeze())), result.stream().skip(1)).collect(Collectors.toList()));
+        steps.add(new Step(step.program, step.context.unfreeze()));
+        return steps;
     }
 
-    public List<Step> debugImpl(List<Step> steps, Step step) throws InvalidSyntaxException {
-        var trace = Stream.concat(Stream.of(step), steps.stream()).collect(Collectors.toList());
-        return step.program.isEmpty() ? trace : debugImpl(trace, nextStep(step));
+    /**
+     * Returns the compiled body of the macro executed by the next step, if any. The body is
+     * returned as a program, with the nested macros inlined.
+     */
+    public Optional<List<Object>> macroProgram(Step step) {
+        if (step.program.isEmpty() || !(step.program.get(0) instanceof String str) || !str.startsWith(":")) {
+            return Optional.empty();
+        }
+        var overloads = words.get(str.substring(1));
+        if (null == overloads) {
+            return Optional.empty();
+        }
+        return overloads.select(step.context.stack())
+                .map(macros::get)
+                .map(CompiledMacro::program);
     }
 
     @Override
@@ -84,7 +119,21 @@ public final class Interpreter {
     }
 
     private Context execute(Step s) throws InvalidSyntaxException {
-        return (s.program.isEmpty()) ? s.context : execute(nextStep(s));
+        var program = s.program;
+        var context = s.context;
+        var i = 0;
+        while (i < program.size()) {
+            var token = program.get(i);
+            if ("(".equals(token)) {
+                var end = closingParenthesis(program, i + 1);
+                context = pushList(program.subList(i + 1, end), context);
+                i = end + 1;
+            } else {
+                context = executeToken(token, context);
+                i++;
+            }
+        }
+        return context;
     }
 
     private Step nextStep(Step s) throws InvalidSyntaxException {
@@ -92,75 +141,113 @@ public final class Interpreter {
             return s;
         }
         var token = s.program.get(0);
-        var tail = s.program.subList(1, s.program.size());
         if ("(".equals(token)) {
-            return popAndPushList(0, List.of(), new Step(tail, s.context));
-        } else if (")".equals(token)) {
+            var end = closingParenthesis(s.program, 1);
+            var context = pushList(s.program.subList(1, end), s.context);
+            return new Step(s.program.subList(end + 1, s.program.size()), context);
+        }
+        return new Step(s.program.subList(1, s.program.size()), executeToken(token, s.context));
+    }
+
+    private Context executeToken(Object token, Context context) throws InvalidSyntaxException {
+        if (")".equals(token)) {
             throw new InvalidSyntaxException("unmatched closing parenthesis");
-        } else if (token instanceof String && ((String) token).startsWith(":")) {
-            return new Step(tail, executeWord(((String) token).substring(1), s.context));
+        } else if (token instanceof String str && str.startsWith(":")) {
+            return executeWord(str.substring(1), context);
         }
-        return new Step(tail, s.context.withStack(s.context.stack().push(token)));
+        return context.withStack(context.stack().push(token));
     }
 
     /**
-     * Called with the remaining items from the program after an opening parenthesis is found. It
-     * will push a list containing all items until the matching closing parenthesis. Commands inside
-     * the list will not get executed.
+     * Returns the position of the closing parenthesis matching an opening one, given the
+     * position following it.
      */
-    private Step popAndPushList(int depth, List<Object> acc, Step step) throws InvalidSyntaxException {
-        if (step.program.isEmpty()) {
-            throw new InvalidSyntaxException("unmatched opening parenthesis");
-        }
-        var token = step.program.get(0);
-        var tokens = step.program.subList(1, step.program.size());
-        if ("(".equals(token)) {
-            return popAndPushList(depth + 1, pushLeft("(", acc), new Step(tokens, step.context));
-        } else if (")".equals(token) && depth == 0) {
-            var stack = step.context.stack().push(Lists.reverse(acc));
-            return new Step(tokens, step.context.withStack(stack));
-        } else if (")".equals(token) && depth > 0) {
-            return popAndPushList(depth - 1, pushLeft(")", acc), new Step(tokens, step.context));
+    static int closingParenthesis(List<Object> program, int start) throws InvalidSyntaxException {
+        var depth = 0;
+        for (var i = start; i < program.size(); i++) {
+            var token = program.get(i);
+            if ("(".equals(token)) {
+                depth++;
+            } else if (")".equals(token)) {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
         }
-        return popAndPushList(depth, pushLeft(token, acc), new Step(tokens, step.context));
+        throw new InvalidSyntaxException("unmatched opening parenthesis");
     }
 
-    public static List<Object> pushLeft(Object token, List<Object> tokens) {
-        return Stream.concat(Stream.of(token), tokens.stream()).collect(Collectors.toList());
+    /**
+     * Push a list containing the tokens between matching parentheses. Commands inside the list
+     * will not get executed.
+     */
+    private static Context pushList(List<Object> tokens, Context context) {
+        return context.withStack(context.stack().push(List.copyOf(tokens)));
     }
 
-    private Context executeWord(String name, Context context) throws InvalidSyntaxException {
-        var ws = words.get(name);
-        if (null == ws) {
-            throw new InvalidSyntaxException(String.format("unknown word ':%s'", name));
+    /**
+     * Execute a macro, leaving the context frozen. Macros are compiled when the interpreter is
+     * created, the body of the macros that are not part of its vocabulary or that cannot be
+     * compiled is executed as is.
+     */
+    Context executeMacro(Macro macro, Context context) throws InvalidSyntaxException {
+        var compiled = macros.get(macro);
+        if (null == compiled) {
+            return execute(macro.body(), context, false);
+        }
+        for (var instruction : compiled.instructions()) {
+            if (instruction instanceof CompiledMacro.Push push) {
+                context = context.withStack(context.stack().push(push.value()));
+            } else if (instruction instanceof CompiledMacro.Call call) {
+                context = executeWord(call.name(), call.overloads(), context);
+            }
         }
-        return executeFirstMatchingWord(name, ws, context);
+        return context;
     }
 
-    private Context executeFirstMatchingWord(String name, List<Word> ws, Context context) throws InvalidSyntaxException {
-        var res = executeFirstMatchingWordImpl(ws, context);
-        if (res.isPresent()) {
-            return res.get();
+    /**
+     * Returns the compiled body of a macro of the vocabulary, or null if it cannot be compiled.
+     */
+    CompiledMacro compiled(Macro macro) {
+        return macros.get(macro);
+    }
+
+    private static Map<Macro, CompiledMacro> compileMacros(List<Word> vocabulary, Map<String, Overloads> words) {
+        var macros = new IdentityHashMap<Macro, CompiledMacro>();
+        for (var word : vocabulary) {
+            if (word instanceof Macro macro) {
+                try {
+                    macros.put(macro, CompiledMacro.compile(macro, words));
+                } catch (InvalidSyntaxException e) {
+                    // The error is reported when the macro is executed.
+                }
+            }
         }
-        var stackSummary = Interpreter.typeSummary(context.stack());
-        var candidates = ws.stream().map(Word::signature).collect(Collectors.joining("], [", "[", "]"));
-        throw new InvalidSyntaxException(
-                String.format("no matches for word ':%s' with stack %s, candidates: %s", name, stackSummary, candidates)
-        );
+        return macros;
     }
 
-    private Optional<Context> executeFirstMatchingWordImpl(List<Word> ws, Context context) throws InvalidSyntaxException {
-        if (ws.isEmpty()) {
-            return Optional.empty();
+    private Context executeWord(String name, Context context) throws InvalidSyntaxException {
+        return executeWord(name, words.get(name), context);
+    }
+
+    private Context executeWord(String name, Overloads overloads, Context context) throws InvalidSyntaxException {
+        if (null == overloads) {
+            throw new InvalidSyntaxException(String.format("unknown word ':%s'", name));
         }
-        var v = ws.get(0);
-        if (v.matches(context.stack())) {
-            if (!v.isStable() && context.features() != Features.UNSTABLE) {
-                throw new InvalidSyntaxException(String.format("to use :%s enable unstable features", v.name()));
-            }
-            return Optional.of(v.execute(context));
+        var word = overloads.select(context.stack());
+        if (word.isEmpty()) {
+            var stackSummary = Interpreter.typeSummary(context.stack());
+            var candidates = overloads.words().stream().map(Word::signature).collect(Collectors.joining("], [", "[", "]"));
+            throw new InvalidSyntaxException(
+                    String.format("no matches for word ':%s' with stack %s, candidates: %s", name, stackSummary, candidates)
+            );
+        }
+        var v = word.get();
+        if (!v.isStable() && context.features() != Features.UNSTABLE) {
+            throw new InvalidSyntaxException(String.format("to use :%s enable unstable features", v.name()));
         }
-        return executeFirstMatchingWordImpl(ws.subList(1, ws.size()), context);
+        return v.execute(context);
     }
 
     public static String typeSummary(Stack stack) {
@@ -178,52 +265,64 @@ public final class Interpreter {
         return v.getClass().getSimpleName();
     }
 
-    private static final Map<Character, Character> blocks = Map.of('(', ')', '{', '}', '[', ']');
-
+    /**
+     * Split a program into tokens separated by commas, ignoring the commas inside blocks
+     * delimited by parentheses, braces or brackets. Parentheses that are tokens on their own
+     * delimit lists rather than blocks. Tokens are trimmed, and empty ones are skipped.
+     * <p>
+     * The program is scanned once, tokens being sliced from it by position.
+     */
     public static List<Object> splitAndTrim(String str) throws InvalidSyntaxException {
-        var stack = new LinkedList<Character>();
-        var sb = new StringBuilder();
         var builder = ImmutableList.builder();
-        var chars = str.toCharArray();
-        for (var i = 0; i < chars.length; i++) {
-            var c = chars[i];
-            if (stack.isEmpty() && c == ',') {
-                addIfNotEmpty(sb, builder);
-                sb.setLength(0);
-            } else {
-                if (isParenCommand(chars, i)) {
-                    // Do not fall in the following cases.
-                } else if (blocks.containsKey(c)) {
-                    stack.push(blocks.get(c));
-                } else if (blocks.containsValue(c)) {
-                    if (stack.isEmpty()) {
-                        throw new InvalidSyntaxException(String.format("unmatched closing character '%s'", c));
-                    }
-                    var head = stack.pop();
-                    if (head != c) {
-                        throw new InvalidSyntaxException(String.format("unmatched closing character '%s'", c));
-                    }
+        var closers = new char[8];
+        var depth = 0;
+        var start = 0;
+        var length = str.length();
+        for (var i = 0; i < length; i++) {
+            var c = str.charAt(i);
+            if (depth == 0 && c == ',') {
+                addIfNotEmpty(str, start, i, builder);
+                start = i + 1;
+            } else if (isParenCommand(str, i)) {
+                // Do not fall in the following cases.
+            } else if (c == '(' || c == '{' || c == '[') {
+                if (depth == closers.length) {
+                    closers = Arrays.copyOf(closers, 2 * depth);
+                }
+                closers[depth++] = c == '(' ? ')' : c == '{' ? '}' : ']';
+            } else if (c == ')' || c == '}' || c == ']') {
+                if (depth == 0 || closers[--depth] != c) {
+                    throw new InvalidSyntaxException(String.format("unmatched closing character '%s'", c));
                 }
-                sb.append(c);
             }
         }
-        if (!stack.isEmpty()) {
+        if (depth > 0) {
             throw new InvalidSyntaxException("unmatched opening character");
         }
-        addIfNotEmpty(sb, builder);
+        addIfNotEmpty(str, start, length, builder);
         return builder.build();
     }
 
-    private static boolean isParenCommand(char[] chars, int i) {
-        return (chars[i] == '(' || chars[i] == ')')
-                && (i == 0 || chars[i - 1] == ',')
-                && (i >= chars.length - 1 || chars[i + 1] == ',');
+    private static boolean isParenCommand(String str, int i) {
+        var c = str.charAt(i);
+        return (c == '(' || c == ')')
+                && (i == 0 || str.charAt(i - 1) == ',')
+                && (i >= str.length() - 1 || str.charAt(i + 1) == ',');
     }
 
-    private static void addIfNotEmpty(StringBuilder sb, ImmutableList.Builder<Object> builder) {
-        var s = sb.toString().trim();
-        if (!s.isEmpty()) {
-            builder.add(s);
+    /**
+     * Add the token between two positions, without its leading and trailing whitespace as
+     * removed by {@link String#trim()}.
+     */
+    private static void addIfNotEmpty(String str, int start, int end, ImmutableList.Builder<Object> builder) {
+        while (start < end && str.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && str.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start < end) {
+            builder.add(str.substring(start, end));
         }
     }
 }
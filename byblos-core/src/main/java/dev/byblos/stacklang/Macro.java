@@ -6,17 +6,16 @@ public final class Macro extends AbstractWord {
     private final List<Object> body;
 
     public Macro(String name, List<Object> body) {
-        super(name, "? -- ?");
+        super(name, "? -- ?", StackPattern.of());
         this.body = List.copyOf(body);
     }
 
-    @Override
-    public boolean matches(Stack stack) {
-        return true;
+    List<Object> body() {
+        return body;
     }
 
     @Override
     public Context execute(Context context) throws InvalidSyntaxException {
-        return context.interpreter().execute(body, context, false);
+        return context.interpreter().executeMacro(this, context);
     }
 }
@@ -0,0 +1,82 @@
+package dev.byblos.stacklang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Words sharing a name, the first one matching the stack being executed.
+ * <p>
+ * Candidates are resolved from the classes of the items at the top of the stack, as deep as
+ * the longest pattern of the words. For each combination of classes, a table keeps the words
+ * that can match, in order, stopping at the first one that always does. Only the words whose
+ * match depends on the values, or that have no pattern, are then checked against the stack.
+ * Tables are built on first use, the number of combinations being bounded by the classes
+ * that can appear on a stack.
+ */
+final class Overloads {
+    private final List<Word> words;
+    private final int depth;
+    private final Map<List<Class<?>>, Candidate[]> table = new ConcurrentHashMap<>();
+
+    Overloads(List<Word> words) {
+        this.words = List.copyOf(words);
+        depth = words.stream()
+                .flatMap(w -> w.pattern().stream())
+                .mapToInt(StackPattern::size)
+                .max()
+                .orElse(0);
+    }
+
+    List<Word> words() {
+        return words;
+    }
+
+    /**
+     * Returns the first word matching the stack, if any.
+     */
+    Optional<Word> select(Stack stack) {
+        var candidates = table.computeIfAbsent(classes(stack), this::resolve);
+        for (var candidate : candidates) {
+            if (!candidate.check() || candidate.word().matches(stack)) {
+                return Optional.of(candidate.word());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private List<Class<?>> classes(Stack stack) {
+        var classes = new Class<?>[Math.min(depth, stack.size())];
+        var it = stack.iterator();
+        for (var i = 0; i < classes.length; i++) {
+            classes[i] = it.next().getClass();
+        }
+        return List.of(classes);
+    }
+
+    private Candidate[] resolve(List<Class<?>> classes) {
+        var candidates = new ArrayList<Candidate>();
+        for (var word : words) {
+            var decision = word.pattern().map(p -> p.decide(classes)).orElse(StackPattern.Decision.CHECK);
+            if (decision == StackPattern.Decision.MATCH) {
+                // Words after this one can never be selected.
+                candidates.add(new Candidate(word, false));
+                break;
+            } else if (decision == StackPattern.Decision.CHECK) {
+                candidates.add(new Candidate(word, true));
+            }
+        }
+        return candidates.toArray(new Candidate[0]);
+    }
+
+    /**
+     * Word that can match a stack.
+     *
+     * @param word  Word to execute.
+     * @param check Whether the stack must be checked, otherwise the word always matches.
+     */
+    private record Candidate(Word word, boolean check) {
+    }
+}
@@ -6,6 +6,10 @@ public abstract class SimpleWord extends AbstractWord {
         super(name, signature);
     }
 
+    protected SimpleWord(String name, String signature, StackPattern pattern) {
+        super(name, signature, pattern);
+    }
+
     @Override
     public final Context execute(Context context) throws InvalidSyntaxException {
         return context.withStack(execute(context.stack()));
@@ -1,94 +1,206 @@
 package dev.byblos.stacklang;
 
-import com.google.common.collect.Lists;
-
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable stack, the first item being the top of the stack.
+ * <p>
+ * Stacks are persistent linked lists, sharing their tail with the stacks they were derived
+ * from. Pushing and popping items is O(1), while dropping or accessing the nth item is
+ * O(n). Operations at the bottom of the stack, such as {@link #pushRight(Object)}, copy
+ * the whole stack.
+ */
+public final class Stack implements Iterable<Object> {
+    private static final Stack EMPTY = new Stack(null, null, 0);
 
-public record Stack(List<Object> items) implements Iterable<Object> {
-    private static final Stack EMPTY = new Stack(List.of());
+    private final Object head;
+    private final Stack tail;
+    private final int size;
+
+    private Stack(Object head, Stack tail, int size) {
+        this.head = head;
+        this.tail = tail;
+        this.size = size;
+    }
 
     public static Stack of(Object... items) {
-        if (items.length == 0) {
-            return EMPTY;
+        var stack = EMPTY;
+        for (var i = items.length - 1; i >= 0; i--) {
+            stack = stack.push(items[i]);
         }
-        return new Stack(List.of(items));
+        return stack;
+    }
+
+    /**
+     * Returns the items of the stack, the first one being the top of the stack.
+     */
+    public List<Object> items() {
+        return stream().toList();
     }
 
     public Stack reverse() {
-        return new Stack(Lists.reverse(items));
+        var reversed = EMPTY;
+        for (var item : this) {
+            reversed = reversed.push(item);
+        }
+        return reversed;
     }
 
     public Stack push(Object item) {
-        return new Stack(Stream.concat(Stream.of(item), items.stream()).toList());
+        return new Stack(Objects.requireNonNull(item), this, size + 1);
     }
 
     public Stack pushRight(Object item) {
-        return new Stack(Stream.concat(items.stream(), Stream.of(item)).toList());
+        return pushAll(items(), EMPTY.push(item));
     }
 
     public Stack popAndPush(int n, Object item) {
-        return new Stack(Stream.concat(Stream.of(item), items.stream().skip(n)).toList());
+        return drop(n).push(item);
     }
 
     public Stack drop(int n) {
-        return new Stack(items.stream().skip(n).toList());
+        var stack = this;
+        for (var i = 0; i < n && stack.size > 0; i++) {
+            stack = stack.tail;
+        }
+        return stack;
     }
 
     public Stack dropRight(int n) {
-        return new Stack(items.stream().limit(items.size() - n).toList());
+        var items = items();
+        return pushAll(items.subList(0, Math.max(0, items.size() - n)), EMPTY);
     }
 
     public Stack popAndPush(Object item) {
         return popAndPush(1, item);
     }
 
+    /**
+     * Returns a stack with the items of this stack on top of the items of the other one.
+     */
     public Stack concat(Stack other) {
-        return new Stack(Stream.concat(stream(), other.stream()).toList());
+        if (other.isEmpty()) {
+            return this;
+        }
+        return pushAll(items(), other);
     }
 
     public boolean isEmpty() {
-        return items.isEmpty();
+        return size == 0;
     }
 
     public boolean nonEmpty() {
-        return !items.isEmpty();
+        return size > 0;
     }
 
     public int size() {
-        return items.size();
+        return size;
     }
 
     public Object get(int n) {
-        var item = items.get(n);
-        if (null == item) {
-            throw new NoSuchElementException();
+        if (n < 0 || n >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index %s out of bounds for length %s", n, size));
         }
-        return item;
+        return drop(n).head;
     }
 
     public Stream<Object> stream() {
-        return items.stream();
+        return StreamSupport.stream(spliterator(), false);
     }
 
     @SafeVarargs
     public final boolean matches(Predicate<Object>... predicates) {
-        if (predicates.length > items.size()) {
+        if (predicates.length > size) {
             return false;
         }
-        for (var i = 0; i < predicates.length; i++) {
-            if (!predicates[i].test(items.get(i))) {
+        var stack = this;
+        for (var predicate : predicates) {
+            if (!predicate.test(stack.head)) {
                 return false;
             }
+            stack = stack.tail;
         }
         return true;
     }
 
     @Override
     public Iterator<Object> iterator() {
-        return items.iterator();
+        return new Iterator<>() {
+            private Stack next = Stack.this;
+
+            @Override
+            public boolean hasNext() {
+                return next.size > 0;
+            }
+
+            @Override
+            public Object next() {
+                if (next.size == 0) {
+                    throw new NoSuchElementException();
+                }
+                var item = next.head;
+                next = next.tail;
+                return item;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<Object> spliterator() {
+        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Stack other) || size != other.size) {
+            return false;
+        }
+        var a = this;
+        var b = other;
+        // Stacks derived from each other share their tail, which can be skipped.
+        while (a != b) {
+            if (!a.head.equals(b.head)) {
+                return false;
+            }
+            a = a.tail;
+            b = b.tail;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        var h = 1;
+        for (var item : this) {
+            h = 31 * h + item.hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return stream().map(String::valueOf).collect(Collectors.joining(", ", "Stack[items=[", "]]"));
+    }
+
+    /**
+     * Push the items on top of a stack, the first item ending up on top.
+     */
+    private static Stack pushAll(List<Object> items, Stack stack) {
+        for (var i = items.size() - 1; i >= 0; i--) {
+            stack = stack.push(items.get(i));
+        }
+        return stack;
     }
 }
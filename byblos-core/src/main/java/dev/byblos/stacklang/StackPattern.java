@@ -0,0 +1,126 @@
+package dev.byblos.stacklang;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pattern of the items at the top of a stack accepted by a word, with one parameter per item,
+ * the first one being the top of the stack.
+ * <p>
+ * Besides checking a stack, a pattern tells from the classes of the items alone whether it
+ * matches, does not, or needs to look at the values. This lets the interpreter resolve
+ * overloaded words without evaluating every candidate.
+ */
+public final class StackPattern {
+    private static final StackPattern EMPTY = new StackPattern(new Param[0]);
+
+    private final Param[] params;
+
+    private StackPattern(Param[] params) {
+        this.params = params;
+    }
+
+    public static StackPattern of(Param... params) {
+        return params.length == 0 ? EMPTY : new StackPattern(params.clone());
+    }
+
+    /**
+     * Returns the number of items at the top of the stack checked by this pattern.
+     */
+    public int size() {
+        return params.length;
+    }
+
+    public boolean matches(Stack stack) {
+        if (params.length > stack.size()) {
+            return false;
+        }
+        var it = stack.iterator();
+        for (var param : params) {
+            if (!param.test().test(it.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decide whether this pattern matches a stack from the classes of its top items.
+     *
+     * @param classes Classes of the top items of the stack, the first one being the top. There
+     *                can be fewer classes than parameters if the stack is smaller.
+     */
+    Decision decide(List<Class<?>> classes) {
+        if (params.length > classes.size()) {
+            return Decision.NO_MATCH;
+        }
+        var decision = Decision.MATCH;
+        for (var i = 0; i < params.length; i++) {
+            switch (params[i].byClass().apply(classes.get(i))) {
+                case NO_MATCH -> {
+                    return Decision.NO_MATCH;
+                }
+                case CHECK -> decision = Decision.CHECK;
+                case MATCH -> {
+                    // Nothing more to know about this item.
+                }
+            }
+        }
+        return decision;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StackPattern(%s params)", params.length);
+    }
+
+    /**
+     * Outcome of matching a pattern against the classes of the items of a stack.
+     */
+    public enum Decision {
+        /**
+         * Any item of this class matches.
+         */
+        MATCH,
+        /**
+         * No item of this class matches.
+         */
+        NO_MATCH,
+        /**
+         * Whether an item of this class matches depends on its value.
+         */
+        CHECK
+    }
+
+    /**
+     * Expected item of a stack.
+     *
+     * @param test    Whether an item matches.
+     * @param byClass Whether items of a given class match. It must agree with the test.
+     */
+    public record Param(Predicate<Object> test, Function<Class<?>, Decision> byClass) {
+        /**
+         * Parameter accepting any item.
+         */
+        public static final Param ANY = new Param(v -> true, c -> Decision.MATCH);
+
+        public Param {
+            requireNonNull(test);
+            requireNonNull(byClass);
+        }
+
+        /**
+         * Returns a parameter accepting instances of any of the given classes.
+         */
+        public static Param instanceOf(Class<?>... classes) {
+            var copy = classes.clone();
+            return new Param(
+                    v -> Arrays.stream(copy).anyMatch(c -> c.isInstance(v)),
+                    c -> Arrays.stream(copy).anyMatch(x -> x.isAssignableFrom(c)) ? Decision.MATCH : Decision.NO_MATCH);
+        }
+    }
+}
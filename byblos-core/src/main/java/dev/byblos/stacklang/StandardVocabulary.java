@@ -1,6 +1,7 @@
 package dev.byblos.stacklang;
 
 import dev.byblos.model.TypeUtils;
+import dev.byblos.stacklang.StackPattern.Param;
 
 import java.util.HashMap;
 import java.util.List;
@@ -49,12 +50,7 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Clear extends SimpleWord {
         Clear() {
-            super("clear", "* -- <empty>");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return true;
+            super("clear", "* -- <empty>", StackPattern.of());
         }
 
         @Override
@@ -68,12 +64,7 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Freeze extends AbstractWord {
         Freeze() {
-            super("freeze", "* -- <empty>");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return true;
+            super("freeze", "* -- <empty>", StackPattern.of());
         }
 
         @Override
@@ -87,12 +78,7 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Dup extends SimpleWord {
         Dup() {
-            super("dup", "a -- a a");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.nonEmpty();
+            super("dup", "a -- a a", StackPattern.of(Param.ANY));
         }
 
         @Override
@@ -106,12 +92,7 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Drop extends SimpleWord {
         Drop() {
-            super("drop", "a -- ");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.nonEmpty();
+            super("drop", "a -- ", StackPattern.of(Param.ANY));
         }
 
         @Override
@@ -125,12 +106,7 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class NDrop extends SimpleWord {
         NDrop() {
-            super("ndrop", "aN ... a0 N -- aN");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isInt);
+            super("ndrop", "aN ... a0 N -- aN", StackPattern.of(TypeUtils.INT));
         }
 
         @Override
@@ -145,12 +121,7 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Set extends AbstractWord {
         Set() {
-            super("set", "k v -- ");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(v -> true, TypeUtils::isString);
+            super("set", "k v -- ", StackPattern.of(Param.ANY, TypeUtils.STRING));
         }
 
         @Override
@@ -168,12 +139,7 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Get extends AbstractWord {
         Get() {
-            super("get", "k -- vars[k]");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isString);
+            super("get", "k -- vars[k]", StackPattern.of(TypeUtils.STRING));
         }
 
         @Override
@@ -192,15 +158,9 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Rot extends SimpleWord {
         Rot() {
-            super("rot", "a ... b -- ... b a");
+            super("rot", "a ... b -- ... b a", StackPattern.of(Param.ANY));
         }
 
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.nonEmpty();
-        }
-
-
         @Override
         protected Stack execute(Stack stack) {
             return stack.dropRight(1).push(stack.get(stack.size() - 1));
@@ -212,15 +172,9 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class ReverseRot extends SimpleWord {
         ReverseRot() {
-            super("-rot", "* a b -- b * a");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.nonEmpty();
+            super("-rot", "* a b -- b * a", StackPattern.of(Param.ANY));
         }
 
-
         @Override
         protected Stack execute(Stack stack) {
             return stack.drop(1).pushRight(stack.get(0));
@@ -232,15 +186,9 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Swap extends SimpleWord {
         Swap() {
-            super("swap", "a b -- b a");
+            super("swap", "a b -- b a", StackPattern.of(Param.ANY, Param.ANY));
         }
 
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.size() >= 2;
-        }
-
-
         @Override
         protected Stack execute(Stack stack) {
             return Stack.of(stack.get(1), stack.get(0)).concat(stack.drop(2));
@@ -252,15 +200,9 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Depth extends SimpleWord {
         Depth() {
-            super("depth", " -- N");
-        }
-
-        @Override
-        public boolean matches(Stack stack) {
-            return true;
+            super("depth", " -- N", StackPattern.of());
         }
 
-
         @Override
         protected Stack execute(Stack stack) {
             // The depth is pushed as a string because we don't currently have a way to indicate the
@@ -275,15 +217,9 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Over extends SimpleWord {
         Over() {
-            super("over", "a b -- a b a");
+            super("over", "a b -- a b a", StackPattern.of(Param.ANY, Param.ANY));
         }
 
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.size() >= 2;
-        }
-
-
         @Override
         protected Stack execute(Stack stack) {
             return stack.push(stack.get(1));
@@ -295,15 +231,9 @@ public final class StandardVocabulary implements Vocabulary {
      */
     static final class Pick extends SimpleWord {
         Pick() {
-            super("pick", "aN ... a0 N -- aN ... a0 aN");
+            super("pick", "aN ... a0 N -- aN ... a0 aN", StackPattern.of(TypeUtils.INT));
         }
 
-        @Override
-        public boolean matches(Stack stack) {
-            return stack.matches(TypeUtils::isInt);
-        }
-
-
         @Override
         protected Stack execute(Stack stack) throws InvalidSyntaxException {
             var n = TypeUtils.asInt(stack.get(0));
@@ -1,5 +1,7 @@
 package dev.byblos.stacklang;
 
+import java.util.Optional;
+
 public interface Word {
     /**
      * Return the name used to refer to this command.
@@ -25,6 +27,15 @@ public interface Word {
      */
     boolean matches(Stack stack);
 
+    /**
+     * Returns the pattern of the stack accepted by this word, if {@link #matches(Stack)} only
+     * depends on it. It allows the interpreter to resolve overloaded words from the classes
+     * of the items on the stack.
+     */
+    default Optional<StackPattern> pattern() {
+        return Optional.empty();
+    }
+
     /**
      * Execute this command against the provided context.
      */
@@ -0,0 +1,73 @@
+package dev.byblos.stacklang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of words by the classes of the items at the top of the stacks they can match, for
+ * finding the words that can be executed next, such as for auto-completion.
+ * <p>
+ * As for {@link Overloads}, the words are first decided from the patterns they declare, and
+ * only those depending on the values, or without a pattern, are then checked against the
+ * stack. Unlike overloads, all the words matching a stack are returned.
+ */
+public final class WordIndex {
+    private final List<Word> words;
+    private final int depth;
+    private final Map<List<Class<?>>, Candidate[]> table = new ConcurrentHashMap<>();
+
+    public WordIndex(List<Word> words) {
+        this.words = List.copyOf(words);
+        depth = words.stream()
+                .flatMap(w -> w.pattern().stream())
+                .mapToInt(StackPattern::size)
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * Returns the words matching the stack, in the order of the index.
+     */
+    public List<Word> matching(Stack stack) {
+        var classes = new Class<?>[Math.min(depth, stack.size())];
+        var it = stack.iterator();
+        for (var i = 0; i < classes.length; i++) {
+            classes[i] = it.next().getClass();
+        }
+        var candidates = table.computeIfAbsent(List.of(classes), this::resolve);
+        var matching = new ArrayList<Word>(candidates.length);
+        for (var candidate : candidates) {
+            if (!candidate.check() || candidate.word().matches(stack)) {
+                matching.add(candidate.word());
+            }
+        }
+        return matching;
+    }
+
+    private Candidate[] resolve(List<Class<?>> classes) {
+        var candidates = new ArrayList<Candidate>();
+        for (var word : words) {
+            var decision = word.pattern().map(p -> p.decide(classes)).orElse(StackPattern.Decision.CHECK);
+            if (decision != StackPattern.Decision.NO_MATCH) {
+                candidates.add(new Candidate(word, decision == StackPattern.Decision.CHECK));
+            }
+        }
+        return candidates.toArray(new Candidate[0]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WordIndex(%s words)", words.size());
+    }
+
+    /**
+     * Word that can match a stack.
+     *
+     * @param word  Word matching the stack.
+     * @param check Whether the stack must be checked, otherwise the word always matches.
+     */
+    private record Candidate(Word word, boolean check) {
+    }
+}
@@ -0,0 +1,82 @@
+package dev.byblos.chart.model;
+
+import dev.byblos.chart.graphics.Bounds;
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.SummaryStats;
+import dev.byblos.model.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link PlotDef}.
+ */
+public class PlotDefTest {
+    private static final long step = 60000L;
+    private static final long start = 0L;
+    private static final long end = start + 3 * step;
+
+    @Test
+    void analyze() {
+        var plot = plot(
+                line(LineStyle.LINE, 1.0, Double.NaN, 4.0),
+                line(LineStyle.AREA, -2.0, 2.0, Double.POSITIVE_INFINITY));
+
+        var analyzed = plot.analyze(start, end);
+
+        assertThat(analyzed.dataRange()).contains(new Bounds(-2.0, 4.0));
+        assertThat(analyzed.lines().get(0).legendStats().count()).isEqualTo(2);
+        assertThat(analyzed.lines().get(0).legendStats().total()).isEqualTo(5.0);
+        assertThat(analyzed.lines().get(1).legendStats().max()).isEqualTo(Double.POSITIVE_INFINITY);
+        assertThat(analyzed.lines().get(0).data().data()).isInstanceOf(ArrayTimeSeq.class);
+        assertThat(analyzed.bounds(start, end)).isEqualTo(plot.bounds(start, end));
+    }
+
+    @Test
+    void analyzeStack() {
+        var plot = plot(
+                line(LineStyle.STACK, 1.0, -1.0, 2.0),
+                line(LineStyle.STACK, 3.0, -4.0, Double.NaN),
+                line(LineStyle.VSPAN, 100.0, 100.0, 100.0));
+
+        var analyzed = plot.analyze(start, end);
+
+        assertThat(analyzed.dataRange()).contains(new Bounds(-5.0, 4.0));
+        assertThat(analyzed.lines().get(2).legendStats().max()).isEqualTo(100.0);
+    }
+
+    @Test
+    void analyzeEmpty() {
+        var analyzed = plot(line(LineStyle.LINE, Double.NaN, Double.NaN, Double.NaN)).analyze(start, end);
+        assertThat(analyzed.dataRange()).contains(new Bounds(0.0, 1.0));
+    }
+
+    @Test
+    void analyzeKeepsStatsAlreadySet() {
+        var stats = new SummaryStats(1, 42.0, 42.0, 42.0, 42.0);
+        var line = line(LineStyle.LINE, 1.0, 2.0, 3.0).toBuilder().legendStats(stats).build();
+
+        var analyzed = plot(line).analyze(start, end);
+
+        assertThat(analyzed.lines().get(0).legendStats()).isSameAs(stats);
+        assertThat(analyzed.dataRange()).contains(new Bounds(1.0, 3.0));
+    }
+
+    @Test
+    void toBuilderClearsDataRange() {
+        var analyzed = plot(line(LineStyle.LINE, 1.0, 2.0, 3.0)).analyze(start, end);
+        assertThat(analyzed.toBuilder().data(List.of()).build().dataRange()).isEmpty();
+    }
+
+    private static PlotDef plot(DataDef... data) {
+        return ImmutablePlotDef.builder().data(List.of(data)).build();
+    }
+
+    private static LineDef line(LineStyle style, double... values) {
+        var ts = new TimeSeries(new ArrayTimeSeq(start, step, values), "test", Map.of());
+        return ImmutableLineDef.builder().data(ts).lineStyle(style).build();
+    }
+}
@@ -0,0 +1,78 @@
+package dev.byblos.eval.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link AsyncSemaphore}.
+ */
+public class AsyncSemaphoreTest {
+    @Test
+    void limitConcurrency() {
+        var semaphore = new AsyncSemaphore(2);
+        var started = new AtomicInteger();
+        var tasks = new ArrayList<CompletableFuture<Integer>>();
+        var results = new ArrayList<CompletableFuture<Integer>>();
+        for (var i = 0; i < 5; i++) {
+            var task = new CompletableFuture<Integer>();
+            tasks.add(task);
+            results.add(semaphore.submit(() -> {
+                started.incrementAndGet();
+                return task;
+            }));
+        }
+        assertThat(started.get()).isEqualTo(2);
+        assertThat(semaphore.queued()).isEqualTo(3);
+
+        tasks.get(0).complete(0);
+        assertThat(started.get()).isEqualTo(3);
+        assertThat(results.get(0)).isCompletedWithValue(0);
+
+        tasks.get(1).completeExceptionally(new RuntimeException("boom"));
+        assertThat(started.get()).isEqualTo(4);
+        assertThat(results.get(1)).isCompletedExceptionally();
+
+        for (var i = 2; i < 5; i++) {
+            tasks.get(i).complete(i);
+        }
+        assertThat(started.get()).isEqualTo(5);
+        assertThat(semaphore.queued()).isZero();
+    }
+
+    @Test
+    void cancelQueuedTask() {
+        var semaphore = new AsyncSemaphore(1);
+        var first = new CompletableFuture<Integer>();
+        var started = new AtomicInteger();
+        semaphore.submit(() -> first);
+        var second = semaphore.submit(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture(1);
+        });
+
+        second.cancel(true);
+        first.complete(0);
+
+        assertThat(started.get()).isZero();
+        // The permit of the cancelled task has been released.
+        var third = semaphore.submit(() -> CompletableFuture.completedFuture(3));
+        assertThat(third).isCompletedWithValue(3);
+    }
+
+    @Test
+    void cancelRunningTask() {
+        var semaphore = new AsyncSemaphore(1);
+        var task = new CompletableFuture<Integer>();
+        var result = semaphore.submit(() -> task);
+
+        result.cancel(true);
+
+        assertThat(task).isCancelled();
+        assertThat(semaphore.submit(() -> CompletableFuture.completedFuture(1))).isCompletedWithValue(1);
+    }
+}
@@ -0,0 +1,134 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.groups.Tuple;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link CachingBackend}.
+ */
+public class CachingBackendTest {
+    private static final long step = 60000L;
+    private static final long now = 100 * step;
+    private static final DataExpr expr = new DataExpr("up");
+
+    private final List<EvalContext> queries = new ArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private CachingBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        // The value at each step is the timestamp, in steps.
+        Backend delegate = (context, expr) -> {
+            queries.add(context);
+            var builder = new TimeSeqBuilder(context);
+            for (var t = context.start(); t <= context.end(); t += context.step()) {
+                builder.add(t, t / step);
+            }
+            return List.of(new TimeSeries(builder.build(), "up", Map.of("__name__", "up")));
+        };
+        var clock = Clock.fixed(Instant.ofEpochMilli(now), ZoneOffset.UTC);
+        backend = new CachingBackend(delegate, 10, 5 * step, 1024 * 1024, registry, clock);
+    }
+
+    @Test
+    void fetchMissingChunks() throws Exception {
+        var context = new EvalContext(25 * step, 50 * step, step);
+
+        var result = backend.query(context, expr);
+
+        // Complete chunks are fetched at once so that they can be cached.
+        assertThat(queries).extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(20, 59));
+        assertValues(result, context);
+        assertThat(registry.counter("byblos.backend.cache.requests", "result", "miss").count()).isEqualTo(4.0);
+    }
+
+    @Test
+    void reuseCachedChunks() throws Exception {
+        backend.query(new EvalContext(25 * step, 99 * step, step), expr);
+        queries.clear();
+
+        var context = new EvalContext(35 * step, 100 * step, step);
+        var result = backend.query(context, expr);
+
+        // Only the chunks too recent to be cached are fetched again.
+        assertThat(queries).extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(90, 100));
+        assertValues(result, context);
+        assertThat(registry.counter("byblos.backend.cache.requests", "result", "hit").count()).isEqualTo(6.0);
+        assertThat(backend.size()).isPositive();
+    }
+
+    @Test
+    void fetchGapsBetweenCachedChunks() throws Exception {
+        backend.query(new EvalContext(10 * step, 19 * step, step), expr);
+        backend.query(new EvalContext(40 * step, 49 * step, step), expr);
+        queries.clear();
+
+        var context = new EvalContext(5 * step, 55 * step, step);
+        var result = backend.query(context, expr);
+
+        assertThat(queries).extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(0, 9), tuple(20, 39), tuple(50, 59));
+        assertValues(result, context);
+    }
+
+    @Test
+    void recentDataIsNotCached() throws Exception {
+        var context = new EvalContext(92 * step, 98 * step, step);
+        backend.query(context, expr);
+        backend.query(context, expr);
+
+        assertThat(queries).extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(92, 98), tuple(92, 98));
+        assertThat(backend.size()).isZero();
+    }
+
+    @Test
+    void unalignedContextIsNotCached() throws Exception {
+        var context = new EvalContext(10 * step + 1, 30 * step, step);
+        backend.query(context, expr);
+        backend.query(context, expr);
+
+        assertThat(queries).hasSize(2);
+        assertThat(backend.size()).isZero();
+    }
+
+    @Test
+    void evictToMaxSize() throws Exception {
+        var clock = Clock.fixed(Instant.ofEpochMilli(now), ZoneOffset.UTC);
+        var small = new CachingBackend((context, expr) -> List.of(new TimeSeries(new TimeSeqBuilder(context).add(context.start(), 1.0).build(), "a", Map.of())), 10, 0, 1000, new SimpleMeterRegistry(), clock);
+        for (var i = 0; i < 50; i++) {
+            small.query(new EvalContext(i * 10 * step, i * 10 * step + 9 * step, step), new DataExpr(String.valueOf(i)));
+        }
+        assertThat(small.size()).isLessThanOrEqualTo(1000);
+    }
+
+    private static void assertValues(List<TimeSeries> result, EvalContext context) {
+        assertThat(result).hasSize(1);
+        var data = result.get(0).data();
+        for (var t = context.start(); t <= context.end(); t += step) {
+            assertThat(data.get(t)).isEqualTo((double) (t / step));
+        }
+        assertThat(data.get(context.start() - step)).isNaN();
+        assertThat(data.get(context.end() + step)).isNaN();
+    }
+
+    private static Tuple tuple(long start, long end) {
+        return Tuple.tuple(start * step, end * step);
+    }
+}
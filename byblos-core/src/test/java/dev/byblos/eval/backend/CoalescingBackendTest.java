@@ -0,0 +1,239 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.Deadline;
+import dev.byblos.model.DeadlineExceededException;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link CoalescingBackend}.
+ */
+public class CoalescingBackendTest {
+    private static final int callers = 8;
+
+    private final EvalContext context = new EvalContext(0, 180000, 60000);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newFixedThreadPool(callers);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void coalesceConcurrentQueries() throws Exception {
+        var series = List.of(new TimeSeries(new ArrayTimeSeq(0, 60000, new double[]{1.0}), "up", Map.of()));
+        var backend = new CoalescingBackend((ctx, expr) -> {
+            calls.incrementAndGet();
+            await(release);
+            return series;
+        }, registry);
+
+        var futures = submit(backend, new DataExpr("up"));
+        release.countDown();
+
+        for (var future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS)).isSameAs(series);
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(registry.counter("byblos.backend.coalesce.requests", "result", "fetched").count()).isEqualTo(1.0);
+        assertThat(registry.counter("byblos.backend.coalesce.requests", "result", "deduplicated").count()).isEqualTo(callers - 1);
+    }
+
+    @Test
+    void propagateFailureToAllCallers() throws Exception {
+        var backend = new CoalescingBackend((ctx, expr) -> {
+            calls.incrementAndGet();
+            await(release);
+            throw new IOException("boom");
+        }, registry);
+
+        var futures = submit(backend, new DataExpr("up"));
+        release.countDown();
+
+        for (var future : futures) {
+            assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IOException.class)
+                    .hasRootCauseMessage("boom");
+        }
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void waitersGiveUpOnTheirOwnDeadline() throws Exception {
+        var series = List.of(new TimeSeries(new ArrayTimeSeq(0, 60000, new double[]{1.0}), "up", Map.of()));
+        var backend = new CoalescingBackend((ctx, expr) -> {
+            calls.incrementAndGet();
+            await(release);
+            return series;
+        }, registry);
+        var first = executor.submit(() -> backend.query(context, new DataExpr("up")));
+        while (calls.get() == 0) {
+            Thread.sleep(1);
+        }
+
+        var expiring = new EvalContext(0, 180000, 60000, Deadline.after(Duration.ofMillis(50)));
+        assertThatThrownBy(() -> backend.query(expiring, new DataExpr("up")))
+                .isInstanceOf(DeadlineExceededException.class)
+                .hasMessage("request deadline exceeded");
+
+        var cancelled = Deadline.none();
+        var waiter = backend.queryAsync(new EvalContext(0, 180000, 60000, cancelled), new DataExpr("up"));
+        cancelled.cancel();
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).isInstanceOf(DeadlineExceededException.class);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(series);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void sharedQueryOutlivesItsFirstCaller() throws Exception {
+        var series = List.of(new TimeSeries(new ArrayTimeSeq(0, 60000, new double[]{1.0}), "up", Map.of()));
+        var pending = new PendingBackend();
+        var backend = new CoalescingBackend(pending, registry);
+
+        var firstDeadline = Deadline.none();
+        var first = backend.queryAsync(new EvalContext(0, 180000, 60000, firstDeadline), new DataExpr("up"));
+        var second = backend.queryAsync(context, new DataExpr("up"));
+        firstDeadline.cancel();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(DeadlineExceededException.class);
+        assertThat(pending.contexts).singleElement().satisfies(ctx -> assertThat(ctx.deadline().isCancelled()).isFalse());
+        pending.futures.get(0).complete(series);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(series);
+    }
+
+    @Test
+    void sharedCachedQueryOutlivesItsFirstCaller() throws Exception {
+        var pending = new PendingBackend();
+        var clock = Clock.fixed(Instant.ofEpochMilli(3600000), ZoneOffset.UTC);
+        var backend = new CoalescingBackend(new CachingBackend(pending, 10, 0, 1024 * 1024, registry, clock), registry);
+
+        var firstDeadline = Deadline.none();
+        var first = backend.queryAsync(new EvalContext(0, 180000, 60000, firstDeadline), new DataExpr("up"));
+        var second = backend.queryAsync(context, new DataExpr("up"));
+        firstDeadline.cancel();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(DeadlineExceededException.class);
+        assertThat(pending.contexts).singleElement().satisfies(ctx -> assertThat(ctx.deadline().isCancelled()).isFalse());
+        var ctx = pending.contexts.get(0);
+        var seq = new TimeSeqBuilder(ctx).add(0, 1.0).add(60000, 2.0).build();
+        pending.futures.get(0).complete(List.of(new TimeSeries(seq, "up", Map.of())));
+        assertThat(second.get(5, TimeUnit.SECONDS)).singleElement().satisfies(ts -> {
+            assertThat(ts.label()).isEqualTo("up");
+            assertThat(ts.data().get(60000)).isEqualTo(2.0);
+        });
+    }
+
+    @Test
+    void cancelSharedQueryWithoutCallers() throws Exception {
+        var pending = new PendingBackend();
+        var backend = new CoalescingBackend(pending, registry);
+
+        var deadlines = List.of(Deadline.none(), Deadline.none());
+        for (var deadline : deadlines) {
+            backend.queryAsync(new EvalContext(0, 180000, 60000, deadline), new DataExpr("up"));
+        }
+        deadlines.get(0).cancel();
+        assertThat(pending.contexts.get(0).deadline().isCancelled()).isFalse();
+        deadlines.get(1).cancel();
+        assertThat(pending.contexts.get(0).deadline().isCancelled()).isTrue();
+
+        // The next query is sent again.
+        backend.queryAsync(context, new DataExpr("up"));
+        assertThat(pending.contexts).hasSize(2);
+    }
+
+    @Test
+    void doNotCoalesceDifferentQueries() throws Exception {
+        var backend = new CoalescingBackend((ctx, expr) -> {
+            calls.incrementAndGet();
+            return List.of();
+        }, registry);
+
+        backend.query(context, new DataExpr("a"));
+        backend.query(context, new DataExpr("b"));
+        backend.query(new EvalContext(0, 240000, 60000), new DataExpr("a"));
+        backend.query(context, new DataExpr("a"));
+
+        assertThat(calls.get()).isEqualTo(4);
+        assertThat(registry.counter("byblos.backend.coalesce.requests", "result", "deduplicated").count()).isZero();
+    }
+
+    private List<Future<List<TimeSeries>>> submit(Backend backend, DataExpr expr) throws InterruptedException {
+        var started = new CountDownLatch(callers);
+        var futures = new ArrayList<Future<List<TimeSeries>>>();
+        for (var i = 0; i < callers; i++) {
+            futures.add(executor.submit(() -> {
+                started.countDown();
+                return backend.query(context, expr);
+            }));
+        }
+        started.await(5, TimeUnit.SECONDS);
+        // Wait for all the callers to be waiting on the first one.
+        var deduplicated = registry.counter("byblos.backend.coalesce.requests", "result", "deduplicated");
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (deduplicated.count() < callers - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        return futures;
+    }
+
+    /**
+     * Backend whose queries complete when the test decides.
+     */
+    private static final class PendingBackend implements Backend {
+        private final List<EvalContext> contexts = new ArrayList<>();
+        private final List<CompletableFuture<List<TimeSeries>>> futures = new ArrayList<>();
+
+        @Override
+        public List<TimeSeries> query(EvalContext context, DataExpr expr) throws IOException {
+            return Futures.await(queryAsync(context, expr));
+        }
+
+        @Override
+        public synchronized CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+            var future = new CompletableFuture<List<TimeSeries>>();
+            contexts.add(context);
+            futures.add(future);
+            return future;
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
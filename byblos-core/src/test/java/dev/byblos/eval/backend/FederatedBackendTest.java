@@ -0,0 +1,139 @@
+package dev.byblos.eval.backend;
+
+import com.typesafe.config.ConfigFactory;
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Unit tests for {@link FederatedBackend}.
+ */
+public class FederatedBackendTest {
+    private final EvalContext context = new EvalContext(0, 120000, 60000);
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+
+    @Test
+    void routeByMetricPrefix() {
+        var backend = newBackend(List.of(FederatedBackend.Route.of(List.of("eu"), "node_", Map.of())));
+
+        assertThat(route(backend, "rate(node_cpu_seconds_total[5m])")).containsExactly("eu");
+        assertThat(route(backend, "up{job=\"node_exporter\"}")).containsExactly("eu", "us");
+    }
+
+    @Test
+    void routeByLabels() {
+        var backend = newBackend(List.of(
+                FederatedBackend.Route.of(List.of("eu"), "", Map.of("region", "eu")),
+                FederatedBackend.Route.of(List.of("us"), "", Map.of("region", "us"))));
+
+        assertThat(route(backend, "up{region=\"eu\"}")).containsExactly("eu");
+        assertThat(route(backend, "up{region = \"us\"} or up{region=\"eu\"}")).containsExactly("eu", "us");
+        assertThat(route(backend, "up{subregion=\"eu\"}")).containsExactly("eu", "us");
+    }
+
+    @Test
+    void routeExplicitly() {
+        var backend = newBackend(List.of(FederatedBackend.Route.of(List.of("eu"), "up", Map.of())));
+        var names = new TreeSet<String>();
+
+        var expr = backend.route(new DataExpr("up{__backend__=\"us\", job=\"node\"}"), names);
+
+        assertThat(names).containsExactly("us");
+        assertThat(expr.exprString()).isEqualTo("up{job=\"node\"}");
+        assertThat(backend.route(new DataExpr("up{job=\"node\",__backend__=\"us\"}"), names).exprString())
+                .isEqualTo("up{job=\"node\"}");
+        assertThatThrownBy(() -> backend.route(new DataExpr("up{__backend__=\"asia\"}"), names))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("unknown backend [asia]");
+    }
+
+    @Test
+    void mergeWithSourceTag() throws Exception {
+        var backend = newBackend(List.of());
+
+        var res = backend.query(context, new DataExpr("up"));
+
+        assertThat(queries).containsExactlyInAnyOrder("eu:up", "us:up");
+        assertThat(res).extracting(TimeSeries::label, ts -> ts.tags().get("source"))
+                .containsExactly(tuple("up{job=node, source=eu}", "eu"), tuple("up{job=node, source=us}", "us"));
+    }
+
+    @Test
+    void propagateFailure() {
+        var upstreams = new LinkedHashMap<String, Backend>();
+        upstreams.put("eu", upstream("eu"));
+        upstreams.put("us", (ctx, expr) -> {
+            throw new IOException("boom");
+        });
+        var backend = new FederatedBackend(upstreams, List.of(), "source");
+
+        assertThatThrownBy(() -> backend.query(context, new DataExpr("up")))
+                .isInstanceOf(IOException.class)
+                .hasMessage("boom");
+    }
+
+    @Test
+    void fromConfig() {
+        var config = ConfigFactory.parseString("""
+                        federated {
+                          upstreams = [
+                            { name = "eu", endpoint = "http://localhost:1" }
+                            { name = "us", endpoint = "http://localhost:2", max-concurrent-requests = 4 }
+                          ]
+                          routes = [{ upstreams = ["eu"], labels { region = "eu" } }]
+                        }
+                        """)
+                .withFallback(ConfigFactory.load().getConfig("byblos.eval.backend"));
+        var backend = new FederatedBackend(config);
+
+        assertThat(route(backend, "up{region=\"eu\"}")).containsExactly("eu");
+
+        var invalid = ConfigFactory.parseString("federated.routes = [{ upstreams = [\"asia\"], metric-prefix = \"up\" }]")
+                .withFallback(config);
+        assertThatThrownBy(() -> new FederatedBackend(invalid))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("route to unknown upstream [asia]");
+    }
+
+    @Test
+    void limitPushdownSupportedByAllUpstreams() {
+        var prometheus = new PrometheusBackend(ConfigFactory.load().getConfig("byblos.eval.backend"));
+        assertThat(new FederatedBackend(Map.of("eu", prometheus), List.of(), "source").supportsLimitPushdown()).isTrue();
+        assertThat(new FederatedBackend(Map.of("eu", prometheus, "us", upstream("us")), List.of(), "source").supportsLimitPushdown()).isFalse();
+    }
+
+    private FederatedBackend newBackend(List<FederatedBackend.Route> routes) {
+        var upstreams = new LinkedHashMap<String, Backend>();
+        upstreams.put("eu", upstream("eu"));
+        upstreams.put("us", upstream("us"));
+        return new FederatedBackend(upstreams, routes, "source");
+    }
+
+    private Backend upstream(String name) {
+        return (ctx, expr) -> {
+            queries.add(name + ":" + expr.exprString());
+            var data = new ArrayTimeSeq(ctx.start(), ctx.step(), new double[]{1.0, 2.0});
+            return List.of(new TimeSeries(data, "up{job=node}", Map.of("__name__", "up", "job", "node")));
+        };
+    }
+
+    private static Set<String> route(FederatedBackend backend, String expr) {
+        var names = new TreeSet<String>();
+        backend.route(new DataExpr(expr), names);
+        return names;
+    }
+}
@@ -1,18 +1,85 @@
 package dev.byblos.eval.backend;
 
+import com.sun.net.httpserver.HttpServer;
 import com.typesafe.config.ConfigFactory;
+import dev.byblos.model.ArrayTimeSeq;
 import dev.byblos.model.DataExpr;
+import dev.byblos.model.Deadline;
 import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 
 public class PrometheusBackendTest {
+    private static final String RESPONSE = """
+            {"status":"success","data":{"resultType":"matrix","result":[
+              {"metric":{"__name__":"up","job":"node"},"values":[[60,"1"],[120,"2"]]}
+            ]}}
+            """;
+
+    private HttpServer server;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile int statusCode = 200;
+    private volatile boolean echo;
+    private volatile String result = RESPONSE;
+    private volatile String encoding;
+    private volatile long delay;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v1/query_range", exchange -> {
+            sleep(delay);
+            var query = exchange.getRequestURI().getQuery();
+            requests.add(query);
+            var response = echo ? echo(query) : result;
+            var body = (statusCode == 200 ? response : "bad query").getBytes(StandardCharsets.UTF_8);
+            var accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (null != encoding && null != accepted && accepted.contains(encoding)) {
+                body = compress(body, encoding);
+                exchange.getResponseHeaders().add("Content-Encoding", encoding);
+            }
+            exchange.sendResponseHeaders(statusCode, body.length);
+            try (var os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
 
     @Test
     void query() throws Exception {
-        var config = ConfigFactory.parseMap(Map.of("endpoint", "https://demo.promlabs.com", "auth", "none"));
+        var config = ConfigFactory.parseMap(Map.of("endpoint", "https://demo.promlabs.com", "auth", "none"))
+                .withFallback(ConfigFactory.load().getConfig("byblos.eval.backend"));
         var backend = new PrometheusBackend(config);
         var end = Instant.now();
         var context = new EvalContext(end.minusSeconds(60 * 5).toEpochMilli(), end.toEpochMilli(), 60 * 1000);
@@ -20,4 +87,262 @@ public class PrometheusBackendTest {
         var res = backend.query(context, expr);
         System.out.println(res);
     }
+
+    @Test
+    void queryLocal() throws Exception {
+        var res = newLocalBackend().query(new EvalContext(60000, 120000, 60000), new DataExpr("up"));
+
+        assertThat(res).hasSize(1);
+        assertThat(res.get(0).label()).isEqualTo("up{job=node}");
+        assertThat(res.get(0).tags()).isEqualTo(Map.of("__name__", "up", "job", "node"));
+        assertThat(res.get(0).data()).isEqualTo(new ArrayTimeSeq(60000, 60000, new double[]{1.0, 2.0}));
+    }
+
+    @Test
+    void queryAsync() throws Exception {
+        var backend = newLocalBackend();
+        var context = new EvalContext(60000, 120000, 60000);
+        var futures = new CompletableFuture<?>[16];
+        for (var i = 0; i < futures.length; i++) {
+            futures[i] = backend.queryAsync(context, new DataExpr("up"));
+        }
+        CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+        for (var future : futures) {
+            assertThat(future).isCompleted().isNotCompletedExceptionally();
+        }
+    }
+
+    @Test
+    void decodeOutsideClientThreads() throws Exception {
+        var backend = newLocalBackend();
+        var thread = backend.send("/api/v1/query_range?query=up", backend.newHttpRequest(), response -> {
+            response.body().readAllBytes();
+            return Thread.currentThread().getName();
+        }, Deadline.none());
+        assertThat(thread.get(10, TimeUnit.SECONDS)).startsWith("byblos-decode-");
+    }
+
+    @Test
+    void queryError() {
+        statusCode = 400;
+        var backend = newLocalBackend();
+
+        assertThatThrownBy(() -> backend.query(new EvalContext(60000, 120000, 60000), new DataExpr("up")))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unexpected status code [400]: bad query");
+    }
+
+    @Test
+    void queryHistogramsDoesNotEjectReplica() {
+        result = """
+                {"status":"success","data":{"resultType":"matrix","result":[
+                  {"metric":{"__name__":"latency"},"histograms":[[60,{"count":"1"}]]}
+                ]}}
+                """;
+        var backend = newLocalBackend(Map.of("ejection.consecutive-failures", 1));
+
+        for (var i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> backend.query(new EvalContext(60000, 120000, 60000), new DataExpr("latency")))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("Histograms are not supported");
+        }
+        assertThat(registry.get("byblos.backend.replica.ejections").counter().count()).isZero();
+    }
+
+    @Test
+    void queryGzip() throws Exception {
+        encoding = "gzip";
+        queryLocal();
+
+        var compressed = registry.summary("byblos.backend.response.bytes", "type", "compressed");
+        var uncompressed = registry.summary("byblos.backend.response.bytes", "type", "uncompressed");
+        assertThat(compressed.count()).isEqualTo(1);
+        assertThat(uncompressed.totalAmount()).isEqualTo(RESPONSE.length());
+        assertThat(compressed.totalAmount()).isLessThan(uncompressed.totalAmount());
+    }
+
+    @Test
+    void queryDeflate() throws Exception {
+        encoding = "deflate";
+        queryLocal();
+
+        assertThat(registry.summary("byblos.backend.response.bytes", "type", "compressed").totalAmount())
+                .isLessThan(RESPONSE.length());
+    }
+
+    @Test
+    void queryCompressionDisabled() throws Exception {
+        encoding = "gzip";
+        var backend = newLocalBackend(Map.of("compression.enabled", false));
+        backend.query(new EvalContext(60000, 120000, 60000), new DataExpr("up"));
+
+        assertThat(registry.summary("byblos.backend.response.bytes", "type", "compressed").totalAmount())
+                .isEqualTo(RESPONSE.length());
+    }
+
+    @Test
+    void queryErrorGzip() {
+        encoding = "gzip";
+        statusCode = 400;
+        var backend = newLocalBackend();
+
+        assertThatThrownBy(() -> backend.query(new EvalContext(60000, 120000, 60000), new DataExpr("up")))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unexpected status code [400]: bad query");
+    }
+
+    @Test
+    void queryShards() throws Exception {
+        echo = true;
+        var backend = newLocalBackend(Map.of("sharding.enabled", true, "sharding.shard-size", 10));
+        var context = new EvalContext(25 * 60000, 54 * 60000, 60000);
+
+        var res = backend.query(context, new DataExpr("up"));
+
+        assertThat(requests).containsExactlyInAnyOrder(
+                "start=1500&end=1740&step=60&query=up",
+                "start=1800&end=2340&step=60&query=up",
+                "start=2400&end=2940&step=60&query=up",
+                "start=3000&end=3240&step=60&query=up");
+        // Series are stitched back together by label set, whatever the shards they appear in.
+        assertThat(res).extracting(TimeSeries::label).containsExactly("up{job=node}", "up{job=even}");
+        for (var t = context.start(); t <= context.end(); t += context.step()) {
+            assertThat(res.get(0).data().get(t)).isEqualTo(t / 60000.0);
+            if (t % 120000 == 0) {
+                assertThat(res.get(1).data().get(t)).isEqualTo(t / 60000.0);
+            } else {
+                assertThat(res.get(1).data().get(t)).isNaN();
+            }
+        }
+    }
+
+    @Test
+    void queryShardsError() {
+        echo = true;
+        statusCode = 500;
+        var backend = newLocalBackend(Map.of("sharding.enabled", true, "sharding.shard-size", 10));
+
+        assertThatThrownBy(() -> backend.query(new EvalContext(0, 3600000, 60000), new DataExpr("up")))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("Unexpected status code [500]");
+    }
+
+    @Test
+    void queryHedged() throws Exception {
+        var replica = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        replica.createContext("/api/v1/query_range", exchange -> {
+            var body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (var os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        replica.start();
+        try {
+            var backend = newLocalBackend(Map.of(
+                    "replicas", List.of(localEndpoint(server), localEndpoint(replica)),
+                    "hedging.enabled", true,
+                    "hedging.min-delay", "10ms"));
+            var context = new EvalContext(60000, 120000, 60000);
+            // Both replicas are fast enough to estimate the latency.
+            for (var i = 0; i < 20; i++) {
+                backend.query(context, new DataExpr("up"));
+            }
+
+            // Once one replica is slow, requests sent to it are answered by the other one.
+            delay = 5000;
+            for (var i = 0; i < 4; i++) {
+                var res = backend.queryAsync(context, new DataExpr("up")).get(2, TimeUnit.SECONDS);
+                assertThat(res).hasSize(1);
+            }
+            assertThat(registry.counter("byblos.backend.hedged.requests").count()).isPositive();
+            assertThat(registry.timer("byblos.backend.replica.latency", "endpoint", localEndpoint(replica)).count()).isPositive();
+        } finally {
+            replica.stop(0);
+        }
+    }
+
+    @Test
+    void shards() {
+        var step = 60000L;
+
+        // Short or unaligned contexts are not split.
+        assertThat(PrometheusBackend.shards(new EvalContext(0, 9 * step, step), 10, 4))
+                .extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(0L, 9 * step));
+        assertThat(PrometheusBackend.shards(new EvalContext(1, 100 * step, step), 10, 4)).hasSize(1);
+
+        // Boundaries are aligned on multiples of the shard size.
+        assertThat(PrometheusBackend.shards(new EvalContext(5 * step, 25 * step, step), 10, 4))
+                .extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(5 * step, 9 * step), tuple(10 * step, 19 * step), tuple(20 * step, 25 * step));
+
+        // The shard size grows by multiples of itself to respect the maximum number of shards.
+        assertThat(PrometheusBackend.shards(new EvalContext(5 * step, 95 * step, step), 10, 4))
+                .extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(5 * step, 29 * step), tuple(30 * step, 59 * step), tuple(60 * step, 89 * step), tuple(90 * step, 95 * step));
+
+        // Shards covering a single step are merged with their neighbour.
+        assertThat(PrometheusBackend.shards(new EvalContext(9 * step, 30 * step, step), 10, 4))
+                .extracting(EvalContext::start, EvalContext::end)
+                .containsExactly(tuple(9 * step, 19 * step), tuple(20 * step, 30 * step));
+    }
+
+    private PrometheusBackend newLocalBackend() {
+        return newLocalBackend(Map.of());
+    }
+
+    private PrometheusBackend newLocalBackend(Map<String, Object> overrides) {
+        var config = ConfigFactory.parseMap(overrides)
+                .withFallback(ConfigFactory.parseMap(Map.of("endpoint", localEndpoint(server), "max-concurrent-requests", 2)))
+                .withFallback(ConfigFactory.load().getConfig("byblos.eval.backend"));
+        return new PrometheusBackend(config, registry);
+    }
+
+    private static String localEndpoint(HttpServer server) {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] compress(byte[] body, String encoding) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var os = "gzip".equals(encoding) ? new GZIPOutputStream(out) : new DeflaterOutputStream(out)) {
+            os.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Build a response with two series over the requested range, the second one only having
+     * values at even steps.
+     */
+    private static String echo(String query) {
+        var params = new HashMap<String, Long>();
+        for (var param : query.split("&")) {
+            var kv = param.split("=", 2);
+            if (!kv[0].equals("query")) {
+                params.put(kv[0], Long.parseLong(kv[1]));
+            }
+        }
+        var all = new StringJoiner(",");
+        var even = new StringJoiner(",");
+        for (var t = params.get("start"); t <= params.get("end"); t += params.get("step")) {
+            var value = "[" + t + ",\"" + (t / 60) + "\"]";
+            all.add(value);
+            if (t % 120 == 0) {
+                even.add(value);
+            }
+        }
+        return "{\"status\":\"success\",\"data\":{\"resultType\":\"matrix\",\"result\":["
+                + "{\"metric\":{\"__name__\":\"up\",\"job\":\"node\"},\"values\":[" + all + "]},"
+                + "{\"metric\":{\"__name__\":\"up\",\"job\":\"even\"},\"values\":[" + even + "]}"
+                + "]}}";
+    }
 }
@@ -0,0 +1,175 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.EvalContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link QueryRangeDecoder}.
+ */
+public class QueryRangeDecoderTest {
+    private final EvalContext context = new EvalContext(60000, 240000, 60000);
+
+    @Test
+    void decode() throws Exception {
+        var series = decode("""
+                {"status":"success","data":{"resultType":"matrix","result":[
+                  {"metric":{"__name__":"up","job":"node"},"values":[[60,"1"],[120,"0.5"],[180,"-2"],[240,"3e2"]]},
+                  {"metric":{"__name__":"up","job":"prometheus"},"values":[[120.000,"NaN"],[180,"+Inf"],[240,"-Inf"]]}
+                ]}}
+                """);
+
+        assertThat(series).hasSize(2);
+        assertThat(series.get(0).metric()).isEqualTo(Map.of("__name__", "up", "job", "node"));
+        assertThat(series.get(0).data()).isEqualTo(new ArrayTimeSeq(60000, 60000, new double[]{1.0, 0.5, -2.0, 300.0}));
+        assertThat(series.get(1).metric()).isEqualTo(Map.of("__name__", "up", "job", "prometheus"));
+        assertThat(series.get(1).data().data()).containsExactly(Double.NaN, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+    }
+
+    @Test
+    void decodeGaps() throws Exception {
+        var series = decode("""
+                {"status":"success","data":{"resultType":"matrix","result":[
+                  {"metric":{"__name__":"up"},"values":[[0,"7"],[120,"1"],[300,"8"]]}
+                ]}}
+                """);
+
+        // Samples outside the range are dropped.
+        assertThat(series.get(0).data().data()).containsExactly(Double.NaN, 1.0, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    void decodeSkipsUnknownFields() throws Exception {
+        var series = decode("""
+                {"status":"success","warnings":["a", {"b": [1, 2]}],"data":{"resultType":"matrix","stats":{"x":1},"result":[
+                  {"metric":{},"extra":[[1]],"values":[[60,"1"]]}
+                ]}}
+                """);
+
+        assertThat(series.get(0).metric()).isEmpty();
+        assertThat(series.get(0).data().data()).containsExactly(1.0, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    void decodeEmpty() throws Exception {
+        assertThat(decode("""
+                {"status":"success","data":{"resultType":"matrix","result":[]}}
+                """)).isEmpty();
+    }
+
+    @Test
+    void decodeUnalignedContext() throws Exception {
+        var series = decode(new EvalContext(90000, 200000, 60000), """
+                {"status":"success","data":{"resultType":"matrix","result":[
+                  {"metric":{},"values":[[90,"1"],[150,"2"]]}
+                ]}}
+                """);
+
+        assertThat(series.get(0).data().get(60000)).isEqualTo(1.0);
+        assertThat(series.get(0).data().data()).containsExactly(1.0, 2.0, Double.NaN);
+    }
+
+    @Test
+    void decodeError() {
+        assertThatThrownBy(() -> decode("""
+                {"status":"error","errorType":"bad_data","error":"parse error"}
+                """))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Query failed with status [error]: parse error");
+    }
+
+    @Test
+    void decodeUnsupportedResultType() {
+        assertThatThrownBy(() -> decode("""
+                {"status":"success","data":{"resultType":"vector","result":[]}}
+                """))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Unexpected result type [vector]");
+    }
+
+    @Test
+    void decodeHistograms() {
+        assertThatThrownBy(() -> decode("""
+                {"status":"success","data":{"resultType":"matrix","result":[
+                  {"metric":{},"histograms":[[60,{"count":"1"}]]}
+                ]}}
+                """))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Histograms are not supported");
+    }
+
+    @Test
+    void decodeInvalidValue() {
+        assertThatThrownBy(() -> decode("""
+                {"status":"success","data":{"resultType":"matrix","result":[
+                  {"metric":{},"values":[[60,"abc"]]}
+                ]}}
+                """))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Invalid sample value [abc]");
+    }
+
+    @Test
+    void parseSimpleDecimal() {
+        assertThat(parse("0")).isEqualTo(0.0);
+        assertThat(parse("-0")).isEqualTo(-0.0);
+        assertThat(parse("42")).isEqualTo(42.0);
+        assertThat(parse("+42")).isEqualTo(42.0);
+        assertThat(parse("0.1")).isEqualTo(0.1);
+        assertThat(parse(".5")).isEqualTo(0.5);
+        assertThat(parse("5.")).isEqualTo(5.0);
+        assertThat(parse("000123.4500")).isEqualTo(123.45);
+        assertThat(parse("0.000000000000000000001")).isEqualTo(1e-21);
+
+        // Not handled by the fast path.
+        assertThat(parse("")).isNaN();
+        assertThat(parse("-")).isNaN();
+        assertThat(parse(".")).isNaN();
+        assertThat(parse("1e3")).isNaN();
+        assertThat(parse("1.2.3")).isNaN();
+        assertThat(parse("NaN")).isNaN();
+        assertThat(parse("1234567890123456")).isNaN();
+        assertThat(parse("0.00000000000000000000001")).isNaN();
+    }
+
+    @Test
+    void parseSimpleDecimalMatchesJdk() {
+        var random = new Random(42);
+        for (var i = 0; i < 100_000; i++) {
+            var str = switch (i % 4) {
+                case 0 -> Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(10)));
+                case 1 -> String.valueOf(random.nextLong() % 1_000_000_000_000L);
+                case 2 -> String.format("%.6f", random.nextGaussian() * 1000);
+                default -> new java.math.BigDecimal(random.nextDouble() * 1e9).toPlainString();
+            };
+            var v = parse(str);
+            if (!Double.isNaN(v)) {
+                assertThat(v).as(str).isEqualTo(Double.parseDouble(str));
+            }
+        }
+    }
+
+    private List<QueryRangeDecoder.Series> decode(String json) throws IOException {
+        return decode(context, json);
+    }
+
+    private List<QueryRangeDecoder.Series> decode(EvalContext context, String json) throws IOException {
+        var in = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+        return QueryRangeDecoder.decode(in, context);
+    }
+
+    private static double parse(String str) {
+        var chars = ("xx" + str + "yy").toCharArray();
+        return QueryRangeDecoder.parseSimpleDecimal(chars, 2, str.length());
+    }
+}
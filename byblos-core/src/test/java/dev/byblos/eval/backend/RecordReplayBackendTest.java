@@ -0,0 +1,126 @@
+package dev.byblos.eval.backend;
+
+import com.typesafe.config.ConfigFactory;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link RecordReplayBackend}.
+ */
+public class RecordReplayBackendTest {
+    private static final long step = 60000L;
+
+    @TempDir
+    Path dir;
+
+    // The value at each step is the timestamp, in steps.
+    private final Backend delegate = (context, expr) -> {
+        var builder = new TimeSeqBuilder(context);
+        for (var t = context.start(); t <= context.end(); t += context.step()) {
+            builder.add(t, t / step);
+        }
+        return List.of(
+                new TimeSeries(builder.build(), "up{job=node}", Map.of("__name__", "up", "job", "node")),
+                new TimeSeries(new TimeSeqBuilder(context).build(), "up{job=api}", Map.of("__name__", "up", "job", "api")));
+    };
+
+    @Test
+    void recordAndReplay() throws Exception {
+        var file = dir.resolve("recording.bin");
+        var context = new EvalContext(10 * step, 20 * step, step);
+        var recorder = new RecordReplayBackend(delegate, file, RecordReplayBackend.Mode.RECORD, false);
+        var expected = recorder.query(context, new DataExpr("up"));
+        recorder.query(new EvalContext(0, 5 * step, step), new DataExpr("up"));
+
+        var replayer = new RecordReplayBackend(null, file, RecordReplayBackend.Mode.REPLAY, false);
+        var result = replayer.query(context, new DataExpr("up"));
+
+        assertThat(result).hasSize(2);
+        for (var i = 0; i < 2; i++) {
+            assertThat(result.get(i).label()).isEqualTo(expected.get(i).label());
+            assertThat(result.get(i).tags()).isEqualTo(expected.get(i).tags());
+            assertThat(result.get(i).data()).isEqualTo(expected.get(i).data());
+        }
+        assertThatThrownBy(() -> replayer.query(new EvalContext(11 * step, 21 * step, step), new DataExpr("up")))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("no recorded result for [up]");
+    }
+
+    @Test
+    void appendToExistingRecording() throws Exception {
+        var file = dir.resolve("recording.bin");
+        new RecordReplayBackend(delegate, file, RecordReplayBackend.Mode.RECORD, false)
+                .query(new EvalContext(0, 5 * step, step), new DataExpr("a"));
+        new RecordReplayBackend(delegate, file, RecordReplayBackend.Mode.RECORD, false)
+                .query(new EvalContext(0, 5 * step, step), new DataExpr("b"));
+
+        var replayer = new RecordReplayBackend(null, file, RecordReplayBackend.Mode.REPLAY, false);
+
+        assertThat(replayer.query(new EvalContext(0, 5 * step, step), new DataExpr("a"))).hasSize(2);
+        assertThat(replayer.query(new EvalContext(0, 5 * step, step), new DataExpr("b"))).hasSize(2);
+    }
+
+    @Test
+    void replayTimeShifted() throws Exception {
+        var file = dir.resolve("recording.bin");
+        new RecordReplayBackend(delegate, file, RecordReplayBackend.Mode.RECORD, false)
+                .query(new EvalContext(10 * step, 20 * step, step), new DataExpr("up"));
+
+        var replayer = new RecordReplayBackend(null, file, RecordReplayBackend.Mode.REPLAY, true);
+        var result = replayer.query(new EvalContext(100 * step, 110 * step, step), new DataExpr("up"));
+
+        // Values recorded from 10 to 20 are now found from 100 to 110.
+        var data = result.get(0).data();
+        assertThat(data.get(100 * step)).isEqualTo(10.0);
+        assertThat(data.get(110 * step)).isEqualTo(20.0);
+        assertThat(data.get(99 * step)).isNaN();
+    }
+
+    @Test
+    void ignoreTruncatedRecord() throws Exception {
+        var file = dir.resolve("recording.bin");
+        new RecordReplayBackend(delegate, file, RecordReplayBackend.Mode.RECORD, false)
+                .query(new EvalContext(0, 5 * step, step), new DataExpr("up"));
+        Files.write(file, new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        var replayer = new RecordReplayBackend(null, file, RecordReplayBackend.Mode.REPLAY, false);
+
+        assertThat(replayer.query(new EvalContext(0, 5 * step, step), new DataExpr("up"))).hasSize(2);
+    }
+
+    @Test
+    void rejectInvalidFile() throws Exception {
+        var file = dir.resolve("recording.bin");
+        Files.writeString(file, "not a recording");
+
+        assertThatThrownBy(() -> new RecordReplayBackend(null, file, RecordReplayBackend.Mode.REPLAY, false))
+                .isInstanceOf(IOException.class)
+                .hasMessage("not a recording of backend results");
+    }
+
+    @Test
+    void fromConfig() throws Exception {
+        var file = dir.resolve("recording.bin");
+        new RecordReplayBackend(delegate, file, RecordReplayBackend.Mode.RECORD, false)
+                .query(new EvalContext(0, 5 * step, step), new DataExpr("up"));
+        var config = ConfigFactory.parseMap(Map.of("record-replay.file", file.toString(), "record-replay.mode", "replay"))
+                .withFallback(ConfigFactory.load().getConfig("byblos.eval.backend"));
+
+        var replayer = new RecordReplayBackend(config);
+
+        assertThat(replayer.query(new EvalContext(0, 5 * step, step), new DataExpr("up"))).hasSize(2);
+    }
+}
@@ -0,0 +1,221 @@
+package dev.byblos.eval.backend;
+
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigFactory;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link RemoteReadBackend}.
+ */
+public class RemoteReadBackendTest {
+    private static final long step = 60000L;
+    private static final EvalContext context = new EvalContext(60 * step, 80 * step, step);
+
+    private HttpServer server;
+    private volatile String contentType;
+    private volatile byte[] response;
+    private volatile byte[] request;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/v1/read", exchange -> {
+            request = Snappy.uncompress(exchange.getRequestBody().readAllBytes());
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, response.length);
+            try (var os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.createContext("/api/v1/query_range", exchange -> {
+            var body = """
+                    {"status":"success","data":{"resultType":"matrix","result":[
+                      {"metric":{"job":"node"},"values":[[3600,"1"]]}
+                    ]}}
+                    """.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (var os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void queryStreamedChunks() throws Exception {
+        // Samples every 15 seconds, split over two chunks and two frames, with a gap longer than
+        // the lookback delta.
+        var first = new XorChunkWriter();
+        var second = new XorChunkWriter();
+        for (var t = 50 * step; t < 85 * step; t += 15000) {
+            if (t < 65 * step) {
+                first.add(t, t / 1000.0);
+            } else if (t >= 72 * step) {
+                second.add(t, t / 1000.0);
+            }
+        }
+        var labels = Map.of("__name__", "up", "job", "node");
+        contentType = "application/x-streamed-protobuf; proto=prometheus.ChunkedReadResponse";
+        response = concat(frame(chunkedSeries(labels, first.toByteArray())), frame(chunkedSeries(labels, second.toByteArray())));
+
+        var res = newBackend().query(context, new DataExpr("up{job=\"node\"}"));
+
+        assertThat(res).hasSize(1);
+        assertThat(res.get(0).label()).isEqualTo("up{job=node}");
+        assertThat(res.get(0).tags()).isEqualTo(labels);
+        var data = res.get(0).data();
+        for (var t = context.start(); t <= context.end(); t += step) {
+            if (t < 70 * step || t >= 72 * step) {
+                // Latest sample at or before the step.
+                assertThat(data.get(t)).isEqualTo(Math.min(t, t < 70 * step ? 65 * step - 15000 : t) / 1000.0);
+            } else {
+                assertThat(data.get(t)).isNaN();
+            }
+        }
+        assertRequest();
+    }
+
+    @Test
+    void querySamples() throws Exception {
+        var series = new ProtoWriter()
+                .writeMessage(1, label("__name__", "up"))
+                .writeMessage(2, new ProtoWriter().writeDouble(1, 1.0).writeVarint(2, 60 * step))
+                .writeMessage(2, new ProtoWriter().writeDouble(1, 2.0).writeVarint(2, 61 * step + 1000))
+                // Stale marker, the series disappears.
+                .writeMessage(2, new ProtoWriter().writeDouble(1, Double.longBitsToDouble(0x7ff0000000000002L)).writeVarint(2, 62 * step + 1000));
+        var empty = new ProtoWriter()
+                .writeMessage(1, label("__name__", "up"))
+                .writeMessage(1, label("job", "old"))
+                .writeMessage(2, new ProtoWriter().writeDouble(1, 1.0).writeVarint(2, 10 * step));
+        contentType = "application/x-protobuf";
+        response = Snappy.compress(new ProtoWriter()
+                .writeMessage(1, new ProtoWriter().writeMessage(1, series).writeMessage(1, empty))
+                .toByteArray());
+
+        var res = newBackend().query(context, new DataExpr("up"));
+
+        // Series without any sample within the lookback delta are dropped.
+        assertThat(res).extracting(TimeSeries::label).containsExactly("up");
+        var data = res.get(0).data();
+        assertThat(data.get(60 * step)).isEqualTo(1.0);
+        assertThat(data.get(61 * step)).isEqualTo(1.0);
+        assertThat(data.get(62 * step)).isEqualTo(2.0);
+        assertThat(data.get(63 * step)).isNaN();
+    }
+
+    @Test
+    void fallbackForExpressions() throws Exception {
+        var res = newBackend().query(context, new DataExpr("sum(rate(up[5m]))"));
+
+        assertThat(res).extracting(TimeSeries::tags).containsExactly(Map.of("job", "node"));
+        assertThat(request).isNull();
+    }
+
+    @Test
+    void invalidChecksum() {
+        contentType = "application/x-streamed-protobuf; proto=prometheus.ChunkedReadResponse";
+        response = frame(chunkedSeries(Map.of("__name__", "up"), new XorChunkWriter().add(60 * step, 1.0).toByteArray()));
+        response[response.length - 1] ^= 1;
+
+        assertThatThrownBy(() -> newBackend().query(context, new DataExpr("up")))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Invalid frame checksum");
+    }
+
+    /**
+     * Check that the request asks for samples from the lookback delta before the start, with
+     * the expected matchers.
+     */
+    private void assertRequest() throws IOException {
+        var in = new ProtoReader(request);
+        assertThat(ProtoReader.fieldNumber(in.readTag())).isEqualTo(1);
+        var query = in.readMessage();
+        assertThat(query.readTag()).isEqualTo(1 << 3);
+        assertThat(query.readVarint()).isEqualTo(55 * step);
+        assertThat(query.readTag()).isEqualTo(2 << 3);
+        assertThat(query.readVarint()).isEqualTo(80 * step);
+        var matchers = new ArrayList<String>();
+        while (query.hasRemaining()) {
+            var tag = query.readTag();
+            if (ProtoReader.fieldNumber(tag) == 3) {
+                var matcher = query.readMessage();
+                matcher.readTag();
+                var type = matcher.readVarint();
+                matcher.readTag();
+                var name = matcher.readString();
+                matcher.readTag();
+                matchers.add(type + ":" + name + "=" + matcher.readString());
+            } else {
+                query.skip(ProtoReader.wireType(tag));
+            }
+        }
+        assertThat(matchers).containsExactly("0:__name__=up", "0:job=node");
+    }
+
+    private RemoteReadBackend newBackend() {
+        var endpoint = "http://localhost:" + server.getAddress().getPort();
+        var config = ConfigFactory.parseMap(Map.of("endpoint", endpoint))
+                .withFallback(ConfigFactory.load().getConfig("byblos.eval.backend"));
+        return new RemoteReadBackend(config);
+    }
+
+    private static ProtoWriter label(String name, String value) {
+        return new ProtoWriter().writeString(1, name).writeString(2, value);
+    }
+
+    private static byte[] chunkedSeries(Map<String, String> labels, byte[] chunk) {
+        var series = new ProtoWriter();
+        labels.forEach((k, v) -> series.writeMessage(1, label(k, v)));
+        series.writeMessage(2, new ProtoWriter().writeVarint(3, 1).writeBytes(4, chunk));
+        return new ProtoWriter().writeMessage(1, series).toByteArray();
+    }
+
+    private static byte[] frame(byte[] message) {
+        var out = new ByteArrayOutputStream();
+        var size = message.length;
+        while ((size & ~0x7f) != 0) {
+            out.write((size & 0x7f) | 0x80);
+            size >>>= 7;
+        }
+        out.write(size);
+        var crc = new CRC32C();
+        crc.update(message);
+        var checksum = (int) crc.getValue();
+        out.write(checksum >>> 24);
+        out.write(checksum >>> 16);
+        out.write(checksum >>> 8);
+        out.write(checksum);
+        out.writeBytes(message);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        var out = new ByteArrayOutputStream();
+        for (var array : arrays) {
+            out.writeBytes(array);
+        }
+        return out.toByteArray();
+    }
+}
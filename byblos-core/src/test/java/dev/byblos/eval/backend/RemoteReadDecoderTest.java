@@ -0,0 +1,100 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.EvalContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link RemoteReadDecoder}.
+ */
+public class RemoteReadDecoderTest {
+    private static final long step = 60000L;
+    private static final EvalContext context = new EvalContext(60 * step, 62 * step, step);
+    private static final String CONTENT_TYPE = "application/x-protobuf";
+
+    @Test
+    void skipExemplars() throws Exception {
+        var series = new ProtoWriter()
+                .writeMessage(1, label("__name__", "up"))
+                .writeMessage(2, sample(1.0, 60 * step))
+                .writeMessage(3, new ProtoWriter()
+                        .writeMessage(1, label("trace_id", "abc"))
+                        .writeDouble(2, 42.0)
+                        .writeVarint(3, 60 * step));
+
+        var res = RemoteReadDecoder.decode(response(series), CONTENT_TYPE, context, 5 * step);
+
+        assertThat(res).singleElement().satisfies(s -> {
+            assertThat(s.metric()).isEqualTo(Map.of("__name__", "up"));
+            assertThat(s.data().get(60 * step)).isEqualTo(1.0);
+        });
+    }
+
+    @Test
+    void rejectHistograms() {
+        var series = new ProtoWriter()
+                .writeMessage(1, label("__name__", "latency"))
+                .writeMessage(4, new ProtoWriter()
+                        .writeVarint(1, 10)
+                        .writeDouble(3, 1.5)
+                        .writeVarint(15, 60 * step));
+
+        assertThatThrownBy(() -> RemoteReadDecoder.decode(response(series), CONTENT_TYPE, context, 5 * step))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Histograms are not supported");
+    }
+
+    @Test
+    void rejectHistogramChunks() {
+        var series = new ProtoWriter()
+                .writeMessage(1, label("__name__", "latency"))
+                .writeMessage(2, new ProtoWriter().writeVarint(3, 2).writeBytes(4, new byte[]{0, 0}));
+        var body = frame(new ProtoWriter().writeMessage(1, series).toByteArray());
+
+        assertThatThrownBy(() -> RemoteReadDecoder.decode(new ByteArrayInputStream(body), RemoteReadDecoder.STREAMED_CONTENT_TYPE, context, 5 * step))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Histograms are not supported");
+    }
+
+    private static ByteArrayInputStream response(ProtoWriter series) {
+        var body = new ProtoWriter()
+                .writeMessage(1, new ProtoWriter().writeMessage(1, series))
+                .toByteArray();
+        return new ByteArrayInputStream(Snappy.compress(body));
+    }
+
+    private static ProtoWriter label(String name, String value) {
+        return new ProtoWriter().writeString(1, name).writeString(2, value);
+    }
+
+    private static ProtoWriter sample(double value, long timestamp) {
+        return new ProtoWriter().writeDouble(1, value).writeVarint(2, timestamp);
+    }
+
+    private static byte[] frame(byte[] message) {
+        var out = new ByteArrayOutputStream();
+        var size = message.length;
+        while ((size & ~0x7f) != 0) {
+            out.write((size & 0x7f) | 0x80);
+            size >>>= 7;
+        }
+        out.write(size);
+        var crc = new CRC32C();
+        crc.update(message);
+        var checksum = (int) crc.getValue();
+        out.write(checksum >>> 24);
+        out.write(checksum >>> 16);
+        out.write(checksum >>> 8);
+        out.write(checksum);
+        out.writeBytes(message);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+package dev.byblos.eval.backend;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link ReplicaSet}.
+ */
+public class ReplicaSetTest {
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ReplicaSet replicas = new ReplicaSet(List.of("a", "b", "c"), 2, Duration.ofSeconds(30), registry, now::get);
+
+    @Test
+    void selectLeastOutstanding() {
+        var a = select("a");
+        var b = select("b");
+        a.start();
+        a.start();
+        b.start();
+
+        for (var i = 0; i < 5; i++) {
+            assertThat(replicas.select(Optional.empty()).endpoint()).isEqualTo("c");
+        }
+    }
+
+    @Test
+    void selectInTurn() {
+        assertThat(List.of(
+                replicas.select(Optional.empty()).endpoint(),
+                replicas.select(Optional.empty()).endpoint(),
+                replicas.select(Optional.empty()).endpoint()))
+                .containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    @Test
+    void selectExcluded() {
+        var a = select("a");
+        for (var i = 0; i < 5; i++) {
+            assertThat(replicas.select(Optional.of(a))).isNotSameAs(a);
+        }
+        var single = new ReplicaSet(List.of("a"), 2, Duration.ofSeconds(30), registry, now::get);
+        var only = single.select(Optional.empty());
+        assertThat(single.select(Optional.of(only))).isSameAs(only);
+    }
+
+    @Test
+    void ejectFailingReplica() {
+        var a = select("a");
+        a.start();
+        a.failure();
+        assertThat(a.isEjected(now.get())).isFalse();
+        a.start();
+        a.failure();
+        assertThat(a.isEjected(now.get())).isTrue();
+        assertThat(registry.counter("byblos.backend.replica.ejections", "endpoint", "a").count()).isEqualTo(1.0);
+
+        for (var i = 0; i < 5; i++) {
+            assertThat(replicas.select(Optional.empty())).isNotSameAs(a);
+        }
+
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertThat(a.isEjected(now.get())).isFalse();
+    }
+
+    @Test
+    void successResetsFailures() {
+        var a = select("a");
+        a.start();
+        a.failure();
+        a.success(a.start());
+        a.start();
+        a.failure();
+        assertThat(a.isEjected(now.get())).isFalse();
+    }
+
+    @Test
+    void useEjectedReplicasIfNoneIsHealthy() {
+        var single = new ReplicaSet(List.of("a"), 1, Duration.ofSeconds(30), registry, now::get);
+        var a = single.select(Optional.empty());
+        a.start();
+        a.failure();
+        assertThat(a.isEjected(now.get())).isTrue();
+        assertThat(single.select(Optional.empty())).isSameAs(a);
+    }
+
+    @Test
+    void latency() {
+        var a = select("a");
+        assertThat(replicas.latency(0.5)).isEmpty();
+        for (var i = 1; i <= 100; i++) {
+            var startedAt = a.start();
+            now.addAndGet(Duration.ofMillis(i).toNanos());
+            a.success(startedAt);
+        }
+        assertThat(replicas.latency(0.5)).contains(Duration.ofMillis(50));
+        assertThat(replicas.latency(0.95)).contains(Duration.ofMillis(95));
+        assertThat(registry.timer("byblos.backend.replica.latency", "endpoint", "a").count()).isEqualTo(100);
+        assertThat(a.outstanding()).isZero();
+    }
+
+    private ReplicaSet.Replica select(String endpoint) {
+        for (var i = 0; i < 3; i++) {
+            var replica = replicas.select(Optional.empty());
+            if (replica.endpoint().equals(endpoint)) {
+                return replica;
+            }
+        }
+        throw new AssertionError("replica not found: " + endpoint);
+    }
+}
@@ -0,0 +1,48 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.eval.backend.Selector.MatchType;
+import dev.byblos.eval.backend.Selector.Matcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link Selector}.
+ */
+public class SelectorTest {
+
+    @Test
+    void metricName() {
+        assertThat(Selector.parse(" node:cpu_seconds:rate5m ")).hasValue(List.of(
+                new Matcher(MatchType.EQ, "__name__", "node:cpu_seconds:rate5m")));
+    }
+
+    @Test
+    void matchers() {
+        assertThat(Selector.parse("http_requests_total{job=\"api\", status=~'5..',path!=`/a\\b`,env!~\"d\\\"ev\",}")).hasValue(List.of(
+                new Matcher(MatchType.EQ, "__name__", "http_requests_total"),
+                new Matcher(MatchType.EQ, "job", "api"),
+                new Matcher(MatchType.RE, "status", "5.."),
+                new Matcher(MatchType.NEQ, "path", "/a\\b"),
+                new Matcher(MatchType.NRE, "env", "d\"ev")));
+        assertThat(Selector.parse("{__name__=~\"up|down\"}")).hasValue(List.of(
+                new Matcher(MatchType.RE, "__name__", "up|down")));
+    }
+
+    @Test
+    void notSelectors() {
+        assertThat(Selector.parse("")).isEmpty();
+        assertThat(Selector.parse("{}")).isEmpty();
+        assertThat(Selector.parse("rate(up[5m])")).isEmpty();
+        assertThat(Selector.parse("up[5m]")).isEmpty();
+        assertThat(Selector.parse("up offset 1h")).isEmpty();
+        assertThat(Selector.parse("up{job=\"a\"} * 2")).isEmpty();
+        assertThat(Selector.parse("up{job=\"a\"")).isEmpty();
+        assertThat(Selector.parse("up{job=a}")).isEmpty();
+        assertThat(Selector.parse("up{job=\"\\x41\"}")).isEmpty();
+        assertThat(Selector.parse("NaN")).isEmpty();
+        assertThat(Selector.parse("42")).isEmpty();
+    }
+}
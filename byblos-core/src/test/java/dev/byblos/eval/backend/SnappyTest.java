@@ -0,0 +1,48 @@
+package dev.byblos.eval.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link Snappy}.
+ */
+public class SnappyTest {
+
+    @Test
+    void roundTrip() throws Exception {
+        var random = new Random(42);
+        for (var length : new int[]{0, 1, 59, 60, 61, 255, 256, 257, 65536, 200000}) {
+            var input = new byte[length];
+            random.nextBytes(input);
+            assertThat(Snappy.uncompress(Snappy.compress(input))).isEqualTo(input);
+        }
+    }
+
+    @Test
+    void uncompressCopies() throws Exception {
+        // Literal "abc" followed by overlapping copies with 1-byte and 2-byte offsets.
+        var input = new byte[]{0x15, 0x08, 'a', 'b', 'c', 0x15, 0x03, 0x22, 0x03, 0x00};
+
+        assertThat(new String(Snappy.uncompress(input), StandardCharsets.US_ASCII)).isEqualTo("abcabcabcabcabcabcabc");
+    }
+
+    @Test
+    void uncompressInvalidOffset() {
+        var input = new byte[]{0x0c, 0x08, 'a', 'b', 'c', 0x15, 0x04};
+
+        assertThatThrownBy(() -> Snappy.uncompress(input)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void uncompressTruncated() {
+        var input = new byte[]{0x0c, 0x08, 'a', 'b', 'c', 0x15};
+
+        assertThatThrownBy(() -> Snappy.uncompress(input)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,91 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link SyntheticBackend}.
+ */
+public class SyntheticBackendTest {
+    private static final long step = 60000L;
+
+    private final SyntheticBackend backend = new SyntheticBackend(1000);
+    private final EvalContext context = new EvalContext(0, 1439 * step, step);
+
+    @Test
+    void parse() {
+        assertThat(SyntheticBackend.parse("synthetic")).isEmpty();
+        assertThat(SyntheticBackend.parse("synthetic{}")).isEmpty();
+        assertThat(SyntheticBackend.parse(" synthetic{series=5000, shape=\"sine\",noise=0.1} "))
+                .isEqualTo(Map.of("series", "5000", "shape", "sine", "noise", "0.1"));
+        assertThatThrownBy(() -> SyntheticBackend.parse("up"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("not a synthetic expression: up");
+        assertThatThrownBy(() -> SyntheticBackend.parse("synthetic{foo=1}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("unknown parameter: foo");
+    }
+
+    @Test
+    void generateSeries() {
+        var result = backend.query(context, new DataExpr("synthetic{series=100,labels=2,cardinality=5}"));
+
+        assertThat(result).hasSize(100);
+        assertThat(result.stream().map(TimeSeries::tags).distinct()).hasSize(100);
+        assertThat(result.stream().map(ts -> ts.tags().get("l0")).distinct()).hasSize(5);
+        assertThat(result.get(7).tags()).isEqualTo(Map.of("__name__", "synthetic", "id", "7", "l0", "v2", "l1", "v1"));
+        assertThat(result.get(7).label()).isEqualTo("synthetic{id=7, l0=v2, l1=v1}");
+        for (var ts : result) {
+            for (var t = context.start(); t <= context.end(); t += step) {
+                assertThat(ts.data().get(t)).isBetween(0.0, 100.0);
+            }
+        }
+    }
+
+    @Test
+    void generateShapes() {
+        var square = backend.query(context, new DataExpr("synthetic{shape=square,period=1h,seed=1}")).get(0).data();
+        var high = 0;
+        for (var t = 0L; t < 60 * step; t += step) {
+            if (square.get(t) == 100.0) {
+                high++;
+            }
+        }
+        assertThat(high).isEqualTo(30);
+
+        var constant = backend.query(context, new DataExpr("synthetic{shape=constant}")).get(0).data();
+        assertThat(constant.get(42 * step)).isEqualTo(50.0);
+
+        assertThatThrownBy(() -> backend.query(context, new DataExpr("synthetic{shape=triangle}")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("unknown shape: triangle");
+    }
+
+    @Test
+    void deterministicAcrossRanges() {
+        var expr = new DataExpr("synthetic{series=3,noise=0.1}");
+        var full = backend.query(context, expr);
+        var partial = backend.query(new EvalContext(600 * step, 700 * step, step), expr);
+
+        for (var i = 0; i < 3; i++) {
+            for (var t = 600 * step; t <= 700 * step; t += step) {
+                assertThat(partial.get(i).data().get(t)).isEqualTo(full.get(i).data().get(t));
+            }
+        }
+        assertThat(full.get(0).data().get(0)).isNotEqualTo(full.get(1).data().get(0));
+    }
+
+    @Test
+    void limitSeries() {
+        assertThatThrownBy(() -> backend.query(context, new DataExpr("synthetic{series=1001}")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("series must be between 0 and 1000");
+    }
+}
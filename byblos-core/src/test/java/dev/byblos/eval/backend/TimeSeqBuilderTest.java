@@ -0,0 +1,55 @@
+package dev.byblos.eval.backend;
+
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.EvalContext;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link TimeSeqBuilder}.
+ */
+public class TimeSeqBuilderTest {
+    @Test
+    void buildEmpty() {
+        var seq = new TimeSeqBuilder(new EvalContext(0, 180000, 60000)).build();
+        assertThat(seq.data()).containsExactly(Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    @Test
+    void build() {
+        var seq = new TimeSeqBuilder(new EvalContext(0, 180000, 60000))
+                .add(0, 1.0)
+                .add(120000, 3.0)
+                .add(180000, 4.0)
+                .build();
+        assertThat(seq).isEqualTo(new ArrayTimeSeq(0, 60000, new double[]{1.0, Double.NaN, 3.0, 4.0}));
+    }
+
+    @Test
+    void buildUnaligned() {
+        var seq = new TimeSeqBuilder(new EvalContext(30000, 150000, 60000))
+                .add(30000, 1.0)
+                .add(150000, 3.0)
+                .build();
+        assertThat(seq).isEqualTo(new ArrayTimeSeq(0, 60000, new double[]{1.0, Double.NaN, 3.0}));
+    }
+
+    @Test
+    void buildIgnoresOutOfRange() {
+        var seq = new TimeSeqBuilder(new EvalContext(60000, 120000, 60000))
+                .add(0, 1.0)
+                .add(59999, 1.0)
+                .add(180000, 1.0)
+                .build();
+        assertThat(seq.data()).containsExactly(Double.NaN, Double.NaN);
+    }
+
+    @Test
+    void buildNegativeStart() {
+        var seq = new TimeSeqBuilder(new EvalContext(-90000, 0, 60000))
+                .add(-90000, 1.0)
+                .build();
+        assertThat(seq).isEqualTo(new ArrayTimeSeq(-120000, 60000, new double[]{1.0, Double.NaN, Double.NaN}));
+    }
+}
@@ -0,0 +1,78 @@
+package dev.byblos.eval.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link XorChunk}.
+ */
+public class XorChunkTest {
+
+    @Test
+    void decodeRegularSamples() throws Exception {
+        var writer = new XorChunkWriter();
+        for (var i = 0; i < 120; i++) {
+            writer.add(1_700_000_000_000L + i * 15000L, i % 10 == 0 ? 42.0 : i * 1.5);
+        }
+
+        var samples = decode(writer.toByteArray());
+
+        assertThat(samples).hasSize(120);
+        for (var i = 0; i < 120; i++) {
+            assertThat(samples.get(i).timestamp()).isEqualTo(1_700_000_000_000L + i * 15000L);
+            assertThat(samples.get(i).value()).isEqualTo(i % 10 == 0 ? 42.0 : i * 1.5);
+        }
+    }
+
+    @Test
+    void decodeIrregularSamples() throws Exception {
+        // Jitter exercising all the delta of delta sizes, and values with all bit patterns.
+        var random = new Random(42);
+        var jitters = new long[]{0, 1, -1, 5000, -5000, 60000, -60000, 500000, 10_000_000_000L};
+        var expected = new ArrayList<Sample>();
+        var writer = new XorChunkWriter();
+        var t = -3_600_000L;
+        for (var i = 0; i < 500; i++) {
+            t += 60000 + jitters[random.nextInt(jitters.length)];
+            var v = switch (random.nextInt(4)) {
+                case 0 -> random.nextDouble();
+                case 1 -> (double) random.nextInt(100);
+                case 2 -> Double.NaN;
+                default -> -random.nextGaussian() * 1e12;
+            };
+            writer.add(t, v);
+            expected.add(new Sample(t, v));
+        }
+
+        assertThat(decode(writer.toByteArray())).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void decodeEmptyChunk() throws Exception {
+        assertThat(decode(new byte[]{0, 0})).isEmpty();
+    }
+
+    @Test
+    void truncatedChunk() {
+        var data = new XorChunkWriter().add(0, 1.0).add(15000, 2.0).add(30000, 3.0).toByteArray();
+
+        assertThatThrownBy(() -> XorChunk.decode(data, 0, data.length - 2, (t, v) -> {
+        })).isInstanceOf(IOException.class);
+    }
+
+    private static List<Sample> decode(byte[] data) throws IOException {
+        var samples = new ArrayList<Sample>();
+        XorChunk.decode(data, 0, data.length, (t, v) -> samples.add(new Sample(t, v)));
+        return samples;
+    }
+
+    private record Sample(long timestamp, double value) {
+    }
+}
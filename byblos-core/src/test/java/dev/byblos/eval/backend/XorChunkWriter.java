@@ -0,0 +1,112 @@
+package dev.byblos.eval.backend;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encoder for XOR chunks, following the implementation of the Prometheus TSDB, to generate
+ * test payloads.
+ */
+final class XorChunkWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int current;
+    private int bitCount;
+    private int count;
+    private long timestamp;
+    private long delta;
+    private long bits;
+    private int leading = 0xff;
+    private int trailing;
+
+    XorChunkWriter add(long t, double v) {
+        var vbits = Double.doubleToRawLongBits(v);
+        if (count == 0) {
+            writeUvarint((t << 1) ^ (t >> 63));
+            writeBits(vbits, 64);
+        } else if (count == 1) {
+            delta = t - timestamp;
+            writeUvarint(delta);
+            writeValue(vbits);
+        } else {
+            var newDelta = t - timestamp;
+            var dod = newDelta - delta;
+            if (dod == 0) {
+                writeBits(0, 1);
+            } else if (inRange(dod, 14)) {
+                writeBits(0b10, 2);
+                writeBits(dod, 14);
+            } else if (inRange(dod, 17)) {
+                writeBits(0b110, 3);
+                writeBits(dod, 17);
+            } else if (inRange(dod, 20)) {
+                writeBits(0b1110, 4);
+                writeBits(dod, 20);
+            } else {
+                writeBits(0b1111, 4);
+                writeBits(dod, 64);
+            }
+            delta = newDelta;
+            writeValue(vbits);
+        }
+        timestamp = t;
+        bits = vbits;
+        count++;
+        return this;
+    }
+
+    byte[] toByteArray() {
+        var data = new ByteArrayOutputStream();
+        data.write(count >>> 8);
+        data.write(count);
+        data.writeBytes(out.toByteArray());
+        if (bitCount > 0) {
+            data.write(current << (8 - bitCount));
+        }
+        return data.toByteArray();
+    }
+
+    private void writeValue(long vbits) {
+        var xor = vbits ^ bits;
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+        writeBits(1, 1);
+        var newLeading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        var newTrailing = Long.numberOfTrailingZeros(xor);
+        if (leading != 0xff && newLeading >= leading && newTrailing >= trailing) {
+            writeBits(0, 1);
+            writeBits(xor >>> trailing, 64 - leading - trailing);
+        } else {
+            leading = newLeading;
+            trailing = newTrailing;
+            var significant = 64 - leading - trailing;
+            writeBits(1, 1);
+            writeBits(leading, 5);
+            writeBits(significant, 6);
+            writeBits(xor >>> trailing, significant);
+        }
+    }
+
+    private static boolean inRange(long x, int nbits) {
+        return -((1L << (nbits - 1)) - 1) <= x && x <= 1L << (nbits - 1);
+    }
+
+    private void writeUvarint(long value) {
+        while ((value & ~0x7fL) != 0) {
+            writeBits((value & 0x7f) | 0x80, 8);
+            value >>>= 7;
+        }
+        writeBits(value, 8);
+    }
+
+    private void writeBits(long value, int n) {
+        for (var i = n - 1; i >= 0; i--) {
+            current = (current << 1) | (int) ((value >>> i) & 1);
+            if (++bitCount == 8) {
+                out.write(current);
+                current = 0;
+                bitCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package dev.byblos.eval.graph;
+
+import dev.byblos.eval.backend.Backend;
+import dev.byblos.model.ArrayTimeSeq;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.Deadline;
+import dev.byblos.model.DeadlineExceededException;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.TimeSeries;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link DataFetcher}.
+ */
+public class DataFetcherTest {
+    private final EvalContext context = new EvalContext(0, 180000, 60000);
+
+    @Test
+    void fetchEmpty() throws Exception {
+        var fetcher = new DataFetcher((ctx, expr) -> List.of(), 4, 4, Duration.ofSeconds(10), Duration.ZERO);
+        assertThat(fetcher.fetch(context, List.of()).data().isEmpty()).isTrue();
+    }
+
+    @Test
+    void fetchPreservesOrder() throws Exception {
+        // Later expressions complete first.
+        Backend backend = (ctx, expr) -> {
+            var i = Integer.parseInt(expr.exprString());
+            sleep(10 * (8 - i));
+            return List.of(ts(expr.exprString()));
+        };
+        var fetcher = new DataFetcher(backend, 8, 8, Duration.ofSeconds(10), Duration.ZERO);
+        var exprs = IntStream.range(0, 8).mapToObj(i -> new DataExpr(String.valueOf(i))).toList();
+
+        var result = fetcher.fetch(context, exprs).data();
+
+        assertThat(result.keySet()).containsExactlyElementsOf(exprs);
+        assertThat(result.values().stream().map(TimeSeries::label).toList())
+                .containsExactly("0", "1", "2", "3", "4", "5", "6", "7");
+    }
+
+    @Test
+    void fetchConcurrently() throws Exception {
+        var latch = new CountDownLatch(4);
+        Backend backend = (ctx, expr) -> {
+            latch.countDown();
+            try {
+                // Only completes if all the queries are in flight at the same time.
+                if (!latch.await(5, TimeUnit.SECONDS)) {
+                    throw new IOException("queries were not issued concurrently");
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return List.of(ts(expr.exprString()));
+        };
+        var fetcher = new DataFetcher(backend, 4, 4, Duration.ofSeconds(10), Duration.ZERO);
+        var exprs = IntStream.range(0, 4).mapToObj(i -> new DataExpr(String.valueOf(i))).toList();
+
+        assertThat(fetcher.fetch(context, exprs).data().size()).isEqualTo(4);
+    }
+
+    @Test
+    void fetchRespectsParallelism() throws Exception {
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        Backend backend = (ctx, expr) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(5);
+            inFlight.decrementAndGet();
+            return List.of();
+        };
+        var fetcher = new DataFetcher(backend, 2, 8, Duration.ofSeconds(10), Duration.ZERO);
+        var exprs = IntStream.range(0, 10).mapToObj(i -> new DataExpr(String.valueOf(i))).toList();
+
+        fetcher.fetch(context, exprs);
+
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void fetchAsynchronouslyWithinMaxConcurrency() throws Exception {
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        var backend = new Backend() {
+            @Override
+            public List<TimeSeries> query(EvalContext context, DataExpr expr) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<List<TimeSeries>> queryAsync(EvalContext context, DataExpr expr) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return CompletableFuture.supplyAsync(() -> {
+                    inFlight.decrementAndGet();
+                    return List.of(ts(expr.exprString()));
+                }, CompletableFuture.delayedExecutor(5, TimeUnit.MILLISECONDS));
+            }
+        };
+        var fetcher = new DataFetcher(backend, 8, 2, Duration.ofSeconds(10), Duration.ZERO);
+        var exprs = IntStream.range(0, 10).mapToObj(i -> new DataExpr(String.valueOf(i))).toList();
+
+        assertThat(fetcher.fetch(context, exprs).data().size()).isEqualTo(10);
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void fetchPropagatesFailure() {
+        Backend backend = (ctx, expr) -> {
+            if (expr.exprString().equals("1")) {
+                throw new IOException("boom");
+            }
+            return List.of();
+        };
+        var fetcher = new DataFetcher(backend, 4, 4, Duration.ofSeconds(10), Duration.ZERO);
+        var exprs = List.of(new DataExpr("0"), new DataExpr("1"));
+
+        assertThatThrownBy(() -> fetcher.fetch(context, exprs))
+                .isInstanceOf(IOException.class)
+                .hasMessage("boom");
+    }
+
+    @Test
+    void fetchEnforcesDeadline() {
+        Backend backend = (ctx, expr) -> {
+            sleep(5000);
+            return List.of();
+        };
+        var fetcher = new DataFetcher(backend, 4, 4, Duration.ofMillis(50), Duration.ZERO);
+        var exprs = List.of(new DataExpr("0"), new DataExpr("1"));
+
+        assertThatThrownBy(() -> fetcher.fetch(context, exprs))
+                .isInstanceOf(IOException.class)
+                .hasMessage("fetching data took longer than 50ms");
+    }
+
+    @Test
+    void fetchReturnsPartialResultsOnTimeout() throws Exception {
+        Backend backend = (ctx, expr) -> {
+            if (expr.exprString().equals("1")) {
+                sleep(5000);
+            }
+            return List.of(ts(expr.exprString()));
+        };
+        var fetcher = new DataFetcher(backend, 4, 4, Duration.ofMillis(200), Duration.ZERO);
+        var exprs = List.of(new DataExpr("0"), new DataExpr("1"), new DataExpr("2"));
+
+        var result = fetcher.fetch(context, exprs);
+
+        assertThat(result.data().keySet()).containsExactly(new DataExpr("0"), new DataExpr("2"));
+        assertThat(result.warnings()).containsExactly("Data is incomplete, 1 of 3 expressions could not be fetched in time.");
+    }
+
+    @Test
+    void fetchKeepsRenderReserve() {
+        Backend backend = (ctx, expr) -> {
+            sleep(5000);
+            return List.of();
+        };
+        var fetcher = new DataFetcher(backend, 4, 4, Duration.ofSeconds(10), Duration.ofMillis(900));
+        var deadlineContext = new EvalContext(0, 180000, 60000, Deadline.after(Duration.ofSeconds(1)));
+
+        // Only 100ms are left to fetch the data once the render reserve is deducted.
+        assertThatThrownBy(() -> fetcher.fetch(deadlineContext, List.of(new DataExpr("0"))))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("fetching data took longer than");
+    }
+
+    @Test
+    void fetchStopsOnCancellation() {
+        var started = new CountDownLatch(1);
+        var interrupted = new CountDownLatch(1);
+        Backend backend = (ctx, expr) -> {
+            started.countDown();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IOException(e);
+            }
+            return List.of();
+        };
+        var fetcher = new DataFetcher(backend, 4, 4, Duration.ofSeconds(10), Duration.ZERO);
+        var deadline = Deadline.none();
+        var cancellableContext = new EvalContext(0, 180000, 60000, deadline);
+        new Thread(() -> {
+            try {
+                started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            deadline.cancel();
+        }).start();
+
+        assertThatThrownBy(() -> fetcher.fetch(cancellableContext, List.of(new DataExpr("0"))))
+                .isInstanceOf(DeadlineExceededException.class)
+                .hasMessage("request was cancelled");
+        assertThat(awaitQuietly(interrupted)).isTrue();
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static TimeSeries ts(String label) {
+        return new TimeSeries(new ArrayTimeSeq(0, 60000, new double[]{1.0}), label, Map.of());
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
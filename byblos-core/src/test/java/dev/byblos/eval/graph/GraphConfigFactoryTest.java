@@ -8,6 +8,7 @@ import dev.byblos.chart.model.ExplicitBound;
 import dev.byblos.chart.model.PlotBound;
 import dev.byblos.model.ConstantExpr;
 import dev.byblos.model.StyleExpr;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -115,6 +116,31 @@ public class GraphConfigFactoryTest {
         return newGraphRequest(params, Map.of());
     }
 
+    @Test
+    void queryCache() {
+        var registry = new SimpleMeterRegistry();
+        var factory = new GraphConfigFactory(DefaultSettings.fromConfig(ConfigFactory.load()), registry);
+        var cfg1 = factory.toGraphConfig(newGraphRequest(Map.of("q", "42,:const")));
+        var cfg2 = factory.toGraphConfig(newGraphRequest(Map.of("q", "42,:const", "title", "foo")));
+        assertThat(cfg2.parsedQuery().get(0)).isSameAs(cfg1.parsedQuery().get(0));
+        // Queries are parsed with the time zone, which is part of the key.
+        var cfg3 = factory.toGraphConfig(newGraphRequest(Map.of("q", "42,:const", "tz", "UTC")));
+        assertThat(cfg3.parsedQuery().get(0)).isNotSameAs(cfg1.parsedQuery().get(0)).isEqualTo(cfg1.parsedQuery().get(0));
+        assertThat(registry.counter("byblos.graph.query.cache.requests", "result", "hit").count()).isEqualTo(1.0);
+        assertThat(registry.counter("byblos.graph.query.cache.requests", "result", "miss").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void queryCacheFailures() {
+        var registry = new SimpleMeterRegistry();
+        var factory = new GraphConfigFactory(DefaultSettings.fromConfig(ConfigFactory.load()), registry);
+        var cfg1 = factory.toGraphConfig(newGraphRequest(Map.of("q", "42,:foo")));
+        var cfg2 = factory.toGraphConfig(newGraphRequest(Map.of("q", "42,:foo")));
+        assertThat(cfg1.parseException()).isPresent();
+        assertThat(cfg2.parseException()).isEqualTo(cfg1.parseException());
+        assertThat(registry.counter("byblos.graph.query.cache.requests", "result", "hit").count()).isEqualTo(1.0);
+    }
+
     private static GraphRequest newGraphRequest(Map<String, String> params, Map<String, String> headers) {
         return new GraphRequest("/api/v1/graph", Multimaps.forMap(params), Multimaps.forMap(headers));
     }
@@ -1,11 +1,18 @@
 package dev.byblos.eval.graph;
 
+import com.google.common.collect.Multimaps;
 import com.typesafe.config.ConfigFactory;
 import dev.byblos.eval.backend.Backend;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.EvalContext;
+import dev.byblos.model.FunctionTimeSeq;
+import dev.byblos.model.TimeSeries;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -33,4 +40,49 @@ public class GrapherTest {
         assertThat(result.code()).isEqualTo(GraphResult.Code.USER_ERROR);
         assertThat(new String(result.data())).contains("expression generated no lines");
     }
+
+    @Test
+    void pushLimitDownToBackend() {
+        var backend = new RecordingBackend(true);
+        var result = new Grapher(defaultSettings, backend).evalAndRender(limitConfig());
+
+        assertThat(result.code()).isEqualTo(GraphResult.Code.OK);
+        assertThat(backend.queries).singleElement().asString().startsWith("(up) and topk(1, max_over_time((up)[");
+    }
+
+    @Test
+    void doNotPushLimitDownToUnsupportedBackend() {
+        var backend = new RecordingBackend(false);
+        var result = new Grapher(defaultSettings, backend).evalAndRender(limitConfig());
+
+        assertThat(result.code()).isEqualTo(GraphResult.Code.OK);
+        assertThat(backend.queries).containsExactly("up");
+    }
+
+    private GraphConfig limitConfig() {
+        var params = Map.of("q", "up,:query,max,:sort,desc,:order,1,:limit", "format", "csv");
+        return new GraphConfigFactory(defaultSettings).toGraphConfig(new GraphRequest("/api/v1/graph", Multimaps.forMap(params), Multimaps.forMap(Map.of())));
+    }
+
+    private static final class RecordingBackend implements Backend {
+        private final List<String> queries = new ArrayList<>();
+        private final boolean limitPushdown;
+
+        RecordingBackend(boolean limitPushdown) {
+            this.limitPushdown = limitPushdown;
+        }
+
+        @Override
+        public List<TimeSeries> query(EvalContext context, DataExpr expr) {
+            synchronized (queries) {
+                queries.add(expr.exprString());
+            }
+            return List.of(new TimeSeries(new FunctionTimeSeq(context.step(), t -> 1.0), "up", Map.of("__name__", "up")));
+        }
+
+        @Override
+        public boolean supportsLimitPushdown() {
+            return limitPushdown;
+        }
+    }
 }
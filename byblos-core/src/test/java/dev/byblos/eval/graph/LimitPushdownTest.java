@@ -0,0 +1,53 @@
+package dev.byblos.eval.graph;
+
+import com.google.common.collect.Multimaps;
+import com.typesafe.config.ConfigFactory;
+import dev.byblos.model.DataExpr;
+import dev.byblos.model.StyleExpr;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link LimitPushdown}.
+ */
+public class LimitPushdownTest {
+    private final GraphConfigFactory factory = new GraphConfigFactory(DefaultSettings.fromConfig(ConfigFactory.load()));
+
+    @Test
+    void rewriteTopk() {
+        var expr = rewrite("up,:query,max,:sort,desc,:order,3,:limit");
+
+        assertThat(expr.expr()).isEqualTo(new DataExpr("(up) and topk(3, max_over_time((up)[3600000ms:60000ms] @ 1672534800.000))"));
+    }
+
+    @Test
+    void rewriteBottomk() {
+        var expr = rewrite("up{job=\"a\"},:query,avg,:sort,5,:limit");
+
+        assertThat(expr.expr()).isEqualTo(new DataExpr("(up{job=\"a\"}) and bottomk(5, avg_over_time((up{job=\"a\"})[3600000ms:60000ms] @ 1672534800.000))"));
+        assertThat(expr.settings()).isEqualTo(Map.of("sort", "avg", "limit", "5"));
+    }
+
+    @Test
+    void keepLocalPath() {
+        // No limit, sort by legend, not a data expression, or ranking empty series first.
+        for (var q : new String[]{"up,:query,max,:sort", "up,:query,5,:limit", "up,:query,legend,:sort,5,:limit", "42,:const,max,:sort,5,:limit", "up,:query,count,:sort,5,:limit"}) {
+            var config = newConfig(q);
+            var expr = config.parsedQuery().get(0);
+            assertThat(LimitPushdown.rewrite(expr, config)).isSameAs(expr);
+        }
+    }
+
+    private StyleExpr rewrite(String q) {
+        var config = newConfig(q);
+        return LimitPushdown.rewrite(config.parsedQuery().get(0), config);
+    }
+
+    private GraphConfig newConfig(String q) {
+        var params = Map.of("q", q, "s", "2023-01-01T00:00", "e", "2023-01-01T01:00", "tz", "UTC", "step", "1m");
+        return factory.toGraphConfig(new GraphRequest("/api/v1/graph", Multimaps.forMap(params), Multimaps.forMap(Map.of())));
+    }
+}
@@ -3,6 +3,10 @@ package dev.byblos.model;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * Unit tests for {@link ArrayTimeSeq}.
  */
@@ -16,4 +20,45 @@ public class ArrayTimeSeqTest {
                 .withIgnoredFields("end")
                 .verify();
     }
+
+    @Test
+    void copyTo() {
+        var seq = new ArrayTimeSeq(120, 60, new double[]{1.0, 2.0, 3.0});
+        assertThat(copy(seq, 120, 300)).containsExactly(1.0, 2.0, 3.0);
+        assertThat(copy(seq, 180, 240)).containsExactly(2.0);
+        assertThat(copy(seq, 0, 420)).containsExactly(Double.NaN, Double.NaN, 1.0, 2.0, 3.0, Double.NaN, Double.NaN);
+        assertThat(copy(seq, 0, 60)).containsExactly(Double.NaN);
+        assertThat(copy(seq, 600, 720)).containsExactly(Double.NaN, Double.NaN);
+        assertThat(copy(seq, 150, 150)).isEmpty();
+    }
+
+    @Test
+    void copyToMatchesGet() {
+        var seq = new ArrayTimeSeq(120, 60, new double[]{1.0, 2.0, 3.0});
+        var view = new FunctionTimeSeq(60, seq::get);
+        for (var s = -120; s < 480; s += 30) {
+            for (var e = s; e < 600; e += 30) {
+                assertThat(copy(seq, s, e)).containsExactly(copy(view, s, e));
+                assertThat(collect(seq, s, e)).containsExactly(collect(view, s, e));
+            }
+        }
+    }
+
+    @Test
+    void bounded() {
+        var seq = new ArrayTimeSeq(120, 60, new double[]{1.0, 2.0, 3.0});
+        assertThat(seq.bounded(60, 240)).isEqualTo(new ArrayTimeSeq(60, 60, new double[]{Double.NaN, 1.0, 2.0}));
+    }
+
+    private static double[] copy(TimeSeq seq, long s, long e) {
+        var values = new double[seq.size(s, e)];
+        assertThat(seq.copyTo(values, s, e)).isEqualTo(values.length);
+        return values;
+    }
+
+    private static Double[] collect(TimeSeq seq, long s, long e) {
+        var values = new ArrayList<Double>();
+        seq.forEach(s, e, values::add);
+        return values.toArray(new Double[0]);
+    }
 }
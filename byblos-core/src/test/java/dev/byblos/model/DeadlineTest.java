@@ -0,0 +1,69 @@
+package dev.byblos.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link Deadline}.
+ */
+public class DeadlineTest {
+    @Test
+    void none() {
+        var deadline = Deadline.none();
+        assertThat(deadline.isExpired()).isFalse();
+        assertThat(deadline.remaining(Duration.ofMinutes(1))).isEqualTo(Duration.ofMinutes(1));
+        deadline.check();
+    }
+
+    @Test
+    void after() {
+        var deadline = Deadline.after(Duration.ofMinutes(1));
+        assertThat(deadline.isExpired()).isFalse();
+        assertThat(deadline.remaining(Duration.ofMinutes(2))).isLessThanOrEqualTo(Duration.ofMinutes(1)).isPositive();
+        assertThat(deadline.remaining(Duration.ofSeconds(1))).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void expired() {
+        var deadline = Deadline.after(Duration.ZERO);
+        assertThat(deadline.isExpired()).isTrue();
+        assertThat(deadline.isCancelled()).isFalse();
+        assertThat(deadline.remaining(Duration.ofMinutes(1))).isZero();
+        assertThatThrownBy(deadline::check)
+                .isInstanceOf(DeadlineExceededException.class)
+                .hasMessage("request deadline exceeded");
+    }
+
+    @Test
+    void cancel() {
+        var deadline = Deadline.none();
+        var notified = new AtomicInteger();
+        deadline.onCancel(notified::incrementAndGet);
+        var unregister = deadline.onCancel(notified::incrementAndGet);
+        unregister.run();
+
+        deadline.cancel();
+        deadline.cancel();
+
+        assertThat(notified.get()).isEqualTo(1);
+        assertThat(deadline.isExpired()).isTrue();
+        assertThat(deadline.remaining(Duration.ofMinutes(1))).isZero();
+        assertThatThrownBy(deadline::check)
+                .isInstanceOf(DeadlineExceededException.class)
+                .hasMessage("request was cancelled");
+    }
+
+    @Test
+    void onCancelAfterCancellation() {
+        var deadline = Deadline.none();
+        deadline.cancel();
+        var notified = new AtomicInteger();
+        deadline.onCancel(notified::incrementAndGet);
+        assertThat(notified.get()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,124 @@
+package dev.byblos.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link TagMap}.
+ */
+public class TagMapTest {
+    @Test
+    void get() {
+        var tags = TagMap.of(Map.of("job", "node", "instance", "a:9100", "__name__", "up"));
+        assertThat(tags).hasSize(3);
+        assertThat(tags.get("job")).isEqualTo("node");
+        assertThat(tags.get("instance")).isEqualTo("a:9100");
+        assertThat(tags.get("__name__")).isEqualTo("up");
+        assertThat(tags.get("foo")).isNull();
+        assertThat(tags.get(42)).isNull();
+        assertThat(tags.containsKey("job")).isTrue();
+        assertThat(tags.containsKey("foo")).isFalse();
+    }
+
+    @Test
+    void sortedByKey() {
+        var tags = TagMap.builder().put("c", "3").put("a", "1").put("b", "2").build();
+        assertThat(List.copyOf(tags.keySet())).containsExactly("a", "b", "c");
+        assertThat(List.copyOf(tags.values())).containsExactly("1", "2", "3");
+    }
+
+    @Test
+    void lastValueWins() {
+        var tags = TagMap.builder().put("b", "1").put("a", "1").put("b", "2").put("b", "3").build();
+        assertThat(tags).isEqualTo(Map.of("a", "1", "b", "3"));
+    }
+
+    @Test
+    void equalsOtherMaps() {
+        var map = new HashMap<String, String>();
+        map.put("a", "1");
+        map.put("b", "2");
+        var tags = TagMap.of(map);
+        assertThat(tags).isEqualTo(map);
+        assertThat(map).isEqualTo(tags);
+        assertThat(tags.hashCode()).isEqualTo(map.hashCode());
+        assertThat(tags).isNotEqualTo(Map.of("a", "1"));
+    }
+
+    @Test
+    void canonical() {
+        var a = TagMap.of(Map.of("job", "node", "instance", "a"));
+        var b = TagMap.builder().put("instance", new String("a")).put("job", new String("node")).build();
+        assertThat(b).isSameAs(a);
+        assertThat(TagMap.of(new HashMap<>())).isSameAs(TagMap.empty());
+        assertThat(TagMap.of(a)).isSameAs(a);
+    }
+
+    @Test
+    void internedStrings() {
+        var value = new String("node");
+        assertThat(TagMap.intern(value)).isSameAs(TagMap.intern("node"));
+        var tags = TagMap.builder().put("job", new String("node")).put("env", "prod").build();
+        assertThat(tags.get("job")).isSameAs(TagMap.intern("node"));
+    }
+
+    @Test
+    void without() {
+        var tags = TagMap.of(Map.of("__name__", "up", "job", "node"));
+        assertThat(tags.without("__name__")).isSameAs(TagMap.of(Map.of("job", "node")));
+        assertThat(tags.without("foo")).isSameAs(tags);
+        assertThat(tags.without("__name__").without("job")).isSameAs(TagMap.empty());
+    }
+
+    @Test
+    void defaultLabel() {
+        assertThat(TagMap.empty().defaultLabel()).isEqualTo("NO TAGS");
+        var tags = TagMap.of(Map.of("b", "2", "a", "1"));
+        assertThat(tags.defaultLabel()).isEqualTo("a=1, b=2");
+        assertThat(tags.defaultLabel()).isSameAs(tags.defaultLabel());
+    }
+
+    @Test
+    void substitute() {
+        var tags = TagMap.of(Map.of("job", "node", "avg", "tag"));
+        assertThat(tags.substitute("$job $foo", Map.of())).isEqualTo("node foo");
+        assertThat(tags.substitute("$job $avg", Map.of())).isSameAs(tags.substitute("$job $avg", Map.of()));
+        assertThat(tags.substitute("$job $avg", Map.of("avg", "1.0"))).isEqualTo("node 1.0");
+        assertThat(tags.substitute("$job $avg", Map.of("avg", "2.0"))).isEqualTo("node 2.0");
+        assertThat(tags.substitute("$job $avg", Map.of())).isEqualTo("node tag");
+    }
+
+    @Test
+    void substituteDoesNotCacheMissingVariables() {
+        var tags = TagMap.of(Map.of("job", "node"));
+        assertThat(tags.substitute("$job $max", Map.of())).isEqualTo("node max");
+        assertThat(tags.substitute("$job $max", Map.of("max", "3.0"))).isEqualTo("node 3.0");
+    }
+
+    @Test
+    void substituteOverridesCachedTags() {
+        var tags = TagMap.of(Map.of("job", "node", "avg", "tag"));
+        assertThat(tags.substitute("$job $avg", Map.of())).isEqualTo("node tag");
+        assertThat(tags.substitute("$job $avg", Map.of("avg", "1.0"))).isEqualTo("node 1.0");
+    }
+
+    @Test
+    void immutable() {
+        var tags = TagMap.of(Map.of("a", "1"));
+        assertThatThrownBy(() -> tags.put("b", "2")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> tags.entrySet().iterator().next().setValue("2")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void nullValues() {
+        var map = new HashMap<String, String>();
+        map.put("a", null);
+        assertThatThrownBy(() -> TagMap.of(map)).isInstanceOf(NullPointerException.class);
+    }
+}
@@ -49,10 +49,11 @@ public class FreezeTest {
         assertThat(context.frozenStack()).isEmpty();
     }
 
-    /* TODO: test("freeze works with macros") {
+    @Test
+    void freezeWorksWithMacros() throws Exception {
         // Before macros would force unfreeze after execution
-        val context = interpreter.execute("a,b,:freeze,d,e,:2over,:clear")
-        assertEquals(context.stack, List("b", "a"))
-        assert(context.frozenStack.isEmpty)
-    }*/
+        var context = interpreter.execute("a,b,:freeze,d,e,:2over,:clear");
+        assertThat(context.stack()).containsExactly("b", "a");
+        assertThat(context.frozenStack()).isEmpty();
+    }
 }
@@ -2,7 +2,11 @@ package dev.byblos.stacklang;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -122,6 +126,21 @@ public class InterpreterTest {
         assertEquals(ctx, newContext(Stack.of(List.of("2"), List.of("1"))));
     }
 
+    @Test
+    void longProgram() throws Exception {
+        // Would overflow the call stack if tokens were executed recursively.
+        var program = new ArrayList<Object>();
+        for (var i = 0; i < 100_000; i++) {
+            program.add(i % 2 == 0 ? ":push-foo" : String.valueOf(i));
+        }
+        program.addAll(List.of("(", "a", "(", "b", ")", ")"));
+        var ctx = interpreter.execute(program);
+        assertThat(ctx.stack().size()).isEqualTo(100_001);
+        assertThat(ctx.stack().get(0)).isEqualTo(List.of("a", "(", "b", ")"));
+        assertThat(ctx.stack().get(1)).isEqualTo("99999");
+        assertThat(ctx.stack().get(2)).isEqualTo("foo");
+    }
+
     @Test
     void debug() throws Exception {
         var steps = interpreter.debug(List.of("(", "1", ")", "(", "2", ")"));
@@ -132,6 +151,34 @@ public class InterpreterTest {
         );
     }
 
+    @Test
+    void debugLongProgram() throws Exception {
+        var program = new ArrayList<Object>();
+        for (var i = 0; i < 100_000; i++) {
+            program.add(String.valueOf(i));
+        }
+        var steps = interpreter.debug(program);
+        assertThat(steps).hasSize(100_001);
+        assertThat(steps.get(100_000).context().stack().size()).isEqualTo(100_000);
+        assertThat(steps.get(100_000).program()).isEmpty();
+        // Stacks share the items pushed by the previous steps.
+        assertThat(steps.get(100_000).context().stack().drop(1)).isSameAs(steps.get(99_999).context().stack());
+    }
+
+    @Test
+    void debugMaxSteps() throws Exception {
+        var program = List.<Object>of("1", "2", "3", "4");
+        var steps = interpreter.debug(program, Context.initial(interpreter), 3);
+        assertThat(steps).containsExactly(
+                new Interpreter.Step(List.of("1", "2", "3", "4"), newContext(Stack.of())),
+                new Interpreter.Step(List.of("2", "3", "4"), newContext(Stack.of("1"))),
+                new Interpreter.Step(List.of(), newContext(Stack.of("4", "3", "2", "1")))
+        );
+        assertThat(interpreter.debug(program, Context.initial(interpreter), 5)).hasSize(5);
+        assertThatThrownBy(() -> interpreter.debug(program, Context.initial(interpreter), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     void toStringShouldRenderProgram() {
         assertThat(interpreter.toString()).isEqualTo("Interpreter(9 words)");
@@ -229,6 +276,78 @@ public class InterpreterTest {
         assertThat(actual).isEqualTo(List.of("(", "b", "c", ")"));
     }
 
+    @Test
+    void splitAndTrimEquivalence() {
+        // Random programs made of the characters that matter to the tokenizer, compared with
+        // the previous implementation.
+        var alphabet = "ab:,,,  \t\n(((())))[]{}".toCharArray();
+        var random = new Random(42);
+        for (var i = 0; i < 100_000; i++) {
+            var chars = new char[random.nextInt(24)];
+            for (var j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            var program = new String(chars);
+            Object expected;
+            try {
+                expected = referenceSplitAndTrim(program);
+            } catch (InvalidSyntaxException e) {
+                expected = e.getMessage();
+            }
+            Object actual;
+            try {
+                actual = Interpreter.splitAndTrim(program);
+            } catch (InvalidSyntaxException e) {
+                actual = e.getMessage();
+            }
+            assertThat(actual).as(program).isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Previous implementation of {@link Interpreter#splitAndTrim(String)}.
+     */
+    private static List<Object> referenceSplitAndTrim(String str) throws InvalidSyntaxException {
+        var blocks = Map.of('(', ')', '{', '}', '[', ']');
+        var stack = new LinkedList<Character>();
+        var sb = new StringBuilder();
+        var tokens = new ArrayList<Object>();
+        var chars = str.toCharArray();
+        for (var i = 0; i < chars.length; i++) {
+            var c = chars[i];
+            if (stack.isEmpty() && c == ',') {
+                addIfNotEmpty(sb, tokens);
+                sb.setLength(0);
+            } else {
+                var parenCommand = (c == '(' || c == ')')
+                        && (i == 0 || chars[i - 1] == ',')
+                        && (i >= chars.length - 1 || chars[i + 1] == ',');
+                if (parenCommand) {
+                    // Do not fall in the following cases.
+                } else if (blocks.containsKey(c)) {
+                    stack.push(blocks.get(c));
+                } else if (blocks.containsValue(c)) {
+                    if (stack.isEmpty() || stack.pop() != c) {
+                        throw new InvalidSyntaxException(String.format("unmatched closing character '%s'", c));
+                    }
+                }
+                sb.append(c);
+            }
+        }
+        if (!stack.isEmpty()) {
+            throw new InvalidSyntaxException("unmatched opening character");
+        }
+        addIfNotEmpty(sb, tokens);
+        return tokens;
+    }
+
+    private static void addIfNotEmpty(StringBuilder sb, List<Object> tokens) {
+        var s = sb.toString().trim();
+        if (!s.isEmpty()) {
+            tokens.add(s);
+        }
+    }
+
     @Test
     void splitAndTrimListUnmatchedParen() throws Exception {
         // No error is thrown at this level for unmatched parens.
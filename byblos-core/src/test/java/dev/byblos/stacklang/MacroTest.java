@@ -0,0 +1,81 @@
+package dev.byblos.stacklang;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link Macro}.
+ */
+public class MacroTest {
+    private final Macro dup2 = new Macro("dup2", List.of(":dup", ":dup"));
+    private final Macro wrap = new Macro("wrap", List.of("(", "a", "(", "b", ")", ")", ":dup2"));
+    private final Macro loop = new Macro("loop", List.of(":loop"));
+    private final Macro unknown = new Macro("unknown", List.of("a", ":foo"));
+    private final Macro unmatched = new Macro("unmatched", List.of("(", "a"));
+    private final Interpreter interpreter = new Interpreter(ImmutableList.<Word>builder()
+            .addAll(StandardVocabulary.INSTANCE.allWords())
+            .add(dup2, wrap, loop, unknown, unmatched)
+            .build());
+
+    @Test
+    void execute() throws Exception {
+        var context = interpreter.execute("x,:dup2");
+        assertThat(context.stack()).containsExactly("x", "x", "x");
+    }
+
+    @Test
+    void nestedMacrosAreInlined() throws Exception {
+        var compiled = interpreter.compiled(wrap);
+        assertThat(compiled.instructions()).hasSize(3);
+        assertThat(compiled.instructions().get(0)).isEqualTo(new CompiledMacro.Push(List.of("a", "(", "b", ")")));
+        assertThat(compiled.instructions().get(1)).isInstanceOfSatisfying(CompiledMacro.Call.class, c -> {
+            assertThat(c.name()).isEqualTo("dup");
+            assertThat(c.overloads()).isNotNull();
+        });
+        assertThat(compiled.program()).containsExactly("(", "a", "(", "b", ")", ")", ":dup", ":dup");
+
+        var context = interpreter.execute(":wrap");
+        assertThat(context.stack()).containsExactly(List.of("a", "(", "b", ")"), List.of("a", "(", "b", ")"), List.of("a", "(", "b", ")"));
+    }
+
+    @Test
+    void macroProgram() throws Exception {
+        var step = new Interpreter.Step(List.of(":wrap", "x"), Context.initial(interpreter));
+        assertThat(interpreter.macroProgram(step)).contains(List.of("(", "a", "(", "b", ")", ")", ":dup", ":dup"));
+        var notMacro = new Interpreter.Step(List.of(":dup"), interpreter.execute("x"));
+        assertThat(interpreter.macroProgram(notMacro)).isEmpty();
+        var literal = new Interpreter.Step(List.of("x"), Context.initial(interpreter));
+        assertThat(interpreter.macroProgram(literal)).isEmpty();
+    }
+
+    @Test
+    void recursiveMacroIsNotInlined() throws Exception {
+        var compiled = interpreter.compiled(loop);
+        assertThat(compiled.program()).containsExactly(":loop");
+    }
+
+    @Test
+    void unknownWord() {
+        assertThatThrownBy(() -> interpreter.execute(":unknown"))
+                .isInstanceOf(InvalidSyntaxException.class)
+                .hasMessage("unknown word ':foo'");
+    }
+
+    @Test
+    void unmatchedParenthesis() {
+        assertThatThrownBy(() -> interpreter.execute(":unmatched"))
+                .isInstanceOf(InvalidSyntaxException.class)
+                .hasMessage("unmatched opening parenthesis");
+    }
+
+    @Test
+    void macroOutsideOfVocabulary() throws Exception {
+        var context = new Interpreter(StandardVocabulary.INSTANCE.allWords()).execute(List.of("x"));
+        assertThat(dup2.execute(context).stack()).containsExactly("x", "x", "x");
+    }
+}
@@ -0,0 +1,86 @@
+package dev.byblos.stacklang;
+
+import dev.byblos.model.TypeUtils;
+import dev.byblos.stacklang.StackPattern.Param;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link Overloads}.
+ */
+public class OverloadsTest {
+    private final PatternWord intWord = new PatternWord("int", StackPattern.of(TypeUtils.INT));
+    private final PatternWord stringWord = new PatternWord("string", StackPattern.of(TypeUtils.STRING));
+    private final PatternWord anyWord = new PatternWord("any", StackPattern.of(Param.ANY));
+    private final PatternWord emptyWord = new PatternWord("empty", StackPattern.of());
+    private final Overloads overloads = new Overloads(List.of(intWord, stringWord, anyWord, emptyWord));
+
+    @Test
+    void firstMatch() {
+        assertThat(overloads.select(Stack.of("42"))).containsSame(intWord);
+        assertThat(overloads.select(Stack.of(42))).containsSame(intWord);
+        assertThat(overloads.select(Stack.of("foo"))).containsSame(stringWord);
+        assertThat(overloads.select(Stack.of(1.0))).containsSame(anyWord);
+        assertThat(overloads.select(Stack.of())).containsSame(emptyWord);
+    }
+
+    @Test
+    void noMatch() {
+        var overloads = new Overloads(List.of(intWord, stringWord));
+        assertThat(overloads.select(Stack.of(1.0))).isEmpty();
+        assertThat(overloads.select(Stack.of())).isEmpty();
+    }
+
+    @Test
+    void onlyValuesAreChecked() {
+        overloads.select(Stack.of("foo"));
+        overloads.select(Stack.of("bar"));
+        overloads.select(Stack.of(42));
+        overloads.select(Stack.of(List.of()));
+        // Integers and lists are resolved from their class, strings need to be parsed.
+        assertThat(intWord.checks.get()).isEqualTo(2);
+        assertThat(stringWord.checks.get()).isZero();
+        assertThat(anyWord.checks.get()).isZero();
+    }
+
+    @Test
+    void wordsWithoutPattern() {
+        var custom = new AbstractWord("custom", "a -- a") {
+            @Override
+            public boolean matches(Stack stack) {
+                return stack.matches(v -> v.equals("x"));
+            }
+
+            @Override
+            public Context execute(Context context) {
+                return context;
+            }
+        };
+        var overloads = new Overloads(List.of(custom, stringWord));
+        assertThat(overloads.select(Stack.of("x"))).containsSame(custom);
+        assertThat(overloads.select(Stack.of("y"))).containsSame(stringWord);
+    }
+
+    private static final class PatternWord extends AbstractWord {
+        private final AtomicInteger checks = new AtomicInteger();
+
+        PatternWord(String name, StackPattern pattern) {
+            super(name, name, pattern);
+        }
+
+        @Override
+        public boolean matches(Stack stack) {
+            checks.incrementAndGet();
+            return super.matches(stack);
+        }
+
+        @Override
+        public Context execute(Context context) {
+            return context;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dev.byblos.stacklang;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link Stack}.
+ */
+public class StackTest {
+    @Test
+    void push() {
+        var base = Stack.of("b", "a");
+        var stack = base.push("c");
+        assertThat(stack).containsExactly("c", "b", "a");
+        assertThat(stack.size()).isEqualTo(3);
+        assertThat(base).containsExactly("b", "a");
+    }
+
+    @Test
+    void drop() {
+        var stack = Stack.of("c", "b", "a");
+        assertThat(stack.drop(2)).containsExactly("a");
+        assertThat(stack.drop(5).isEmpty()).isTrue();
+        assertThat(stack.popAndPush(2, "d")).containsExactly("d", "a");
+        assertThat(stack.dropRight(1)).containsExactly("c", "b");
+    }
+
+    @Test
+    void pushRight() {
+        assertThat(Stack.of("b", "a").pushRight("z")).containsExactly("b", "a", "z");
+    }
+
+    @Test
+    void concat() {
+        assertThat(Stack.of("b", "a").concat(Stack.of("y", "x"))).containsExactly("b", "a", "y", "x");
+        assertThat(Stack.of().concat(Stack.of("x"))).containsExactly("x");
+    }
+
+    @Test
+    void reverse() {
+        assertThat(Stack.of("c", "b", "a").reverse()).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void get() {
+        var stack = Stack.of("c", "b", "a");
+        assertThat(stack.get(0)).isEqualTo("c");
+        assertThat(stack.get(2)).isEqualTo("a");
+        assertThatThrownBy(() -> stack.get(3)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void matches() {
+        var stack = Stack.of("c", 1);
+        assertThat(stack.matches(String.class::isInstance, Integer.class::isInstance)).isTrue();
+        assertThat(stack.matches(Integer.class::isInstance)).isFalse();
+        assertThat(stack.matches(String.class::isInstance, Integer.class::isInstance, String.class::isInstance)).isFalse();
+    }
+
+    @Test
+    void equality() {
+        var base = Stack.of("a");
+        assertThat(base.push("b")).isEqualTo(Stack.of("b", "a"));
+        assertThat(base.push("b")).isEqualTo(base.push("b"));
+        assertThat(base.push("b").hashCode()).isEqualTo(Stack.of("b", "a").hashCode());
+        assertThat(base.push("b")).isNotEqualTo(base.push("c"));
+        assertThat(base.push("b").items()).isEqualTo(List.of("b", "a"));
+    }
+
+    @Test
+    void largeStack() {
+        var stack = Stack.of();
+        for (var i = 0; i < 1_000_000; i++) {
+            stack = stack.push(i);
+        }
+        assertThat(stack.size()).isEqualTo(1_000_000);
+        assertThat(stack.stream().count()).isEqualTo(1_000_000);
+        assertThat(stack.get(0)).isEqualTo(999_999);
+    }
+}
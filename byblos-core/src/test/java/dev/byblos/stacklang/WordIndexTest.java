@@ -0,0 +1,76 @@
+package dev.byblos.stacklang;
+
+import dev.byblos.model.TypeUtils;
+import dev.byblos.stacklang.StackPattern.Param;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link WordIndex}.
+ */
+public class WordIndexTest {
+    private final CountingWord intWord = new CountingWord("int", StackPattern.of(TypeUtils.INT));
+    private final CountingWord stringWord = new CountingWord("string", StackPattern.of(Param.instanceOf(String.class)));
+    private final CountingWord twoWord = new CountingWord("two", StackPattern.of(Param.ANY, Param.ANY));
+    private final CountingWord emptyWord = new CountingWord("empty", StackPattern.of());
+    private final WordIndex index = new WordIndex(List.of(intWord, stringWord, twoWord, emptyWord));
+
+    @Test
+    void allMatchingWords() {
+        assertThat(index.matching(Stack.of("42"))).containsExactly(intWord, stringWord, emptyWord);
+        assertThat(index.matching(Stack.of("foo", 1.0))).containsExactly(stringWord, twoWord, emptyWord);
+        assertThat(index.matching(Stack.of(1.0))).containsExactly(emptyWord);
+        assertThat(index.matching(Stack.of())).containsExactly(emptyWord);
+    }
+
+    @Test
+    void onlyValuesAreChecked() {
+        index.matching(Stack.of("foo", "bar"));
+        // Only the word accepting integers as strings depends on the value.
+        assertThat(intWord.checks.get()).isEqualTo(1);
+        assertThat(stringWord.checks.get()).isZero();
+        assertThat(twoWord.checks.get()).isZero();
+        assertThat(emptyWord.checks.get()).isZero();
+    }
+
+    @Test
+    void wordsWithoutPattern() {
+        var word = new AbstractWord("custom", "a -- a") {
+            @Override
+            public boolean matches(Stack stack) {
+                return stack.matches(v -> v.equals("a"));
+            }
+
+            @Override
+            public Context execute(Context context) {
+                return context;
+            }
+        };
+        var index = new WordIndex(List.of(word));
+        assertThat(index.matching(Stack.of("a"))).containsExactly(word);
+        assertThat(index.matching(Stack.of("b"))).isEmpty();
+    }
+
+    private static final class CountingWord extends AbstractWord {
+        private final AtomicInteger checks = new AtomicInteger();
+
+        private CountingWord(String name, StackPattern pattern) {
+            super(name, "?", pattern);
+        }
+
+        @Override
+        public boolean matches(Stack stack) {
+            checks.incrementAndGet();
+            return super.matches(stack);
+        }
+
+        @Override
+        public Context execute(Context context) {
+            return context;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package dev.byblos.webapi;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.iep.config.ConfigManager;
 import com.netflix.iep.service.ClassFactory;
 import com.netflix.iep.service.DefaultClassFactory;
@@ -13,6 +14,9 @@ import dev.byblos.webapi.security.SecuritySettings;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @Configuration
 public class ApiConfiguration {
     @Bean
@@ -55,6 +59,11 @@ public class ApiConfiguration {
         return backendFactory.newInstance();
     }
 
+    @Bean(destroyMethod = "shutdownNow")
+    ExecutorService graphExecutor(ApiSettings apiSettings) {
+        return Executors.newFixedThreadPool(apiSettings.graphThreads(), new ThreadFactoryBuilder().setNameFormat("byblos-graph-%d").setDaemon(true).build());
+    }
+
     @Bean
     Grapher grapher(DefaultSettings settings, Backend backend) {
         return new Grapher(settings, backend);
@@ -8,9 +8,15 @@ import java.util.Set;
 
 public final class ApiSettings {
     private final Set<String> excludedWords;
+    private final int completeCacheSize;
+    private final int graphThreads;
+    private final int debugMaxSteps;
 
     public ApiSettings(Config config) {
         this.excludedWords = ImmutableSet.copyOf(config.getStringList("expr.complete.excluded-words"));
+        this.completeCacheSize = config.getInt("expr.complete.cache-size");
+        this.graphThreads = config.getInt("graph.threads");
+        this.debugMaxSteps = config.getInt("expr.debug.max-steps");
     }
 
     public static ApiSettings fromConfig(Config root) {
@@ -20,4 +26,16 @@ public final class ApiSettings {
     public Set<String> excludedWords() {
         return excludedWords;
     }
+
+    public int completeCacheSize() {
+        return completeCacheSize;
+    }
+
+    public int graphThreads() {
+        return graphThreads;
+    }
+
+    public int debugMaxSteps() {
+        return debugMaxSteps;
+    }
 }
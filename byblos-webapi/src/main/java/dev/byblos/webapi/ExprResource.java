@@ -1,5 +1,7 @@
 package dev.byblos.webapi;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
@@ -22,7 +24,6 @@ import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import static dev.byblos.model.TypeUtils.isPresentationType;
@@ -30,17 +31,26 @@ import static dev.byblos.model.TypeUtils.isPresentationType;
 @Controller
 public final class ExprResource {
     private final Vocabulary vocabulary;
-    private final Map<String, Vocabulary> vocabularies;
-    private final Set<String> excludedWords;
+    private final Map<String, Interpreter> interpreters;
+    private final Map<String, WordIndex> completions;
+    private final Cache<CompletionKey, List<Map<String, String>>> completionCache;
+    private final int debugMaxSteps;
 
     @Autowired
     public ExprResource(ApiSettings apiSettings, DefaultSettings defaultSettings) {
         vocabulary = defaultSettings.vocabulary();
-        var vocabularies = ImmutableMap.<String, Vocabulary>builder();
-        vocabulary.dependencies().forEach(v -> vocabularies.put(v.name(), v));
-        vocabularies.put(vocabulary.name(), vocabulary);
-        this.vocabularies = vocabularies.build();
-        excludedWords = apiSettings.excludedWords();
+        // Interpreters are created once, as macros are compiled along with them.
+        var interpreters = ImmutableMap.<String, Interpreter>builder();
+        vocabulary.dependencies().forEach(v -> interpreters.put(v.name(), new Interpreter(v.allWords())));
+        interpreters.put(vocabulary.name(), new Interpreter(vocabulary.allWords()));
+        this.interpreters = interpreters.build();
+        var excludedWords = apiSettings.excludedWords();
+        completions = ImmutableMap.copyOf(Maps.transformValues(this.interpreters, i -> new WordIndex(i.vocabulary()
+                .stream()
+                .filter(w -> !excludedWords.contains(w.name()))
+                .toList())));
+        completionCache = CacheBuilder.newBuilder().maximumSize(apiSettings.completeCacheSize()).build();
+        debugMaxSteps = apiSettings.debugMaxSteps();
     }
 
     @ExceptionHandler({InvalidSyntaxException.class, IllegalArgumentException.class})
@@ -53,8 +63,8 @@ public final class ExprResource {
             @RequestParam("q") String query,
             @RequestParam(value = "vocab", required = false) String vocabName
     ) throws InvalidSyntaxException {
-        var interpreter = newInterpreter(vocabName);
-        var execSteps = interpreter.debug(query);
+        var interpreter = getInterpreter(vocabName);
+        var execSteps = interpreter.debug(Interpreter.splitAndTrim(query), Context.initial(interpreter), debugMaxSteps);
         if (!execSteps.isEmpty()) {
             verifyStackContents(vocabName, Iterables.getLast(execSteps).context().stack());
         }
@@ -62,7 +72,10 @@ public final class ExprResource {
             var stack = step.context().stack().stream().map(ExprResource::valueString).toList();
             var vars = Maps.transformValues(step.context().variables(), ExprResource::valueString);
             var ctxt = Map.of("stack", stack, "variables", vars);
-            return Map.of("program", step.program(), "context", ctxt);
+            var result = ImmutableMap.<String, Object>builder().put("program", step.program()).put("context", ctxt);
+            // Show the compiled body when the next word is a macro.
+            interpreter.macroProgram(step).ifPresent(p -> result.put("macro", p));
+            return result.build();
         });
         return ResponseEntity.ok(steps);
     }
@@ -100,13 +113,23 @@ public final class ExprResource {
             @RequestParam("q") String query,
             @RequestParam(value = "vocab", required = false) String vocabName
     ) throws InvalidSyntaxException {
-        var interpreter = newInterpreter(vocabName);
+        var interpreter = getInterpreter(vocabName);
         var result = interpreter.execute(query);
-        var descriptions = interpreter.vocabulary()
-                .stream()
-                .filter(w -> matches(interpreter, w, result))
-                .map(w -> Map.of("name", w.name(), "signature", w.signature()))
-                .collect(Collectors.toList());
+        // Candidates are still validated by executing them, which is only done once for a
+        // given context. It is done outside the cache so that other keys are not blocked
+        // meanwhile, concurrent requests for the same context computing the same result.
+        var name = getVocabularyName(vocabName);
+        var key = new CompletionKey(name, result);
+        var descriptions = completionCache.getIfPresent(key);
+        if (null == descriptions) {
+            descriptions = completions.get(name)
+                    .matching(result.stack())
+                    .stream()
+                    .filter(w -> execWorks(interpreter, w, result))
+                    .map(w -> Map.of("name", w.name(), "signature", w.signature()))
+                    .toList();
+            completionCache.put(key, descriptions);
+        }
         return ResponseEntity.ok(descriptions);
     }
 
@@ -127,12 +150,12 @@ public final class ExprResource {
         return (vocabName == null) ? vocabulary.name() : vocabName;
     }
 
-    private Interpreter newInterpreter(@Nullable String vocabName) {
-        var vocab = vocabularies.get(getVocabularyName(vocabName));
-        if (null == vocab) {
+    private Interpreter getInterpreter(@Nullable String vocabName) {
+        var interpreter = interpreters.get(getVocabularyName(vocabName));
+        if (null == interpreter) {
             throw new IllegalArgumentException("unknown vocabulary [" + vocabName + "]");
         }
-        return new Interpreter(vocab.allWords());
+        return interpreter;
     }
 
     private static StyleExpr normalizeLegendVars(StyleExpr expr) {
@@ -156,7 +179,7 @@ public final class ExprResource {
     }
 
     private List<StyleExpr> evaluate(String expr, @Nullable String vocabName) throws InvalidSyntaxException {
-        var ctx = newInterpreter(vocabName).execute(expr);
+        var ctx = getInterpreter(vocabName).execute(expr);
         // Reverse the stack to match the order the user would expect.
         return ctx.stack()
                 .reverse()
@@ -183,13 +206,7 @@ public final class ExprResource {
         }
     }
 
-    private boolean matches(Interpreter interpreter, Word word, Context ctxt) {
-        return !excludedWords.contains(word.name())
-                && word.matches(ctxt.stack())
-                && execWorks(interpreter, word, ctxt);
-    }
-
-    private boolean execWorks(Interpreter interpreter, Word word, Context ctxt) {
+    private static boolean execWorks(Interpreter interpreter, Word word, Context ctxt) {
         // This check is needed to be sure an operation will work if matches is not exhaustive. In
         // some cases it only validates types, but not acceptable values such as :time. For others like
         // macros it always returns true. This ensures the operation will actually be successful before
@@ -201,4 +218,14 @@ public final class ExprResource {
             return false;
         }
     }
+
+    /**
+     * Key of the suggestions for a context. The context includes the stack, and not only its
+     * type summary, as words can reject values of the types they accept.
+     *
+     * @param vocabulary Name of the vocabulary.
+     * @param context    Context resulting from the execution of the query.
+     */
+    private record CompletionKey(String vocabulary, Context context) {
+    }
 }
@@ -15,10 +15,13 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import static java.util.Objects.requireNonNull;
 
@@ -26,11 +29,16 @@ import static java.util.Objects.requireNonNull;
 public final class GraphResource {
     private final GraphConfigFactory configFactory;
     private final Grapher grapher;
+    private final ExecutorService executor;
+
+    // Extra time given to a graph past its deadline, to render the error once it is abandoned.
+    private static final Duration TIMEOUT_GRACE = Duration.ofSeconds(5);
 
     @Autowired
-    public GraphResource(GraphConfigFactory configFactory, Grapher grapher) {
+    public GraphResource(GraphConfigFactory configFactory, Grapher grapher, ExecutorService graphExecutor) {
         this.configFactory = requireNonNull(configFactory);
         this.grapher = requireNonNull(grapher);
+        this.executor = requireNonNull(graphExecutor);
     }
 
     @ExceptionHandler({IllegalArgumentException.class})
@@ -39,11 +47,23 @@ public final class GraphResource {
     }
 
     @GetMapping("/api/v1/graph")
-    public ResponseEntity<?> graph() {
+    public DeferredResult<ResponseEntity<?>> graph() {
         var requestAttributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
         var request = toGraphRequest(requestAttributes.getRequest());
         var config = configFactory.toGraphConfig(request);
-        return toResponse(grapher.evalAndRender(config));
+
+        // The graph is rendered on a separate thread, so that it can be abandoned as soon as
+        // the client goes away or the deadline expires.
+        var deadline = config.deadline();
+        var timeout = deadline.remaining(config.settings().timeout()).plus(TIMEOUT_GRACE);
+        var result = new DeferredResult<ResponseEntity<?>>(timeout.toMillis());
+        result.onTimeout(() -> {
+            deadline.cancel();
+            result.setErrorResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        });
+        result.onError(e -> deadline.cancel());
+        executor.execute(() -> result.setResult(toResponse(grapher.evalAndRender(config))));
+        return result;
     }
 
     private static GraphRequest toGraphRequest(HttpServletRequest httpRequest) {
@@ -64,6 +64,18 @@ public class ExprResourceTest {
         assertThat(data).hasSize(7);
     }
 
+    @Test
+    public void debugWithMacro() throws Exception {
+        var response = restTemplate.getForEntity(urlFor("/api/v1/expr/debug?q=42,:area&vocab=style"), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        var data = readDebugOutput(response);
+        assertThat(data).hasSize(3);
+        assertThat(data.get(0).macro).isNull();
+        assertThat(data.get(1).program).containsExactly(":area");
+        assertThat(data.get(1).macro).containsExactly("area", ":ls");
+        assertThat(data.get(2).context.stack).containsExactly("42.0,:const,area,:ls");
+    }
+
     @Test
     public void debugWithUnknownWordInVocabulary() {
         var response = restTemplate.getForEntity(urlFor("/api/v1/expr/debug?q=42,stack,:ls&vocab=query"), String.class);
@@ -128,6 +140,25 @@ public class ExprResourceTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
 
+    @Test
+    public void complete() throws Exception {
+        var response = restTemplate.getForEntity(urlFor("/api/v1/expr/complete?q=up,42"), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        var names = readCompleteOutput(response).stream().map(Candidate::name).toList();
+        assertThat(names).contains("const", "query", "ls", "color", "legend");
+        // Excluded words, and words that do not match the stack.
+        assertThat(names).doesNotContain("dup", "swap", "time");
+    }
+
+    @Test
+    public void completeDependsOnStackValues() throws Exception {
+        // Both stacks have the same types, only the first one is accepted by :time.
+        var valid = restTemplate.getForEntity(urlFor("/api/v1/expr/complete?q=hourOfDay"), String.class);
+        assertThat(readCompleteOutput(valid).stream().map(Candidate::name).toList()).contains("time");
+        var invalid = restTemplate.getForEntity(urlFor("/api/v1/expr/complete?q=foo"), String.class);
+        assertThat(readCompleteOutput(invalid).stream().map(Candidate::name).toList()).doesNotContain("time");
+    }
+
     private String urlFor(String path) {
         return "http://localhost:" + port + path;
     }
@@ -152,7 +183,7 @@ public class ExprResourceTest {
         });
     }
 
-    record Step(List<String> program, Context context) {
+    record Step(List<String> program, Context context, List<String> macro) {
     }
 
     record Context(List<String> stack, Map<String, String> variables) {